@@ -0,0 +1,229 @@
+package com.mqltv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Category → row mapping for one {@link ChannelTable}, built once when a playlist snapshot is
+ * published. Group titles are trimmed and merged case-insensitively, in first-seen order; rows
+ * without a group go to {@link #getUngroupedRows()}. Switching category is then an array lookup.
+ * URL and tvg-chno lookups, used for zapping and number entry in the player, avoid a scan too.
+ */
+public final class CategoryIndex {
+    public static final CategoryIndex EMPTY = build(ChannelTable.EMPTY);
+
+    /** One merged category. */
+    public static final class Category {
+        /** Group title as first seen in the playlist (trimmed). */
+        public final String name;
+        /** Upper-case label used by the Live TV category list. */
+        public final String label;
+        final int[] rows;
+
+        Category(String name, String label, int[] rows) {
+            this.name = name;
+            this.label = label;
+            this.rows = rows;
+        }
+
+        public int size() {
+            return rows.length;
+        }
+
+        /** Table row of the channel at {@code position} in this category. */
+        public int rowAt(int position) {
+            return rows[position];
+        }
+    }
+
+    private final ChannelTable table;
+    private final List<Category> categories;
+    private final int[] categoryOfRow;
+    private final int[] ungrouped;
+
+    // Open-addressing url -> row table; slots hold row + 1, 0 means empty.
+    private final int[] urlSlots;
+    private final int[] urlHashes;
+    // Ascending channel numbers and the first row carrying each; empty when the playlist has none.
+    private final int[] numbers;
+    private final int[] numberRows;
+
+    private CategoryIndex(ChannelTable table, List<Category> categories, int[] categoryOfRow, int[] ungrouped,
+                          int[] urlSlots, int[] urlHashes, int[] numbers, int[] numberRows) {
+        this.table = table;
+        this.categories = categories;
+        this.categoryOfRow = categoryOfRow;
+        this.ungrouped = ungrouped;
+        this.urlSlots = urlSlots;
+        this.urlHashes = urlHashes;
+        this.numbers = numbers;
+        this.numberRows = numberRows;
+    }
+
+    public static CategoryIndex build(ChannelTable table) {
+        // Merge raw groups by trimmed, upper-cased title.
+        Map<String, Integer> byLabel = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        List<String> labels = new ArrayList<>();
+        List<int[]> rows = new ArrayList<>();
+        int[] categoryOfGroup = new int[table.groupCount()];
+        for (int g = 0; g < table.groupCount(); g++) {
+            String name = table.groupName(g).trim();
+            if (name.isEmpty()) {
+                categoryOfGroup[g] = -1;
+                continue;
+            }
+            String label = name.toUpperCase(Locale.US);
+            Integer cat = byLabel.get(label);
+            if (cat == null) {
+                cat = names.size();
+                byLabel.put(label, cat);
+                names.add(name);
+                labels.add(label);
+                rows.add(table.groupMembers(g));
+            } else {
+                rows.set(cat, ChannelTable.mergeRows(rows.get(cat), table.groupMembers(g)));
+            }
+            categoryOfGroup[g] = cat;
+        }
+
+        List<Category> categories = new ArrayList<>(names.size());
+        for (int i = 0; i < names.size(); i++) {
+            categories.add(new Category(names.get(i), labels.get(i), rows.get(i)));
+        }
+
+        int n = table.size();
+        int[] categoryOfRow = new int[n];
+        int ungroupedCount = 0;
+        for (int i = 0; i < n; i++) {
+            int g = table.groupOf(i);
+            int cat = g >= 0 ? categoryOfGroup[g] : -1;
+            categoryOfRow[i] = cat;
+            if (cat < 0) ungroupedCount++;
+        }
+        int[] ungrouped = new int[ungroupedCount];
+        for (int i = 0, k = 0; i < n; i++) {
+            if (categoryOfRow[i] < 0) ungrouped[k++] = i;
+        }
+
+        int capacity = 16;
+        while (capacity < n * 2) capacity <<= 1;
+        int[] slots = new int[capacity];
+        int[] hashes = new int[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < n; i++) {
+            String url = table.getUrl(i);
+            if (url == null) continue;
+            int h = url.hashCode();
+            int idx = spread(h) & mask;
+            boolean duplicate = false;
+            while (slots[idx] != 0) {
+                // Keep the first row for a URL, like PlaylistRepository's dedup.
+                if (hashes[idx] == h && url.equals(table.getUrl(slots[idx] - 1))) {
+                    duplicate = true;
+                    break;
+                }
+                idx = (idx + 1) & mask;
+            }
+            if (duplicate) continue;
+            slots[idx] = i + 1;
+            hashes[idx] = h;
+        }
+
+        // (number, row) pairs sorted by number then row; the first row per number wins.
+        int numbered = 0;
+        for (int i = 0; i < n; i++) {
+            if (table.getChannelNumber(i) > 0) numbered++;
+        }
+        long[] pairs = new long[numbered];
+        for (int i = 0, k = 0; i < n; i++) {
+            int number = table.getChannelNumber(i);
+            if (number > 0) pairs[k++] = ((long) number << 32) | i;
+        }
+        Arrays.sort(pairs);
+        int distinct = 0;
+        int[] numbers = new int[numbered];
+        int[] numberRows = new int[numbered];
+        for (long pair : pairs) {
+            int number = (int) (pair >>> 32);
+            if (distinct > 0 && numbers[distinct - 1] == number) continue;
+            numbers[distinct] = number;
+            numberRows[distinct] = (int) pair;
+            distinct++;
+        }
+
+        return new CategoryIndex(table, Collections.unmodifiableList(categories), categoryOfRow, ungrouped, slots, hashes,
+                Arrays.copyOf(numbers, distinct), Arrays.copyOf(numberRows, distinct));
+    }
+
+    public List<Category> getCategories() {
+        return categories;
+    }
+
+    /** Channels of one category as a view over the shared table. */
+    public List<Channel> channelsOf(Category category) {
+        return table.subList(category.rows);
+    }
+
+    /** Rows that have no (or a blank) group-title. */
+    public List<Channel> getUngroupedRows() {
+        return table.subList(ungrouped);
+    }
+
+    /** Category of a row, or -1 if it is ungrouped. */
+    public int categoryOfRow(int row) {
+        return row >= 0 && row < categoryOfRow.length ? categoryOfRow[row] : -1;
+    }
+
+    /** Position of {@code label} (case-insensitive) in {@link #getCategories()}, or -1. */
+    public int indexOfLabel(String label) {
+        if (label == null) return -1;
+        String l = label.trim().toUpperCase(Locale.US);
+        for (int i = 0; i < categories.size(); i++) {
+            if (categories.get(i).label.equals(l)) return i;
+        }
+        return -1;
+    }
+
+    /** Row of the first channel with this URL, or -1. */
+    public int rowOfUrl(String url) {
+        if (url == null || table.isEmpty()) return -1;
+        int h = url.hashCode();
+        int mask = urlSlots.length - 1;
+        int idx = spread(h) & mask;
+        while (urlSlots[idx] != 0) {
+            int row = urlSlots[idx] - 1;
+            if (urlHashes[idx] == h && url.equals(table.getUrl(row))) return row;
+            idx = (idx + 1) & mask;
+        }
+        return -1;
+    }
+
+    /** First row whose tvg-chno is {@code number}, or -1. */
+    public int rowOfNumber(int number) {
+        int i = Arrays.binarySearch(numbers, number);
+        return i >= 0 ? numberRows[i] : -1;
+    }
+
+    /** Position of {@code row} inside a category's list, or -1. */
+    public static int positionInCategory(Category category, int row) {
+        int lo = 0, hi = category.rows.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int v = category.rows[mid];
+            if (v == row) return mid;
+            if (v < row) lo = mid + 1;
+            else hi = mid - 1;
+        }
+        return -1;
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+}
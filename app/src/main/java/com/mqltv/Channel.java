@@ -7,18 +7,27 @@ public final class Channel {
     private final String groupTitle;
     private final String logoUrl;
 
+    // Null for the common case of a plain entry; see Extras.
+    private final Extras extras;
+
     public Channel(String title, String url) {
         this.title = title;
         this.url = url;
         this.groupTitle = null;
         this.logoUrl = null;
+        this.extras = null;
     }
 
     public Channel(String title, String url, String groupTitle, String logoUrl) {
+        this(title, url, groupTitle, logoUrl, null);
+    }
+
+    public Channel(String title, String url, String groupTitle, String logoUrl, Extras extras) {
         this.title = title;
         this.url = url;
         this.groupTitle = groupTitle;
         this.logoUrl = logoUrl;
+        this.extras = extras;
     }
 
     public String getTitle() {
@@ -36,4 +45,65 @@ public final class Channel {
     public String getLogoUrl() {
         return logoUrl;
     }
+
+    public Extras getExtras() {
+        return extras;
+    }
+
+    public String getTvgId() {
+        return extras != null ? extras.tvgId : null;
+    }
+
+    /** tvg-name when it differs from the display title, else null. */
+    public String getTvgName() {
+        return extras != null ? extras.tvgName : null;
+    }
+
+    /** Server-assigned channel number (tvg-chno), or 0 if the playlist does not provide one. */
+    public int getChannelNumber() {
+        return extras != null ? extras.number : 0;
+    }
+
+    public String getUserAgent() {
+        return extras != null ? extras.userAgent : null;
+    }
+
+    public String getReferrer() {
+        return extras != null ? extras.referrer : null;
+    }
+
+    /**
+     * Extended-M3U fields (tvg-id, tvg-name, tvg-chno, catchup, per-stream HTTP headers). Only allocated for
+     * entries that carry at least one of them; repeated values are shared by the parser.
+     */
+    public static final class Extras {
+        public final String tvgId;
+        public final String tvgName;
+        public final int number;
+        public final String catchup;
+        public final String catchupSource;
+        public final String userAgent;
+        public final String referrer;
+
+        private Extras(String tvgId, String tvgName, int number, String catchup, String catchupSource,
+                       String userAgent, String referrer) {
+            this.tvgId = tvgId;
+            this.tvgName = tvgName;
+            this.number = number;
+            this.catchup = catchup;
+            this.catchupSource = catchupSource;
+            this.userAgent = userAgent;
+            this.referrer = referrer;
+        }
+
+        /** Returns null when every field is empty, so plain entries stay as small as before. */
+        public static Extras of(String tvgId, String tvgName, int number, String catchup, String catchupSource,
+                                String userAgent, String referrer) {
+            if (tvgId == null && tvgName == null && number <= 0 && catchup == null && catchupSource == null
+                    && userAgent == null && referrer == null) {
+                return null;
+            }
+            return new Extras(tvgId, tvgName, Math.max(0, number), catchup, catchupSource, userAgent, referrer);
+        }
+    }
 }
@@ -0,0 +1,448 @@
+package com.mqltv;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Process-wide channel list shared by Launcher, Home, Live TV and the player overlay.
+ *
+ * The playlist is downloaded and parsed at most once per {@link #REFRESH_INTERVAL_MS}; concurrent
+ * callers join the load already in flight instead of starting their own. On a cold start the
+ * last list saved by {@link PlaylistRepository} is served immediately and revalidated in the
+ * background; listeners only hear about it again if the server list actually changed. With no
+ * saved copy at all, the primary playlist is published in growing partial snapshots as it parses.
+ */
+public final class ChannelCatalog {
+    private static final String TAG = "ChannelCatalog";
+
+    // How long a loaded playlist is considered fresh before the next caller triggers a reload.
+    private static final long REFRESH_INTERVAL_MS = 10L * 60L * 1000L;
+    // An empty result (offline at boot, server down) is retried this soon instead.
+    private static final long EMPTY_RETRY_MS = 15_000L;
+    // Partial snapshots are published at most this often unless the list doubled meanwhile.
+    private static final long PARTIAL_PUBLISH_MS = 1_000L;
+
+    public interface Listener {
+        /** Called on the main thread whenever a new snapshot is published. */
+        void onCatalogChanged(Snapshot snapshot);
+    }
+
+    /** Immutable result of one playlist load. */
+    public static final class Snapshot {
+        public final long version;
+        /** Packed rows shared by all screens; {@link #channels} is a read-only view over it. */
+        public final ChannelTable table;
+        public final List<Channel> channels;
+        /** Category → rows mapping for {@link #table}, built once per snapshot. */
+        public final CategoryIndex categories;
+        /** True while the list comes from the on-disk copy and has not been revalidated yet. */
+        public final boolean fromCache;
+        /** True while the first playlist is still downloading; more channels will follow. */
+        public final boolean partial;
+        final String sourceKey;
+        /** elapsedRealtime until which the snapshot needs no reload; 0 for cached/partial lists. */
+        final long freshUntilMs;
+
+        private volatile ChannelSearchIndex search;
+
+        Snapshot(long version, ChannelTable table, CategoryIndex categories, boolean fromCache, boolean partial,
+                 String sourceKey, long freshUntilMs) {
+            this.version = version;
+            this.table = table;
+            this.channels = table.asList();
+            this.categories = categories;
+            this.fromCache = fromCache;
+            this.partial = partial;
+            this.sourceKey = sourceKey;
+            this.freshUntilMs = freshUntilMs;
+        }
+
+        public boolean isEmpty() {
+            return channels.isEmpty();
+        }
+
+        /** Drops the search index; the next {@link #searchIndex()} rebuilds it. Returns bytes released. */
+        long dropSearchIndex() {
+            synchronized (this) {
+                ChannelSearchIndex idx = search;
+                search = null;
+                return idx != null ? idx.approxBytes() : 0;
+            }
+        }
+
+        /**
+         * Search index for {@link #table}. Complete lists get it built on the loader thread right
+         * after publishing, so this normally returns at once; call it off the main thread anyway.
+         */
+        public ChannelSearchIndex searchIndex() {
+            ChannelSearchIndex idx = search;
+            if (idx == null) {
+                synchronized (this) {
+                    idx = search;
+                    if (idx == null) {
+                        idx = ChannelSearchIndex.build(table);
+                        search = idx;
+                    }
+                }
+            }
+            return idx;
+        }
+    }
+
+    private static final ChannelCatalog INSTANCE = new ChannelCatalog();
+
+    private final ExecutorService loader = Executors.newSingleThreadExecutor();
+    private final Handler main = new Handler(Looper.getMainLooper());
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile Snapshot current;
+    private FutureTask<Snapshot> inFlight;
+    private long nextVersion = 1;
+    private String restoredKey;
+    private FutureTask<Snapshot> restoring;
+
+    private ChannelCatalog() {}
+
+    public static ChannelCatalog get() {
+        return INSTANCE;
+    }
+
+    /**
+     * When memory is critical, drops the search index; it is rebuilt on the next search. The
+     * published table itself is what every screen shows, so it is kept.
+     */
+    void registerForMemoryPressure() {
+        MemoryPressureCoordinator.get().register(level -> {
+            long freed = 0;
+            Snapshot s = current;
+            if (s != null && level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+                freed += s.dropSearchIndex();
+            }
+            return freed;
+        });
+    }
+
+    /** Last published snapshot, or null if nothing was loaded yet. Never blocks. */
+    public Snapshot peek() {
+        return current;
+    }
+
+    public void addListener(Listener l) {
+        if (l != null && !listeners.contains(l)) listeners.add(l);
+    }
+
+    public void removeListener(Listener l) {
+        listeners.remove(l);
+    }
+
+    /**
+     * Returns a usable snapshot, loading the playlist if needed. Blocks only when nothing is
+     * available yet (not even on disk); call from a worker thread.
+     */
+    public Snapshot load(Context context) {
+        final Context app = context.getApplicationContext();
+        final String[] urls = AuthPrefs.getPlaylistUrls(app);
+        final String key = sourceKeyOf(urls);
+
+        Snapshot restored = null;
+        Snapshot seen = current;
+        if (seen == null || !key.equals(seen.sourceKey)) {
+            restored = restoreFromDisk(app, urls, key);
+        }
+
+        FutureTask<Snapshot> task;
+        synchronized (this) {
+            Snapshot s = current;
+            if (s == null || !key.equals(s.sourceKey)) s = restored;
+            if (s != null && isFresh(s)) {
+                return s;
+            }
+            if (inFlight == null) {
+                inFlight = new FutureTask<>(() -> fetch(app, urls, key));
+                loader.execute(inFlight);
+            }
+            task = inFlight;
+
+            // Stale-while-revalidate: hand out what we have; the fetch publishes changes later.
+            if (s != null && !s.isEmpty()) {
+                return s;
+            }
+        }
+
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.w(TAG, "load failed: " + e.getCause());
+        }
+        Snapshot s = current;
+        return s != null ? s : new Snapshot(0, ChannelTable.EMPTY, CategoryIndex.EMPTY, false, false, key, 0);
+    }
+
+    private static boolean isFresh(Snapshot s) {
+        return !s.fromCache && !s.partial && SystemClock.elapsedRealtime() < s.freshUntilMs;
+    }
+
+    /** Complete loads stay fresh for the refresh interval; an empty one only briefly. */
+    private static long freshUntil(ChannelTable table) {
+        long ttl = table.size() == 0 ? EMPTY_RETRY_MS : REFRESH_INTERVAL_MS;
+        return SystemClock.elapsedRealtime() + ttl;
+    }
+
+    /**
+     * Reads the saved list once per playlist source. The read runs outside the lock; callers
+     * arriving meanwhile wait for the same read instead of starting another.
+     */
+    private Snapshot restoreFromDisk(Context app, String[] urls, String key) {
+        FutureTask<Snapshot> task;
+        boolean owner = false;
+        synchronized (this) {
+            if (key.equals(restoredKey)) {
+                task = restoring;
+                if (task == null) return null;
+            } else {
+                restoredKey = key;
+                task = new FutureTask<>(() -> readSaved(app, urls, key));
+                restoring = task;
+                owner = true;
+            }
+        }
+        if (owner) {
+            task.run();
+            synchronized (this) {
+                if (restoring == task) restoring = null;
+            }
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.w(TAG, "restore failed: " + e.getCause());
+        }
+        return null;
+    }
+
+    private Snapshot readSaved(Context app, String[] urls, String key) {
+        long t0 = SystemClock.elapsedRealtime();
+        List<Channel> cached = new PlaylistRepository().loadCachedFromUrls(app, urls);
+        if (cached.isEmpty()) return null;
+
+        ChannelTable table = ChannelTable.of(cached);
+        CategoryIndex categories = CategoryIndex.build(table);
+        final Snapshot s;
+        synchronized (this) {
+            Snapshot cur = current;
+            // A fetch that finished while the disk was read has the newer list.
+            if (cur != null && key.equals(cur.sourceKey)) return cur;
+            s = install(table, categories, true, false, key);
+        }
+        announce(s);
+        Log.d(TAG, "restored v" + s.version + " channels=" + s.channels.size()
+                + " from disk in " + (SystemClock.elapsedRealtime() - t0) + "ms");
+        return s;
+    }
+
+    private Snapshot fetch(Context app, String[] urls, String key) {
+        long t0 = SystemClock.elapsedRealtime();
+        PartialPublisher progress = null;
+        try {
+            // Nothing to show yet: stream the primary playlist into the UI while it downloads.
+            Snapshot before = current;
+            if (before == null || !key.equals(before.sourceKey) || before.isEmpty()) {
+                progress = new PartialPublisher(key);
+            }
+
+            PlaylistRepository repo = new PlaylistRepository();
+            List<Channel> channels = repo.loadFromUrls(app, urls, progress);
+            if (channels == null) channels = Collections.emptyList();
+            if (progress != null) progress.close();
+
+            Snapshot prev = current;
+            boolean samePrev = prev != null && key.equals(prev.sourceKey);
+            if (progress != null && repo.firstSourceBroken() && (!samePrev || prev.partial || prev.isEmpty())) {
+                List<Channel> streamed = progress.streamed();
+                if (!streamed.isEmpty()) {
+                    // The primary broke off mid-download: keep what arrived, still marked partial
+                    // so it is never taken as fresh and the next load fetches it again.
+                    List<Channel> kept = new ArrayList<>(streamed);
+                    kept.addAll(channels);
+                    Snapshot s = publish(ChannelTable.of(PlaylistRepository.dedup(kept)), false, true, key);
+                    Log.w(TAG, "primary source broke off; keeping partial v" + s.version
+                            + " channels=" + s.channels.size());
+                    return s;
+                }
+            }
+            if (repo.wasNotModified()) {
+                // 304 everywhere: the saved copy is current. Only read it if we do not hold it.
+                if (samePrev && !prev.isEmpty()) {
+                    Snapshot s = revalidated(prev);
+                    Log.d(TAG, "not modified; v" + s.version + " in " + (SystemClock.elapsedRealtime() - t0) + "ms");
+                    return s;
+                }
+                channels = repo.loadCachedFromUrls(app, urls);
+            }
+            if (samePrev && channels.isEmpty() && !prev.isEmpty()) {
+                // Offline or server error: keep serving the saved list, retry on the next load.
+                Log.w(TAG, "revalidate failed; keeping v" + prev.version);
+                return prev;
+            }
+
+            boolean hasServerPlaylist = false;
+            try {
+                hasServerPlaylist = !AuthPrefs.getPlaylistUrl(app).trim().isEmpty();
+            } catch (Throwable ignored) {
+            }
+            if (channels.isEmpty() && !hasServerPlaylist) {
+                channels = repo.loadDefault(app);
+            }
+            ChannelTable table = ChannelTable.of(channels);
+            if (samePrev && prev.table.contentEquals(table)) {
+                Snapshot s = revalidated(prev);
+                Log.d(TAG, "revalidated v" + s.version + " unchanged in " + (SystemClock.elapsedRealtime() - t0) + "ms");
+                return s;
+            }
+
+            Snapshot s = publish(table, false, false, key);
+            Log.d(TAG, "loaded v" + s.version + " channels=" + s.channels.size()
+                    + " in " + (SystemClock.elapsedRealtime() - t0) + "ms");
+            return s;
+        } finally {
+            if (progress != null) progress.close();
+            // Cleared only after publish so late joiners see the new snapshot, not a second fetch.
+            synchronized (this) {
+                inFlight = null;
+            }
+        }
+    }
+
+    /** Marks {@code prev}'s list as confirmed by the server without telling listeners. */
+    private Snapshot revalidated(Snapshot prev) {
+        Snapshot s = new Snapshot(prev.version, prev.table, prev.categories, false, false, prev.sourceKey,
+                freshUntil(prev.table));
+        s.search = prev.search;
+        synchronized (this) {
+            current = s;
+        }
+        return s;
+    }
+
+    private Snapshot publish(ChannelTable table, boolean fromCache, boolean partial, String key) {
+        // Indexed here, on the loader thread, so no screen has to group channels itself.
+        CategoryIndex categories = CategoryIndex.build(table);
+        final Snapshot s;
+        synchronized (this) {
+            s = install(table, categories, fromCache, partial, key);
+        }
+        announce(s);
+        return s;
+    }
+
+    /** Caller holds the lock. Makes a new snapshot current. */
+    private Snapshot install(ChannelTable table, CategoryIndex categories, boolean fromCache, boolean partial,
+                             String key) {
+        long freshUntil = fromCache || partial ? 0L : freshUntil(table);
+        Snapshot s = new Snapshot(nextVersion++, table, categories, fromCache, partial, key, freshUntil);
+        current = s;
+        return s;
+    }
+
+    /** Tells listeners about {@code s} and queues its search index. */
+    private void announce(final Snapshot s) {
+        main.post(() -> {
+            for (Listener l : listeners) {
+                try {
+                    l.onCatalogChanged(s);
+                } catch (Throwable t) {
+                    Log.w(TAG, "listener failed", t);
+                }
+            }
+        });
+        // Partial lists are replaced within seconds; only index what is likely to be searched.
+        if (!s.partial) {
+            loader.execute(() -> {
+                try {
+                    s.searchIndex();
+                } catch (Throwable t) {
+                    Log.w(TAG, "search index failed", t);
+                }
+            });
+        }
+    }
+
+    /**
+     * Accumulates parser batches of the primary source and publishes them as partial snapshots:
+     * the first batch at once, then whenever the list doubled or a second has passed, so a big
+     * playlist is not re-packed and re-indexed for every batch. Packing and
+     * indexing run on the parser thread; only the swap takes the catalog lock.
+     */
+    private final class PartialPublisher implements M3UParser.BatchListener {
+        private final String key;
+        // Appended by the parser thread only; guarded by this for streamed().
+        private final List<Channel> soFar = new ArrayList<>();
+        private int publishedCount;
+        private long publishedAt;
+        private boolean closed;
+
+        PartialPublisher(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public void onBatch(List<Channel> batch) {
+            int count;
+            synchronized (this) {
+                soFar.addAll(batch);
+                count = soFar.size();
+            }
+            long now = SystemClock.elapsedRealtime();
+            if (publishedCount > 0 && count < 2 * publishedCount && now - publishedAt < PARTIAL_PUBLISH_MS) {
+                return;
+            }
+            ChannelTable table;
+            synchronized (this) {
+                table = ChannelTable.of(soFar);
+            }
+            CategoryIndex categories = CategoryIndex.build(table);
+            final Snapshot s;
+            synchronized (ChannelCatalog.this) {
+                // The final list may already be out if the parser outlived the fetch.
+                if (closed) return;
+                s = install(table, categories, false, true, key);
+            }
+            publishedCount = count;
+            publishedAt = now;
+            announce(s);
+        }
+
+        void close() {
+            synchronized (ChannelCatalog.this) {
+                closed = true;
+            }
+        }
+
+        /** Every channel received so far, published or not. */
+        synchronized List<Channel> streamed() {
+            return new ArrayList<>(soFar);
+        }
+    }
+
+    private static String sourceKeyOf(String[] urls) {
+        return urls == null ? "" : Arrays.toString(urls);
+    }
+}
@@ -38,11 +38,11 @@ public class ChannelListAdapter extends RecyclerView.Adapter<ChannelListAdapter.
             if (!SubscriptionGuard.ensureNotExpired(v.getContext())) return;
             RecentChannelsStore.record(v.getContext(), c);
             PresenceReporter.reportOnlineLaunch(v.getContext(), c.getTitle(), c.getUrl());
-            Intent intent = PlayerIntents.createPreferredPlayIntent(v.getContext(), c.getTitle(), c.getUrl());
+            Intent intent = PlayerIntents.createPreferredPlayIntent(v.getContext(), c);
             try {
                 v.getContext().startActivity(intent);
             } catch (Exception e) {
-                v.getContext().startActivity(PlayerIntents.createPlayIntent(v.getContext(), c.getTitle(), c.getUrl()));
+                v.getContext().startActivity(PlayerIntents.createPlayIntent(v.getContext(), c));
             }
         });
     }
@@ -0,0 +1,261 @@
+package com.mqltv;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Search-as-you-type index over channel title, tvg-name and group for one {@link ChannelTable}.
+ *
+ * Text is folded once (lower case, accents stripped) into a single char array. Queries of three
+ * or more characters intersect trigram posting lists and only verify the surviving rows; shorter
+ * queries scan the folded text, which is small. Results are ranked title-prefix first, then
+ * word-prefix, then any substring, keeping playlist order within each rank.
+ */
+public final class ChannelSearchIndex {
+    /** Lets a caller abandon a query once a newer keystroke arrived. */
+    public interface Cancellation {
+        boolean isCancelled();
+    }
+
+    private static final int RANK_TITLE_PREFIX = 0;
+    private static final int RANK_WORD_PREFIX = 1;
+    private static final int RANK_SUBSTRING = 2;
+    private static final int RANK_GROUP = 3;
+    private static final int NO_MATCH = 4;
+
+    // Separates title and tvg-name in the folded text so matches never span both.
+    private static final char SEP = '\u0001';
+
+    private final ChannelTable table;
+    private final char[] text;
+    private final int[] starts;          // row i is text[starts[i], starts[i + 1])
+    private final String[] foldedGroups;
+
+    // Trigram postings in CSR form: rows of keys[k] are postings[offsets[k], offsets[k + 1]).
+    private final int[] keys;
+    private final int[] offsets;
+    private final int[] postings;
+
+    private ChannelSearchIndex(ChannelTable table, char[] text, int[] starts, String[] foldedGroups,
+                               int[] keys, int[] offsets, int[] postings) {
+        this.table = table;
+        this.text = text;
+        this.starts = starts;
+        this.foldedGroups = foldedGroups;
+        this.keys = keys;
+        this.offsets = offsets;
+        this.postings = postings;
+    }
+
+    public static ChannelSearchIndex build(ChannelTable table) {
+        int n = table.size();
+        StringBuilder sb = new StringBuilder(n * 24);
+        int[] starts = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            starts[i] = sb.length();
+            String title = table.getTitle(i);
+            if (title != null) sb.append(fold(title));
+            String tvgName = table.getTvgName(i);
+            if (tvgName != null) sb.append(SEP).append(fold(tvgName));
+        }
+        starts[n] = sb.length();
+        char[] text = new char[sb.length()];
+        sb.getChars(0, sb.length(), text, 0);
+
+        String[] foldedGroups = new String[table.groupCount()];
+        for (int g = 0; g < foldedGroups.length; g++) foldedGroups[g] = fold(table.groupName(g));
+
+        // Collect (trigram, row) pairs once per distinct trigram of a row, then sort into CSR.
+        long[] pairs = new long[Math.max(16, text.length)];
+        int[] rowKeys = new int[64];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            int m = 0;
+            for (int p = starts[i]; p + 3 <= starts[i + 1]; p++) {
+                if (crossesSeparator(text, p)) continue;
+                if (m == rowKeys.length) rowKeys = Arrays.copyOf(rowKeys, m * 2);
+                rowKeys[m++] = trigram(text, p);
+            }
+            Arrays.sort(rowKeys, 0, m);
+            for (int r = 0; r < m; r++) {
+                if (r > 0 && rowKeys[r] == rowKeys[r - 1]) continue;
+                if (count == pairs.length) pairs = Arrays.copyOf(pairs, count * 2);
+                pairs[count++] = ((long) rowKeys[r] << 32) | i;
+            }
+        }
+        Arrays.sort(pairs, 0, count);
+
+        int distinct = 0;
+        for (int k = 0; k < count; k++) {
+            if (k == 0 || (pairs[k] >>> 32) != (pairs[k - 1] >>> 32)) distinct++;
+        }
+        int[] keys = new int[distinct];
+        int[] offsets = new int[distinct + 1];
+        int[] postings = new int[count];
+        int d = -1;
+        for (int k = 0; k < count; k++) {
+            int key = (int) (pairs[k] >>> 32);
+            if (d < 0 || keys[d] != key) {
+                keys[++d] = key;
+                offsets[d] = k;
+            }
+            postings[k] = (int) pairs[k];
+        }
+        offsets[distinct] = count;
+
+        return new ChannelSearchIndex(table, text, starts, foldedGroups, keys, offsets, postings);
+    }
+
+    /** Rough heap footprint, for memory-pressure accounting. */
+    public long approxBytes() {
+        return 2L * text.length + 4L * (starts.length + keys.length + offsets.length + postings.length);
+    }
+
+    /**
+     * Rows matching {@code query}, best first. Returns null if {@code cancel} fired meanwhile.
+     * Safe to call from any thread.
+     */
+    public int[] search(String query, Cancellation cancel) {
+        String q = fold(query == null ? "" : query.trim());
+        if (q.isEmpty()) return new int[0];
+        char[] qc = q.toCharArray();
+
+        int[] candidates = qc.length >= 3 ? trigramCandidates(qc) : null;
+        int n = candidates != null ? candidates.length : table.size();
+
+        boolean[] groupHit = new boolean[foldedGroups.length];
+        for (int g = 0; g < foldedGroups.length; g++) groupHit[g] = foldedGroups[g].contains(q);
+
+        // Ranks are packed with the row so a single sort orders rank first, then playlist order.
+        long[] hits = new long[Math.max(16, Math.min(n, 1024))];
+        int count = 0;
+        for (int k = 0; k < n; k++) {
+            if ((k & 1023) == 0 && cancel != null && cancel.isCancelled()) return null;
+            int row = candidates != null ? candidates[k] : k;
+            int rank = rank(row, qc);
+            if (rank == NO_MATCH) {
+                int g = table.groupOf(row);
+                if (g < 0 || !groupHit[g]) continue;
+                rank = RANK_GROUP;
+            }
+            if (count == hits.length) hits = Arrays.copyOf(hits, count * 2);
+            hits[count++] = ((long) rank << 32) | row;
+        }
+        // Group-only matches are not in the trigram candidates; add the members of matching
+        // groups. Both lists are ascending, so one merge pass skips rows already ranked.
+        if (candidates != null) {
+            for (int g = 0; g < groupHit.length; g++) {
+                if (!groupHit[g]) continue;
+                if (cancel != null && cancel.isCancelled()) return null;
+                int[] members = table.groupMembers(g);
+                int c = 0;
+                for (int row : members) {
+                    while (c < candidates.length && candidates[c] < row) c++;
+                    if (c < candidates.length && candidates[c] == row) continue;
+                    if (count == hits.length) hits = Arrays.copyOf(hits, count * 2);
+                    hits[count++] = ((long) RANK_GROUP << 32) | row;
+                }
+            }
+        }
+
+        Arrays.sort(hits, 0, count);
+        int[] out = new int[count];
+        for (int k = 0; k < count; k++) out[k] = (int) hits[k];
+        return out;
+    }
+
+    private int rank(int row, char[] q) {
+        int start = starts[row];
+        int end = starts[row + 1];
+        int best = NO_MATCH;
+        for (int p = start; p + q.length <= end; p++) {
+            if (!regionMatches(p, q)) continue;
+            if (p == start) return RANK_TITLE_PREFIX;
+            char prev = text[p - 1];
+            int r = Character.isLetterOrDigit(prev) ? RANK_SUBSTRING : RANK_WORD_PREFIX;
+            if (r < best) best = r;
+            if (best == RANK_WORD_PREFIX) return best;
+        }
+        return best;
+    }
+
+    private boolean regionMatches(int p, char[] q) {
+        for (int j = 0; j < q.length; j++) {
+            if (text[p + j] != q[j]) return false;
+        }
+        return true;
+    }
+
+    /** Rows containing every trigram of the query, ascending; empty if any trigram is unknown. */
+    private int[] trigramCandidates(char[] q) {
+        int[][] lists = new int[q.length - 2][];
+        int used = 0;
+        for (int p = 0; p + 3 <= q.length; p++) {
+            if (crossesSeparator(q, p)) continue;
+            int k = Arrays.binarySearch(keys, trigram(q, p));
+            if (k < 0) return new int[0];
+            lists[used++] = Arrays.copyOfRange(postings, offsets[k], offsets[k + 1]);
+        }
+        if (used == 0) return null;
+
+        // Intersect starting from the shortest list.
+        Arrays.sort(lists, 0, used, (a, b) -> a.length - b.length);
+        int[] acc = lists[0];
+        for (int l = 1; l < used && acc.length > 0; l++) {
+            int[] other = lists[l];
+            int[] next = new int[acc.length];
+            int i = 0, j = 0, c = 0;
+            while (i < acc.length && j < other.length) {
+                if (acc[i] == other[j]) {
+                    next[c++] = acc[i];
+                    i++;
+                    j++;
+                } else if (acc[i] < other[j]) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            acc = Arrays.copyOf(next, c);
+        }
+        return acc;
+    }
+
+    /**
+     * Non-negative hash of three chars. Collisions only add candidates that {@link #rank} then
+     * rejects, so they never lose a match.
+     */
+    private static int trigram(char[] s, int p) {
+        int h = s[p];
+        h = h * 0x9E3779B1 + s[p + 1];
+        h = h * 0x9E3779B1 + s[p + 2];
+        return h & 0x7fffffff;
+    }
+
+    private static boolean crossesSeparator(char[] s, int p) {
+        return s[p] == SEP || s[p + 1] == SEP || s[p + 2] == SEP;
+    }
+
+    /** Lower-cases and strips diacritics, so "Ñews" and "news" match. */
+    static String fold(String s) {
+        if (s == null || s.isEmpty()) return "";
+        String lower = s.toLowerCase(Locale.ROOT);
+        boolean ascii = true;
+        for (int i = 0; i < lower.length(); i++) {
+            if (lower.charAt(i) >= 0x80) {
+                ascii = false;
+                break;
+            }
+        }
+        if (ascii) return lower;
+        String decomposed = Normalizer.normalize(lower, Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) continue;
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+}
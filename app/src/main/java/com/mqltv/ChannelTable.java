@@ -0,0 +1,320 @@
+package com.mqltv;
+
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Immutable, packed form of a channel list, shared by every screen through {@link ChannelCatalog}.
+ *
+ * Titles, URLs, logo URLs and, when the playlist has them, tvg-id and tvg-name live back to back
+ * in one UTF-8 byte array instead of String objects per entry. Group titles are stored once and
+ * referenced by id, and each group keeps an int array of its member positions. The remaining
+ * attributes repeat across rows (catch-up mode and template, User-Agent, Referer), so each
+ * distinct combination is stored once and referenced by id; channel numbers are one int per row.
+ * {@link Channel} and {@link Channel.Extras} objects are only created for the rows that are
+ * actually read, so a 100k-entry playlist costs roughly its text size plus a few ints per row.
+ */
+public final class ChannelTable {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int BASE_FIELDS = 3; // title, url, logo
+    private static final int EXTRA_FIELDS = 5; // + tvg-id, tvg-name
+
+    public static final ChannelTable EMPTY = new ChannelTable(new byte[0], new int[1], BASE_FIELDS, new int[0],
+            new String[0], new int[0][], null, null, null);
+
+    private final byte[] text;
+    // Start of field k of row i is offsets[i * fields + k]; the next entry is its end.
+    private final int[] offsets;
+    // EXTRA_FIELDS when any row carries extended attributes, else BASE_FIELDS.
+    private final int fields;
+    private final int[] groupIds;
+    private final String[] groups;
+    private final int[][] members;
+    // Channel number per row; null when no row has one.
+    private final int[] numbers;
+    // Per row, index into profiles or -1; null when no row has any. A profile is
+    // {catchup, catchupSource, userAgent, referrer}.
+    private final int[] profileIds;
+    private final String[][] profiles;
+    private final int size;
+
+    private List<Channel> view;
+
+    private ChannelTable(byte[] text, int[] offsets, int fields, int[] groupIds, String[] groups, int[][] members,
+                         int[] numbers, int[] profileIds, String[][] profiles) {
+        this.text = text;
+        this.offsets = offsets;
+        this.fields = fields;
+        this.groupIds = groupIds;
+        this.groups = groups;
+        this.members = members;
+        this.numbers = numbers;
+        this.profileIds = profileIds;
+        this.profiles = profiles;
+        this.size = groupIds.length;
+    }
+
+    /** Packs {@code channels}; returns the backing table as-is if it already is a table view. */
+    public static ChannelTable of(List<Channel> channels) {
+        if (channels instanceof View) return ((View) channels).table();
+        if (channels == null || channels.isEmpty()) return EMPTY;
+
+        int n = channels.size();
+        int fields = BASE_FIELDS;
+        for (int i = 0; i < n && fields == BASE_FIELDS; i++) {
+            if (channels.get(i).getExtras() != null) fields = EXTRA_FIELDS;
+        }
+
+        byte[][] encoded = new byte[n * fields][];
+        int total = 0;
+        int[] groupIds = new int[n];
+        Map<String, Integer> groupIndex = new HashMap<>();
+        int[] groupSizes = new int[16];
+        String[] groupNames = new String[16];
+        int[] numbers = null;
+        int[] profileIds = null;
+        Map<List<String>, Integer> profileIndex = null;
+
+        for (int i = 0; i < n; i++) {
+            Channel c = channels.get(i);
+            Channel.Extras x = c.getExtras();
+            String[] values = fields == BASE_FIELDS
+                    ? new String[] {c.getTitle(), c.getUrl(), c.getLogoUrl()}
+                    : new String[] {c.getTitle(), c.getUrl(), c.getLogoUrl(),
+                            x != null ? x.tvgId : null, x != null ? x.tvgName : null};
+            for (int k = 0; k < fields; k++) {
+                byte[] b = values[k] == null || values[k].isEmpty() ? null : values[k].getBytes(UTF8);
+                encoded[i * fields + k] = b;
+                if (b != null) total += b.length;
+            }
+
+            String g = c.getGroupTitle();
+            if (g == null) {
+                groupIds[i] = -1;
+            } else {
+                Integer id = groupIndex.get(g);
+                if (id == null) {
+                    id = groupIndex.size();
+                    groupIndex.put(g, id);
+                    if (id == groupNames.length) {
+                        groupNames = Arrays.copyOf(groupNames, id * 2);
+                        groupSizes = Arrays.copyOf(groupSizes, id * 2);
+                    }
+                    groupNames[id] = g;
+                }
+                groupIds[i] = id;
+                groupSizes[id]++;
+            }
+
+            if (x == null) continue;
+            if (x.number > 0) {
+                if (numbers == null) numbers = new int[n];
+                numbers[i] = x.number;
+            }
+            if (x.catchup != null || x.catchupSource != null || x.userAgent != null || x.referrer != null) {
+                if (profileIds == null) {
+                    profileIds = new int[n];
+                    Arrays.fill(profileIds, -1);
+                    profileIndex = new HashMap<>();
+                }
+                List<String> profile = Arrays.asList(x.catchup, x.catchupSource, x.userAgent, x.referrer);
+                Integer id = profileIndex.get(profile);
+                if (id == null) {
+                    id = profileIndex.size();
+                    profileIndex.put(profile, id);
+                }
+                profileIds[i] = id;
+            }
+        }
+
+        String[][] profiles = null;
+        if (profileIndex != null) {
+            profiles = new String[profileIndex.size()][];
+            for (Map.Entry<List<String>, Integer> e : profileIndex.entrySet()) {
+                profiles[e.getValue()] = e.getKey().toArray(new String[0]);
+            }
+        }
+
+        byte[] text = new byte[total];
+        int[] offsets = new int[n * fields + 1];
+        int pos = 0;
+        for (int j = 0; j < encoded.length; j++) {
+            offsets[j] = pos;
+            byte[] b = encoded[j];
+            if (b != null) {
+                System.arraycopy(b, 0, text, pos, b.length);
+                pos += b.length;
+            }
+        }
+        offsets[encoded.length] = pos;
+
+        int groupCount = groupIndex.size();
+        int[][] members = new int[groupCount][];
+        for (int g = 0; g < groupCount; g++) members[g] = new int[groupSizes[g]];
+        int[] fill = new int[groupCount];
+        for (int i = 0; i < n; i++) {
+            int g = groupIds[i];
+            if (g >= 0) members[g][fill[g]++] = i;
+        }
+
+        return new ChannelTable(text, offsets, fields, groupIds, Arrays.copyOf(groupNames, groupCount), members,
+                numbers, profileIds, profiles);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Materializes row {@code i}; callers should not hold on to many of these. */
+    public Channel get(int i) {
+        int g = groupIds[i];
+        return new Channel(field(i, 0), field(i, 1), g >= 0 ? groups[g] : null, field(i, 2), getExtras(i));
+    }
+
+    public String getTitle(int i) {
+        return field(i, 0);
+    }
+
+    public String getUrl(int i) {
+        return field(i, 1);
+    }
+
+    /** Extended attributes of row {@code i}, or null. Built on each call. */
+    public Channel.Extras getExtras(int i) {
+        if (fields == BASE_FIELDS) return null;
+        int number = numbers != null ? numbers[i] : 0;
+        String[] p = profileOf(i);
+        return Channel.Extras.of(field(i, 3), field(i, 4), number,
+                p != null ? p[0] : null, p != null ? p[1] : null, p != null ? p[2] : null, p != null ? p[3] : null);
+    }
+
+    /** Server-assigned number (tvg-chno) of row {@code i}, or 0. */
+    public int getChannelNumber(int i) {
+        return numbers != null ? numbers[i] : 0;
+    }
+
+    /** tvg-name of row {@code i} (only kept when it differs from the title), or null. */
+    public String getTvgName(int i) {
+        return fields == BASE_FIELDS ? null : field(i, 4);
+    }
+
+    /** Group id of row {@code i}, or -1 if it has no group-title. */
+    public int groupOf(int i) {
+        return groupIds[i];
+    }
+
+    public int groupCount() {
+        return groups.length;
+    }
+
+    /** Group title exactly as it appeared in the playlist. */
+    public String groupName(int groupId) {
+        return groups[groupId];
+    }
+
+    /** Row positions belonging to a group, in playlist order. Do not modify. */
+    public int[] groupMembers(int groupId) {
+        return members[groupId];
+    }
+
+    /** Read-only list view over all rows; the same instance is returned on every call. */
+    public List<Channel> asList() {
+        List<Channel> v = view;
+        if (v == null) {
+            v = new View(this, null);
+            view = v;
+        }
+        return v;
+    }
+
+    /** Read-only list view over the given rows (e.g. one or more {@link #groupMembers}). */
+    public List<Channel> subList(int[] rows) {
+        if (rows == null || rows.length == 0) return Collections.emptyList();
+        return new View(this, rows);
+    }
+
+    /** Rough heap footprint of the packed arrays, for memory-pressure accounting. */
+    public long approxBytes() {
+        long bytes = text.length + 4L * offsets.length + 4L * groupIds.length;
+        for (int[] m : members) bytes += 4L * m.length;
+        if (numbers != null) bytes += 4L * numbers.length;
+        if (profileIds != null) bytes += 4L * profileIds.length;
+        return bytes;
+    }
+
+    /** Merges two ascending row arrays (e.g. groups whose titles only differ in case). */
+    public static int[] mergeRows(int[] a, int[] b) {
+        int[] out = new int[a.length + b.length];
+        int i = 0, j = 0, k = 0;
+        while (i < a.length && j < b.length) out[k++] = a[i] < b[j] ? a[i++] : b[j++];
+        while (i < a.length) out[k++] = a[i++];
+        while (j < b.length) out[k++] = b[j++];
+        return out;
+    }
+
+    /** True if both tables hold exactly the same rows; cheaper than comparing Channel lists. */
+    public boolean contentEquals(ChannelTable other) {
+        if (other == this) return true;
+        if (other == null || other.size != size || other.fields != fields) return false;
+        if (!Arrays.equals(offsets, other.offsets) || !Arrays.equals(text, other.text)) return false;
+        if (!Arrays.equals(numbers, other.numbers)) return false;
+        for (int i = 0; i < size; i++) {
+            int a = groupIds[i];
+            int b = other.groupIds[i];
+            if (a < 0 || b < 0) {
+                if (a != b) return false;
+            } else if (!groups[a].equals(other.groups[b])) {
+                return false;
+            }
+            if (!Arrays.equals(profileOf(i), other.profileOf(i))) return false;
+        }
+        return true;
+    }
+
+    private String[] profileOf(int i) {
+        return profileIds != null && profileIds[i] >= 0 ? profiles[profileIds[i]] : null;
+    }
+
+    private String field(int i, int k) {
+        int j = i * fields + k;
+        int start = offsets[j];
+        int len = offsets[j + 1] - start;
+        return len == 0 ? null : new String(text, start, len, UTF8);
+    }
+
+    private static final class View extends AbstractList<Channel> implements RandomAccess {
+        private final ChannelTable table;
+        private final int[] rows;
+
+        View(ChannelTable table, int[] rows) {
+            this.table = table;
+            this.rows = rows;
+        }
+
+        ChannelTable table() {
+            // A subset view is not the whole table; pack it on its own.
+            return rows == null ? table : ChannelTable.of(new ArrayList<>(this));
+        }
+
+        @Override
+        public Channel get(int index) {
+            return table.get(rows == null ? index : rows[index]);
+        }
+
+        @Override
+        public int size() {
+            return rows == null ? table.size : rows.length;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.mqltv;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+
+/**
+ * Forgets the logo backoffs in {@link LogoFailureCache} when the box gets a connection again, so
+ * logos that failed while offline load on the next scroll instead of after their backoff.
+ *
+ * Registered from {@link MqlTvApp} for the lifetime of the process; connectivity broadcasts are
+ * delivered to runtime receivers on every release.
+ */
+public class ConnectivityChangeReceiver extends BroadcastReceiver {
+
+    @SuppressWarnings("deprecation")
+    static IntentFilter filter() {
+        return new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION);
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void onReceive(Context context, Intent intent) {
+        if (context == null || intent == null) return;
+        // The sticky broadcast delivered on registration is not a change.
+        if (isInitialStickyBroadcast()) return;
+        NetworkInfo ni = null;
+        try {
+            ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+            if (cm != null) ni = cm.getActiveNetworkInfo();
+        } catch (Exception ignored) {
+        }
+        if (ni != null && ni.isConnected()) LogoFailureCache.clearFailures();
+    }
+}
@@ -5,6 +5,11 @@ public final class Constants {
 
     public static final String EXTRA_TITLE = "extra_title";
     public static final String EXTRA_URL = "extra_url";
+    // Per-stream HTTP headers from #EXTVLCOPT / #KODIPROP; absent when the playlist sets none.
+    public static final String EXTRA_USER_AGENT = "extra_user_agent";
+    public static final String EXTRA_REFERRER = "extra_referrer";
+    // SystemClock.elapsedRealtime() when the channel was picked; startup times are measured from it.
+    public static final String EXTRA_CLICKED_AT = "extra_clicked_at";
 
         // Default playlists (loaded in order and merged).
         public static final String HOME_PLAYLIST_URL_1 = "http://192.168.15.1:5140/playlist.m3u";
@@ -0,0 +1,264 @@
+package com.mqltv;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Playback outcomes per engine, learned from {@link PlaybackTracer} sessions, used by AUTO mode
+ * to pick an engine before the first frame instead of after a failure.
+ *
+ * Each engine keeps a moving average of a startup cost (time to first picture or sound, plus a
+ * penalty for stalls, or a flat penalty for a failed start) and of its failure rate, once for the
+ * device and once per stream host. The host entry wins when it has enough samples. A small share
+ * of picks tries a less-sampled engine so the history does not freeze on the first good one;
+ * engines the caller rules out for this device, and engines that mostly failed, are never tried.
+ *
+ * A crashing engine never reaches {@link PlaybackTracer#finish}, so each pick is remembered until
+ * its playback shows something or is recorded. A pick still pending at the next pick counts as
+ * a failed start.
+ *
+ * Stored as one JSON object in its own preferences file.
+ */
+final class EngineStats {
+    private static final String TAG = "EngineStats";
+
+    private static final String PREFS = "engine_stats";
+    private static final String KEY_STATS = "stats";
+    private static final String KEY_PENDING = "pending";
+
+    static final String[] ENGINES = new String[] {
+            PlaybackTracer.ENGINE_MEDIA3,
+            PlaybackTracer.ENGINE_EXO2,
+            PlaybackTracer.ENGINE_NATIVE,
+            PlaybackTracer.ENGINE_VLC,
+    };
+
+    // Moving-average weight of the newest session.
+    private static final double ALPHA = 0.3;
+    private static final int MIN_SAMPLES = 3;
+    private static final double EXPLORE_RATE = 0.05;
+    // Cost of a start that failed or never showed anything.
+    private static final long FAILURE_COST_MS = 20_000L;
+    private static final long MAX_STALL_COST_MS = 15_000L;
+    // Engines failing this often are not explored again, however few samples they have.
+    private static final double MAX_EXPLORE_FAIL_RATE = 0.5;
+    private static final int MAX_HOSTS = 64;
+
+    private static final Random RANDOM = new Random();
+
+    private static JSONObject stats;
+
+    private EngineStats() {}
+
+    /**
+     * Returns the engine among {@code candidates} with the best history for {@code url} on this
+     * device, or {@code fallback} when there is not enough history yet.
+     */
+    static synchronized String pick(Context context, String url, String fallback, String[] candidates) {
+        settlePending(context);
+        String engine = choose(context, url, fallback, candidates);
+        prefs(context).edit().putString(KEY_PENDING, pendingKey(engine, url)).apply();
+        return engine;
+    }
+
+    private static String choose(Context context, String url, String fallback, String[] candidates) {
+        JSONObject all = load(context);
+        JSONObject scope = all.optJSONObject(hostKey(url));
+        if (countSampled(scope) == 0) scope = all.optJSONObject(deviceKey());
+
+        String best = null;
+        double bestCost = Double.MAX_VALUE;
+        for (String engine : candidates) {
+            JSONObject e = scope != null ? scope.optJSONObject(engine) : null;
+            if (e == null || e.optInt("n") < MIN_SAMPLES) continue;
+            double cost = e.optDouble("cost", Double.MAX_VALUE);
+            if (cost < bestCost) {
+                bestCost = cost;
+                best = engine;
+            }
+        }
+        if (best == null) best = fallback;
+
+        if (RANDOM.nextDouble() < EXPLORE_RATE) {
+            String other = leastSampled(scope, candidates, best);
+            if (other != null) {
+                Log.i(TAG, "exploring " + other + " instead of " + best);
+                return other;
+            }
+        }
+        return best;
+    }
+
+    /** The playback of the last pick showed a picture or sound; it is no longer pending. */
+    static synchronized void started(Context context, String engine, String url) {
+        clearPending(context, engine, url);
+    }
+
+    /**
+     * Adds a finished session. {@code startMs} is the time to first picture or sound, or -1
+     * if playback never started.
+     */
+    static synchronized void record(Context context, String engine, String url, boolean failed,
+                                    long startMs, long rebufferMs, long watchMs) {
+        clearPending(context, engine, url);
+        if (!isKnown(engine)) return;
+        if (!failed && startMs < 0) {
+            // Left before anything showed: a quick zap says nothing; a long wait is a failure.
+            if (watchMs < 10_000L) return;
+            failed = true;
+        }
+        long cost;
+        if (failed) {
+            cost = FAILURE_COST_MS;
+        } else {
+            long perMinute = rebufferMs * 60_000L / Math.max(watchMs, 60_000L);
+            cost = startMs + Math.min(MAX_STALL_COST_MS, 2 * perMinute);
+        }
+
+        JSONObject all = load(context);
+        try {
+            update(all, deviceKey(), engine, cost, failed);
+            String host = hostKey(url);
+            if (!host.equals(deviceKey())) update(all, host, engine, cost, failed);
+            trimHosts(all);
+            prefs(context).edit().putString(KEY_STATS, all.toString()).apply();
+        } catch (Exception e) {
+            Log.w(TAG, "record failed", e);
+        }
+    }
+
+    private static void update(JSONObject all, String scopeKey, String engine, long cost, boolean failed) throws Exception {
+        JSONObject scope = all.optJSONObject(scopeKey);
+        if (scope == null) {
+            scope = new JSONObject();
+            all.put(scopeKey, scope);
+        }
+        JSONObject e = scope.optJSONObject(engine);
+        if (e == null) {
+            e = new JSONObject();
+            scope.put(engine, e);
+        }
+        int n = e.optInt("n");
+        double fail = failed ? 1.0 : 0.0;
+        if (n == 0) {
+            e.put("cost", (double) cost);
+            e.put("fail", fail);
+        } else {
+            e.put("cost", e.optDouble("cost") * (1 - ALPHA) + cost * ALPHA);
+            e.put("fail", e.optDouble("fail") * (1 - ALPHA) + fail * ALPHA);
+        }
+        e.put("n", n + 1);
+        scope.put("t", System.currentTimeMillis());
+    }
+
+    private static String leastSampled(JSONObject scope, String[] candidates, String exclude) {
+        List<String> fewestSampled = new ArrayList<>();
+        int fewest = Integer.MAX_VALUE;
+        for (String engine : candidates) {
+            if (engine.equals(exclude)) continue;
+            JSONObject e = scope != null ? scope.optJSONObject(engine) : null;
+            int n = e != null ? e.optInt("n") : 0;
+            if (n > 0 && e.optDouble("fail") > MAX_EXPLORE_FAIL_RATE) continue;
+            if (n < fewest) {
+                fewest = n;
+                fewestSampled.clear();
+            }
+            if (n == fewest) fewestSampled.add(engine);
+        }
+        return fewestSampled.isEmpty() ? null : fewestSampled.get(RANDOM.nextInt(fewestSampled.size()));
+    }
+
+    /** Counts a pick that never started nor finished (the app died with it) as a failure. */
+    private static void settlePending(Context context) {
+        String pending = prefs(context).getString(KEY_PENDING, null);
+        if (pending == null) return;
+        prefs(context).edit().remove(KEY_PENDING).apply();
+        int sep = pending.indexOf('\n');
+        if (sep <= 0) return;
+        String engine = pending.substring(0, sep);
+        String url = pending.substring(sep + 1);
+        Log.w(TAG, engine + " never started last time; counting a failure");
+        record(context, engine, url.isEmpty() ? null : url, true, -1L, 0L, 0L);
+    }
+
+    private static void clearPending(Context context, String engine, String url) {
+        SharedPreferences p = prefs(context);
+        if (pendingKey(engine, url).equals(p.getString(KEY_PENDING, null))) {
+            p.edit().remove(KEY_PENDING).apply();
+        }
+    }
+
+    private static String pendingKey(String engine, String url) {
+        return engine + "\n" + (url != null ? url : "");
+    }
+
+    private static int countSampled(JSONObject scope) {
+        if (scope == null) return 0;
+        int count = 0;
+        for (String engine : ENGINES) {
+            JSONObject e = scope.optJSONObject(engine);
+            if (e != null && e.optInt("n") >= MIN_SAMPLES) count++;
+        }
+        return count;
+    }
+
+    /** Keeps the device entry and the most recently used hosts. */
+    private static void trimHosts(JSONObject all) {
+        while (all.length() > MAX_HOSTS + 1) {
+            String oldest = null;
+            long oldestT = Long.MAX_VALUE;
+            Iterator<String> keys = all.keys();
+            while (keys.hasNext()) {
+                String k = keys.next();
+                if (k.equals(deviceKey())) continue;
+                JSONObject scope = all.optJSONObject(k);
+                long t = scope != null ? scope.optLong("t") : 0L;
+                if (t < oldestT) {
+                    oldestT = t;
+                    oldest = k;
+                }
+            }
+            if (oldest == null) return;
+            all.remove(oldest);
+        }
+    }
+
+    private static boolean isKnown(String engine) {
+        for (String e : ENGINES) {
+            if (e.equals(engine)) return true;
+        }
+        return false;
+    }
+
+    private static String deviceKey() {
+        return "device:" + PlaybackTracer.deviceModel();
+    }
+
+    private static String hostKey(String url) {
+        String host = PlaybackTracer.hostOf(url);
+        return host.isEmpty() ? deviceKey() : "host:" + host;
+    }
+
+    private static JSONObject load(Context context) {
+        if (stats != null) return stats;
+        String raw = prefs(context).getString(KEY_STATS, null);
+        try {
+            stats = raw != null ? new JSONObject(raw) : new JSONObject();
+        } catch (Exception e) {
+            stats = new JSONObject();
+        }
+        return stats;
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getApplicationContext().getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+}
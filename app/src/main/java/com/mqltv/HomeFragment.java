@@ -18,9 +18,7 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -32,7 +30,17 @@ public class HomeFragment extends Fragment {
     private ProgressBar progress;
     private TextView errorText;
 
-    private volatile List<Channel> lastChannels;
+    private volatile ChannelCatalog.Snapshot lastSnapshot;
+    // Main thread only.
+    private long shownVersion = -1;
+
+    // Replaces a cached or partial list once the catalog publishes a newer one.
+    private final ChannelCatalog.Listener catalogListener = snapshot -> {
+        Context ctx = getContext();
+        if (ctx == null || adapter == null || snapshot.version <= shownVersion) return;
+        final Context appContext = ctx.getApplicationContext();
+        executor.execute(() -> show(appContext, snapshot));
+    };
 
     @Nullable
     @Override
@@ -48,38 +56,34 @@ public class HomeFragment extends Fragment {
         adapter = new HomeSectionAdapter();
         list.setAdapter(adapter);
 
+        ChannelCatalog.get().addListener(catalogListener);
         load(appContext);
         return v;
     }
 
-    @SuppressLint("SetTextI18n")
     private void load(Context appContext) {
         setLoading(true);
-        executor.execute(() -> {
-            PlaylistRepository repo = new PlaylistRepository();
-            List<Channel> channels = repo.loadFromUrls(appContext, AuthPrefs.getPlaylistUrls(appContext));
-            AuthPrefs.getPlaylistUrl(appContext);
-            boolean hasServerPlaylist = !AuthPrefs.getPlaylistUrl(appContext).trim().isEmpty();
-            if ((channels == null || channels.isEmpty()) && !hasServerPlaylist) {
-                channels = repo.loadDefault(appContext);
-            }
+        executor.execute(() -> show(appContext, ChannelCatalog.get().load(appContext)));
+    }
 
-            lastChannels = channels;
-            List<HomeSection> sections = buildSections(appContext, channels);
-
-            mainHandler.post(() -> {
-                if (adapter == null) return;
-                setLoading(false);
-                if (sections.isEmpty()) {
-                    if (errorText != null) {
-                        errorText.setText("Playlist kosong atau gagal dimuat");
-                        errorText.setVisibility(View.VISIBLE);
-                    }
-                } else {
-                    if (errorText != null) errorText.setVisibility(View.GONE);
+    /** Worker thread: builds the sections of {@code snapshot} and shows them unless a newer one is shown. */
+    @SuppressLint("SetTextI18n")
+    private void show(Context appContext, ChannelCatalog.Snapshot snapshot) {
+        List<HomeSection> sections = buildSections(appContext, snapshot);
+        mainHandler.post(() -> {
+            if (adapter == null || snapshot.version < shownVersion) return;
+            shownVersion = snapshot.version;
+            lastSnapshot = snapshot;
+            setLoading(false);
+            if (sections.isEmpty()) {
+                if (errorText != null) {
+                    errorText.setText("Playlist kosong atau gagal dimuat");
+                    errorText.setVisibility(View.VISIBLE);
                 }
-                adapter.submit(sections);
-            });
+            } else {
+                if (errorText != null) errorText.setVisibility(View.GONE);
+            }
+            adapter.submit(sections);
         });
     }
 
@@ -88,9 +92,10 @@ public class HomeFragment extends Fragment {
         if (errorText != null && loading) errorText.setVisibility(View.GONE);
     }
 
-    private static List<HomeSection> buildSections(Context appContext, List<Channel> channels) {
+    private static List<HomeSection> buildSections(Context appContext, ChannelCatalog.Snapshot snapshot) {
         List<HomeSection> result = new ArrayList<>();
-        if (channels == null || channels.isEmpty()) return result;
+        List<Channel> channels = snapshot.channels;
+        if (channels.isEmpty()) return result;
 
         List<Channel> recent = RecentChannelsStore.load(appContext);
         if (recent != null && !recent.isEmpty()) {
@@ -100,25 +105,14 @@ public class HomeFragment extends Fragment {
             result.add(new HomeSection("Recent", new ArrayList<>(channels.subList(0, recentCount))));
         }
 
-        Map<String, List<Channel>> byGroup = new LinkedHashMap<>();
-        for (Channel c : channels) {
-            String group = c.getGroupTitle();
-            if (group == null || group.trim().isEmpty()) group = "Other";
-            List<Channel> list = byGroup.get(group);
-            if (list == null) {
-                list = new ArrayList<>();
-                byGroup.put(group, list);
-            }
-            list.add(c);
-        }
-
-        for (Map.Entry<String, List<Channel>> e : byGroup.entrySet()) {
-            if (!"Other".equals(e.getKey())) {
-                result.add(new HomeSection(e.getKey(), e.getValue()));
-            }
+        // Sections are views from the snapshot's category index, built once per playlist load.
+        CategoryIndex index = snapshot.categories;
+        for (CategoryIndex.Category c : index.getCategories()) {
+            result.add(new HomeSection(c.name, index.channelsOf(c)));
         }
-        if (byGroup.containsKey("Other")) {
-            result.add(new HomeSection("Other", byGroup.get("Other")));
+        List<Channel> other = index.getUngroupedRows();
+        if (!other.isEmpty()) {
+            result.add(new HomeSection("Other", other));
         }
         return result;
     }
@@ -126,6 +120,8 @@ public class HomeFragment extends Fragment {
     @Override
     public void onDestroyView() {
         super.onDestroyView();
+        ChannelCatalog.get().removeListener(catalogListener);
+        shownVersion = -1;
         adapter = null;
         progress = null;
         errorText = null;
@@ -135,7 +131,7 @@ public class HomeFragment extends Fragment {
     public void onResume() {
         super.onResume();
         if (adapter == null) return;
-        List<Channel> snapshot = lastChannels;
+        ChannelCatalog.Snapshot snapshot = lastSnapshot;
         if (snapshot == null || snapshot.isEmpty()) return;
         Context appContext = requireContext().getApplicationContext();
         adapter.submit(buildSections(appContext, snapshot));
@@ -13,12 +13,23 @@ public final class LauncherAppEntry {
     public final Drawable icon;
     public final ComponentName component;
     public final boolean isAddButton;
+    public final boolean isSystem;
+    /** Installer label shown under the title, or null. */
+    @Nullable
+    public final String subtitle;
 
     public LauncherAppEntry(String label, Drawable icon, ComponentName component, boolean isAddButton) {
+        this(label, icon, component, isAddButton, false, null);
+    }
+
+    public LauncherAppEntry(String label, Drawable icon, ComponentName component, boolean isAddButton,
+                            boolean isSystem, @Nullable String subtitle) {
         this.label = label;
         this.icon = icon;
         this.component = component;
         this.isAddButton = isAddButton;
+        this.isSystem = isSystem;
+        this.subtitle = subtitle;
     }
 
     public static LauncherAppEntry fromResolveInfo(ResolveInfo ri, android.content.pm.PackageManager pm) {
@@ -53,7 +64,9 @@ public final class LauncherAppEntry {
             }
         }
 
-        return new LauncherAppEntry(label, icon, cn, false);
+        ApplicationInfo app = ri.activityInfo != null ? ri.activityInfo.applicationInfo : null;
+        boolean isSystem = app != null && (app.flags & ApplicationInfo.FLAG_SYSTEM) != 0;
+        return new LauncherAppEntry(label, icon, cn, false, isSystem, null);
     }
 
     @Nullable
@@ -2,8 +2,6 @@ package com.mqltv;
 
 import android.annotation.SuppressLint;
 import android.content.Context;
-import android.content.pm.ApplicationInfo;
-import android.content.pm.PackageManager;
 import android.graphics.Color;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.GradientDrawable;
@@ -76,7 +74,7 @@ public class LauncherAppsAdapter extends RecyclerView.Adapter<LauncherAppsAdapte
             holder.icon.clearColorFilter();
 
             if (holder.subtitle != null) {
-                String sub = resolveSubtitle(ctx, e);
+                String sub = e.subtitle;
                 if (sub == null || sub.trim().isEmpty()) {
                     holder.subtitle.setVisibility(View.GONE);
                 } else {
@@ -183,26 +181,4 @@ public class LauncherAppsAdapter extends RecyclerView.Adapter<LauncherAppsAdapte
         float d = ctx.getResources().getDisplayMetrics().density;
         return Math.round(dp * d);
     }
-
-    private static String resolveSubtitle(Context ctx, LauncherAppEntry e) {
-        if (e == null || e.component == null) return null;
-        String pkg = e.component.getPackageName();
-
-        PackageManager pm = ctx.getPackageManager();
-        String installer = null;
-        try {
-            installer = pm.getInstallerPackageName(pkg);
-        } catch (Exception ignored) {
-        }
-        if (installer == null || installer.trim().isEmpty()) return null;
-
-        // Prefer showing a friendly store/app label (e.g. "Google Play").
-        try {
-            ApplicationInfo ai = pm.getApplicationInfo(installer, 0);
-            CharSequence label = pm.getApplicationLabel(ai);
-            return label.toString();
-        } catch (Exception ignored) {
-            return installer;
-        }
-    }
 }
@@ -0,0 +1,379 @@
+package com.mqltv;
+
+import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.ChangedPackages;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.Settings;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Launchable apps with labels, system flag, installer label and icons pre-rendered to bitmaps,
+ * kept in memory and in {@code filesDir/launcher_apps}.
+ *
+ * PackageManager is only scanned when there is no index yet or after {@link #invalidate} was
+ * called for a PACKAGE_ADDED/REMOVED/CHANGED broadcast (see {@link PackageChangeReceiver}), so
+ * coming back to the launcher after playback costs no binder calls. On API 26+ the app does not
+ * receive those broadcasts while it is not running; the package sequence number saved with the
+ * index catches changes made in the meantime.
+ */
+final class LauncherAppsIndex {
+    private static final String TAG = "LauncherAppsIndex";
+
+    private static final String DIR = "launcher_apps";
+    private static final String INDEX_FILE = "index.json";
+    private static final int FORMAT_VERSION = 1;
+    // Tiles show the icon at 40dp; render slightly larger so scaling stays sharp.
+    private static final int ICON_DP = 48;
+
+    private static final class App {
+        final ComponentName component;
+        final String label;
+        final String subtitle;
+        final boolean isSystem;
+        final Bitmap icon;
+
+        App(ComponentName component, String label, String subtitle, boolean isSystem, Bitmap icon) {
+            this.component = component;
+            this.label = label;
+            this.subtitle = subtitle;
+            this.isSystem = isSystem;
+            this.icon = icon;
+        }
+    }
+
+    private static final Object LOCK = new Object();
+    // Serializes writers, so two scans never interleave their files. invalidate() never takes it.
+    private static final Object WRITE_LOCK = new Object();
+    private static final Handler MAIN = new Handler(Looper.getMainLooper());
+    private static final CopyOnWriteArrayList<Runnable> LISTENERS = new CopyOnWriteArrayList<>();
+
+    private static List<App> apps;
+    // Bumped by invalidate(); a scan that started before it must not publish its result.
+    private static int generation;
+
+    private LauncherAppsIndex() {}
+
+    /**
+     * Worker thread. Returns every launchable app except this one, sorted by label. Each call
+     * gets its own entries and drawables, so lists can be shown in several places at once.
+     */
+    static List<LauncherAppEntry> load(Context context) {
+        Context appContext = context.getApplicationContext();
+        List<App> current;
+        int gen;
+        synchronized (LOCK) {
+            current = apps;
+            gen = generation;
+        }
+        if (current == null) {
+            boolean scanned = false;
+            current = readFromDisk(appContext);
+            if (current == null) {
+                current = scan(appContext);
+                scanned = true;
+            }
+            boolean publish;
+            synchronized (LOCK) {
+                publish = gen == generation;
+                if (publish) apps = current;
+            }
+            if (publish && scanned) writeToDisk(appContext, current, gen);
+        }
+
+        List<LauncherAppEntry> out = new ArrayList<>(current.size());
+        for (App a : current) {
+            Drawable icon = new BitmapDrawable(appContext.getResources(), a.icon);
+            out.add(new LauncherAppEntry(a.label, icon, a.component, false, a.isSystem, a.subtitle));
+        }
+        return out;
+    }
+
+    /** Any thread. Drops the memory and disk index; the next {@link #load} rescans. */
+    static void invalidate(Context context) {
+        synchronized (LOCK) {
+            apps = null;
+            generation++;
+        }
+        try {
+            new File(new File(context.getFilesDir(), DIR), INDEX_FILE).delete();
+        } catch (Exception ignored) {
+        }
+        MAIN.post(() -> {
+            for (Runnable r : LISTENERS) r.run();
+        });
+    }
+
+    /** Main-thread callback after the installed apps changed. */
+    static void addListener(Runnable listener) {
+        if (listener != null) LISTENERS.addIfAbsent(listener);
+    }
+
+    static void removeListener(Runnable listener) {
+        LISTENERS.remove(listener);
+    }
+
+    @SuppressLint("QueryPermissionsNeeded")
+    private static List<App> scan(Context ctx) {
+        long start = System.currentTimeMillis();
+        PackageManager pm = ctx.getPackageManager();
+        List<App> out = new ArrayList<>();
+
+        // Query LAUNCHER and LEANBACK_LAUNCHER and merge.
+        List<ResolveInfo> resolved = new ArrayList<>();
+        try {
+            Intent i1 = new Intent(Intent.ACTION_MAIN);
+            i1.addCategory(Intent.CATEGORY_LAUNCHER);
+            resolved.addAll(pm.queryIntentActivities(i1, 0));
+        } catch (Exception ignored) {
+        }
+        try {
+            Intent i2 = new Intent(Intent.ACTION_MAIN);
+            i2.addCategory("android.intent.category.LEANBACK_LAUNCHER");
+            resolved.addAll(pm.queryIntentActivities(i2, 0));
+        } catch (Exception ignored) {
+        }
+
+        int iconPx = Math.round(ICON_DP * ctx.getResources().getDisplayMetrics().density);
+        Set<String> seen = new HashSet<>();
+        for (ResolveInfo ri : resolved) {
+            if (ri == null || ri.activityInfo == null) continue;
+            ComponentName cn = new ComponentName(ri.activityInfo.packageName, ri.activityInfo.name);
+            // Exclude our own app.
+            if (ctx.getPackageName().equals(cn.getPackageName())) continue;
+            if (!seen.add(cn.flattenToString())) continue;
+            try {
+                LauncherAppEntry e = LauncherAppEntry.fromResolveInfo(ri, pm);
+                Bitmap icon = render(e.icon, iconPx);
+                if (icon == null) continue;
+                out.add(new App(cn, e.label, installerLabel(pm, cn.getPackageName()), e.isSystem, icon));
+            } catch (Exception ignored) {
+            }
+        }
+
+        // Sort by label (avoid List.sort for Android 4.x compatibility).
+        Collections.sort(out, (a, b) -> {
+            String la = a.label != null ? a.label : "";
+            String lb = b.label != null ? b.label : "";
+            return la.compareToIgnoreCase(lb);
+        });
+        Log.i(TAG, "scanned " + out.size() + " apps in " + (System.currentTimeMillis() - start) + "ms");
+        return out;
+    }
+
+    private static Bitmap render(Drawable d, int maxPx) {
+        if (d == null) return null;
+        if (d instanceof BitmapDrawable) {
+            Bitmap b = ((BitmapDrawable) d).getBitmap();
+            if (b != null && b.getWidth() <= maxPx && b.getHeight() <= maxPx) return b;
+        }
+        int w = d.getIntrinsicWidth();
+        int h = d.getIntrinsicHeight();
+        if (w <= 0 || h <= 0) {
+            w = maxPx;
+            h = maxPx;
+        }
+        float scale = Math.min(1f, Math.min(maxPx / (float) w, maxPx / (float) h));
+        w = Math.max(1, Math.round(w * scale));
+        h = Math.max(1, Math.round(h * scale));
+        Bitmap out = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+        Canvas c = new Canvas(out);
+        d.setBounds(0, 0, w, h);
+        d.draw(c);
+        return out;
+    }
+
+    /** Friendly label of the store that installed the package (e.g. "Google Play"), or null. */
+    private static String installerLabel(PackageManager pm, String pkg) {
+        String installer = null;
+        try {
+            installer = pm.getInstallerPackageName(pkg);
+        } catch (Exception ignored) {
+        }
+        if (installer == null || installer.trim().isEmpty()) return null;
+        try {
+            ApplicationInfo ai = pm.getApplicationInfo(installer, 0);
+            return pm.getApplicationLabel(ai).toString();
+        } catch (Exception ignored) {
+            return installer;
+        }
+    }
+
+    private static List<App> readFromDisk(Context ctx) {
+        File dir = new File(ctx.getFilesDir(), DIR);
+        File index = new File(dir, INDEX_FILE);
+        if (!index.isFile()) return null;
+        try {
+            JSONObject root = new JSONObject(readText(index));
+            if (root.optInt("version") != FORMAT_VERSION) return null;
+            if (packagesChangedSince(ctx, root)) return null;
+
+            JSONArray arr = root.getJSONArray("apps");
+            List<App> out = new ArrayList<>(arr.length());
+            for (int i = 0; i < arr.length(); i++) {
+                JSONObject o = arr.getJSONObject(i);
+                ComponentName cn = ComponentName.unflattenFromString(o.getString("component"));
+                Bitmap icon = BitmapFactory.decodeFile(new File(dir, o.getString("icon")).getAbsolutePath());
+                // A missing piece means the index is not trustworthy; rebuild it.
+                if (cn == null || icon == null) return null;
+                String subtitle = o.has("subtitle") ? o.getString("subtitle") : null;
+                out.add(new App(cn, o.optString("label", "App"), subtitle, o.optBoolean("system"), icon));
+            }
+            return out;
+        } catch (Exception e) {
+            Log.w(TAG, "index unreadable, rescanning", e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the icons and the index under names unique to this call; only the final rename of
+     * the index takes {@link #LOCK}, and it is skipped if {@link #invalidate} ran since the scan
+     * of generation {@code gen}, so a stale index never lands on disk.
+     */
+    private static void writeToDisk(Context ctx, List<App> list, int gen) {
+        File dir = new File(ctx.getFilesDir(), DIR);
+        synchronized (WRITE_LOCK) {
+            String prefix = "icon_" + Long.toHexString(System.currentTimeMillis()) + "_";
+            File tmp = new File(dir, INDEX_FILE + ".tmp");
+            boolean committed = false;
+            try {
+                if (!dir.isDirectory() && !dir.mkdirs()) return;
+
+                JSONArray arr = new JSONArray();
+                for (int i = 0; i < list.size(); i++) {
+                    App a = list.get(i);
+                    String iconName = prefix + i + ".png";
+                    OutputStream os = new FileOutputStream(new File(dir, iconName));
+                    try {
+                        a.icon.compress(Bitmap.CompressFormat.PNG, 100, os);
+                    } finally {
+                        os.close();
+                    }
+                    JSONObject o = new JSONObject();
+                    o.put("component", a.component.flattenToString());
+                    o.put("label", a.label);
+                    if (a.subtitle != null) o.put("subtitle", a.subtitle);
+                    o.put("system", a.isSystem);
+                    o.put("icon", iconName);
+                    arr.put(o);
+                }
+
+                JSONObject root = new JSONObject();
+                root.put("version", FORMAT_VERSION);
+                putPackageSequence(ctx, root);
+                root.put("apps", arr);
+
+                // Written last and renamed into place, so a half-written index is never read.
+                OutputStream os = new FileOutputStream(tmp);
+                try {
+                    os.write(root.toString().getBytes("UTF-8"));
+                } finally {
+                    os.close();
+                }
+                synchronized (LOCK) {
+                    committed = gen == generation && tmp.renameTo(new File(dir, INDEX_FILE));
+                }
+            } catch (Exception e) {
+                Log.w(TAG, "index write failed", e);
+            }
+
+            // Drop the icons of the previous index, or ours if the index was not replaced.
+            File[] files = dir.listFiles();
+            if (files == null) return;
+            for (File f : files) {
+                String name = f.getName();
+                if (name.equals(INDEX_FILE)) continue;
+                if (committed && name.startsWith(prefix)) continue;
+                //noinspection ResultOfMethodCallIgnored
+                f.delete();
+            }
+        }
+    }
+
+    private static void putPackageSequence(Context ctx, JSONObject root) throws Exception {
+        if (Build.VERSION.SDK_INT < 26) return;
+        root.put("bootCount", bootCount(ctx));
+        root.put("sequence", packageSequence(ctx.getPackageManager()));
+    }
+
+    /**
+     * API 26+ only: package broadcasts are not delivered while the app is not running, so ask
+     * PackageManager whether anything changed since the index was written. The sequence number
+     * restarts on reboot, so a different boot count also forces a rescan.
+     */
+    @TargetApi(26)
+    private static boolean packagesChangedSince(Context ctx, JSONObject root) {
+        if (Build.VERSION.SDK_INT < 26) return false;
+        if (!root.has("sequence") || root.optInt("bootCount", -1) != bootCount(ctx)) return true;
+        try {
+            ChangedPackages changed = ctx.getPackageManager().getChangedPackages(root.getInt("sequence"));
+            return changed != null && !changed.getPackageNames().isEmpty();
+        } catch (Exception ignored) {
+            return true;
+        }
+    }
+
+    @TargetApi(26)
+    private static int packageSequence(PackageManager pm) {
+        try {
+            ChangedPackages all = pm.getChangedPackages(0);
+            return all != null ? all.getSequenceNumber() : 0;
+        } catch (Exception ignored) {
+            return 0;
+        }
+    }
+
+    @TargetApi(24)
+    private static int bootCount(Context ctx) {
+        try {
+            return Settings.Global.getInt(ctx.getContentResolver(), Settings.Global.BOOT_COUNT, -1);
+        } catch (Exception ignored) {
+            return -1;
+        }
+    }
+
+    private static String readText(File f) throws Exception {
+        InputStream is = new FileInputStream(f);
+        try {
+            byte[] buf = new byte[(int) f.length()];
+            int off = 0;
+            while (off < buf.length) {
+                int n = is.read(buf, off, buf.length - off);
+                if (n < 0) break;
+                off += n;
+            }
+            return new String(buf, 0, off, "UTF-8");
+        } finally {
+            is.close();
+        }
+    }
+}
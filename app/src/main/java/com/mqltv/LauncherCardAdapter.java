@@ -1,6 +1,7 @@
 package com.mqltv;
 
 import android.annotation.SuppressLint;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.graphics.drawable.GradientDrawable;
 import android.graphics.drawable.StateListDrawable;
@@ -21,6 +22,7 @@ import androidx.core.view.ViewCompat;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.android.exoplayer2.ExoPlaybackException;
+import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.MediaItem;
 import com.google.android.exoplayer2.Player;
 import com.google.android.exoplayer2.SimpleExoPlayer;
@@ -58,6 +60,18 @@ public class LauncherCardAdapter extends RecyclerView.Adapter<LauncherCardAdapte
     private boolean liveTvBgRenderedFirstFrame;
     private boolean liveTvBgPrepared;
     private boolean hostActive = true;
+    private boolean trimmedForMemory;
+
+    // The background video is decoration: release it once memory is critical or the launcher is
+    // hidden (levels >= RUNNING_CRITICAL); it is rebuilt when the host becomes active again.
+    private final MemoryPressureCoordinator.Trimmable trimmable = level -> {
+        if (liveTvBgPlayer == null || level < ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) return 0;
+        long freed = estimateBufferedBytes(liveTvBgPlayer);
+        Log.i(TAG, "releasing bg player for memory level=" + level);
+        release();
+        trimmedForMemory = true;
+        return freed;
+    };
 
     public LauncherCardAdapter(Listener listener) {
         this.listener = listener;
@@ -68,8 +82,15 @@ public class LauncherCardAdapter extends RecyclerView.Adapter<LauncherCardAdapte
         notifyDataSetChanged();
     }
 
+    @SuppressLint("NotifyDataSetChanged")
     public void setHostActive(boolean active) {
         hostActive = active;
+        if (active && trimmedForMemory && liveTvBgPlayer == null) {
+            // Rebind so the Live TV card recreates the player released by a memory trim.
+            trimmedForMemory = false;
+            notifyDataSetChanged();
+            return;
+        }
         if (liveTvBgPlayer != null) {
             try {
                 if (active && !liveTvBgFailed) {
@@ -83,6 +104,7 @@ public class LauncherCardAdapter extends RecyclerView.Adapter<LauncherCardAdapte
     }
 
     public void release() {
+        MemoryPressureCoordinator.get().unregister(trimmable);
         try {
             if (liveTvBgPlayer != null) {
                 liveTvBgPlayer.release();
@@ -362,6 +384,7 @@ public class LauncherCardAdapter extends RecyclerView.Adapter<LauncherCardAdapte
             }, 6000);
 
             liveTvBgPlayer = p;
+            MemoryPressureCoordinator.get().register(trimmable);
             return p;
         } catch (Exception e) {
             Log.e(TAG, "failed creating bg player", e);
@@ -370,6 +393,17 @@ public class LauncherCardAdapter extends RecyclerView.Adapter<LauncherCardAdapte
         }
     }
 
+    /** Media held in the player's buffer, from its buffered duration and the stream bitrate. */
+    private static long estimateBufferedBytes(SimpleExoPlayer p) {
+        try {
+            Format f = p.getVideoFormat();
+            int bitrate = f != null && f.bitrate > 0 ? f.bitrate : 2_000_000;
+            return Math.max(0, p.getTotalBufferedDuration()) * bitrate / 8 / 1000;
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
     private static StateListDrawable createCardBackground(Context context, LauncherCardStyle style, int radiusDp) {
         int radius = dp(context, radiusDp);
 
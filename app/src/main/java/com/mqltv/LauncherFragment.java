@@ -1,18 +1,15 @@
 package com.mqltv;
 
-import android.annotation.SuppressLint;
 import android.app.AlertDialog;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.content.pm.ApplicationInfo;
-import android.content.pm.PackageManager;
-import android.content.pm.ResolveInfo;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -45,7 +42,11 @@ public class LauncherFragment extends Fragment implements LauncherCardAdapter.Li
     private LauncherCardAdapter adapter;
 
     private LauncherAppsAdapter appsAdapter;
-    private List<LauncherAppEntry> allLaunchableAppsCache;
+
+    // Installed apps changed while the launcher is showing.
+    private final Runnable appsChangedListener = () -> {
+        if (getContext() != null) loadLauncherApps(getContext().getApplicationContext());
+    };
 
     private TextView recentTitle;
     private RecyclerView recentList;
@@ -53,6 +54,15 @@ public class LauncherFragment extends Fragment implements LauncherCardAdapter.Li
 
     private TextView headerTime;
     private ImageView headerNet;
+    private ImageView wallpaperView;
+
+    // A background refresh stored a new wallpaper.
+    private final Runnable wallpaperListener = () -> {
+        if (getContext() != null) loadWallpaper(getContext().getApplicationContext());
+    };
+
+    // A cached playlist may be replaced by a revalidated one after the launcher is shown.
+    private final ChannelCatalog.Listener catalogListener = snapshot -> showCounts(snapshot.channels.size());
 
     private final Runnable headerTicker = new Runnable() {
         @Override
@@ -79,36 +89,16 @@ public class LauncherFragment extends Fragment implements LauncherCardAdapter.Li
         mainHandler.removeCallbacks(headerTicker);
         mainHandler.post(headerTicker);
 
-        ImageView wallpaper = v.findViewById(R.id.launcher_wallpaper);
-        if (wallpaper != null) {
+        wallpaperView = v.findViewById(R.id.launcher_wallpaper);
+        if (wallpaperView != null) {
             try {
                 // Avoid showing a temporary fallback image; fade in when wallpaper is ready.
-                wallpaper.setImageDrawable(null);
-                wallpaper.setAlpha(0f);
+                wallpaperView.setImageDrawable(null);
+                wallpaperView.setAlpha(0f);
             } catch (Exception ignored) {
             }
-            executor.execute(() -> {
-                Bitmap bmp = LauncherWallpaper.tryLoad(appContext);
-                if (bmp != null) {
-                    mainHandler.post(() -> {
-                        try {
-                            wallpaper.setImageBitmap(bmp);
-                            wallpaper.animate().alpha(1f).setDuration(250).start();
-                        } catch (Exception ignored) {
-                        }
-                    });
-
-                    // Derive card gradient colors from wallpaper.
-                    LauncherCardStyle style = LauncherCardStyle.fromWallpaper(appContext, bmp);
-                    if (style != null) {
-                        mainHandler.post(() -> {
-                            if (adapter != null) {
-                                adapter.setCardStyle(style);
-                            }
-                        });
-                    }
-                }
-            });
+            LauncherWallpaper.addListener(wallpaperListener);
+            loadWallpaper(appContext);
         }
 
         View search = v.findViewById(R.id.launcher_search);
@@ -226,6 +216,8 @@ public class LauncherFragment extends Fragment implements LauncherCardAdapter.Li
             }
         });
 
+        ChannelCatalog.get().addListener(catalogListener);
+        LauncherAppsIndex.addListener(appsChangedListener);
         loadCounts(appContext);
         loadLauncherApps(appContext);
         loadRecentLive(appContext);
@@ -294,25 +286,19 @@ public class LauncherFragment extends Fragment implements LauncherCardAdapter.Li
 
     private void loadCounts(Context appContext) {
         executor.execute(() -> {
-            PlaylistRepository repo = new PlaylistRepository();
-            List<Channel> channels = repo.loadFromUrls(appContext, AuthPrefs.getPlaylistUrls(appContext));
-            AuthPrefs.getPlaylistUrl(appContext);
-            boolean hasServerPlaylist = !AuthPrefs.getPlaylistUrl(appContext).trim().isEmpty();
-            if ((channels == null || channels.isEmpty()) && !hasServerPlaylist) {
-                channels = repo.loadDefault(appContext);
-            }
-            final int liveCount = channels != null ? channels.size() : 0;
-
-            mainHandler.post(() -> {
-                if (adapter == null) return;
-                List<LauncherCard> cards = new ArrayList<>();
-                cards.add(new LauncherCard("Live TV's", "+" + liveCount + " Channels", R.drawable.tv_play_icon, NavDestination.LIVE_TV));
-                cards.add(new LauncherCard("Radios", "+0 Stations", R.drawable.internet_radio_icon, NavDestination.SHOWS));
-                adapter.submit(cards);
-            });
+            final int liveCount = ChannelCatalog.get().load(appContext).channels.size();
+            mainHandler.post(() -> showCounts(liveCount));
         });
     }
 
+    private void showCounts(int liveCount) {
+        if (adapter == null) return;
+        List<LauncherCard> cards = new ArrayList<>();
+        cards.add(new LauncherCard("Live TV's", "+" + liveCount + " Channels", R.drawable.tv_play_icon, NavDestination.LIVE_TV));
+        cards.add(new LauncherCard("Radios", "+0 Stations", R.drawable.internet_radio_icon, NavDestination.SHOWS));
+        adapter.submit(cards);
+    }
+
     @Override
     public void onDestroy() {
         super.onDestroy();
@@ -324,6 +310,10 @@ public class LauncherFragment extends Fragment implements LauncherCardAdapter.Li
     public void onDestroyView() {
         super.onDestroyView();
         if (adapter != null) adapter.release();
+        ChannelCatalog.get().removeListener(catalogListener);
+        LauncherAppsIndex.removeListener(appsChangedListener);
+        LauncherWallpaper.removeListener(wallpaperListener);
+        wallpaperView = null;
         mainHandler.removeCallbacks(headerTicker);
         headerTime = null;
         headerNet = null;
@@ -333,9 +323,7 @@ public class LauncherFragment extends Fragment implements LauncherCardAdapter.Li
         if (appsAdapter == null) return;
 
         executor.execute(() -> {
-            PackageManager pm = appContext.getPackageManager();
-            List<LauncherAppEntry> all = queryAllLaunchableApps(pm, appContext);
-            allLaunchableAppsCache = all;
+            List<LauncherAppEntry> all = LauncherAppsIndex.load(appContext);
 
             // Load pinned (user selected). If empty, seed with a few system apps.
             List<String> pinned = PinnedAppsStore.load(appContext);
@@ -360,6 +348,41 @@ public class LauncherFragment extends Fragment implements LauncherCardAdapter.Li
         });
     }
 
+    private void loadWallpaper(Context appContext) {
+        final ImageView target = wallpaperView;
+        if (target == null) return;
+        final long requestedAt = SystemClock.uptimeMillis();
+        executor.execute(() -> {
+            // Local files only; LauncherWallpaper never touches the network here.
+            Bitmap bmp = LauncherWallpaper.tryLoad(appContext);
+            if (bmp == null) return;
+            mainHandler.post(() -> {
+                if (wallpaperView != target) return;
+                try {
+                    target.setImageBitmap(bmp);
+                    // The prepared wallpaper is usually ready before the first frame; only
+                    // fade in when it had to be decoded.
+                    if (SystemClock.uptimeMillis() - requestedAt < 100) {
+                        target.setAlpha(1f);
+                    } else {
+                        target.animate().alpha(1f).setDuration(250).start();
+                    }
+                } catch (Exception ignored) {
+                }
+            });
+
+            // Derive card gradient colors from wallpaper.
+            LauncherCardStyle style = LauncherCardStyle.fromWallpaper(appContext, bmp);
+            if (style != null) {
+                mainHandler.post(() -> {
+                    if (adapter != null) {
+                        adapter.setCardStyle(style);
+                    }
+                });
+            }
+        });
+    }
+
     private void loadRecentLive(Context appContext) {
         if (recentAdapter == null) return;
 
@@ -380,8 +403,7 @@ public class LauncherFragment extends Fragment implements LauncherCardAdapter.Li
 
     private void showAddAppDialog(Context appContext) {
         executor.execute(() -> {
-            PackageManager pm = appContext.getPackageManager();
-            List<LauncherAppEntry> all = allLaunchableAppsCache != null ? allLaunchableAppsCache : queryAllLaunchableApps(pm, appContext);
+            List<LauncherAppEntry> all = LauncherAppsIndex.load(appContext);
 
             List<String> pinned = PinnedAppsStore.load(appContext);
 
@@ -392,13 +414,7 @@ public class LauncherFragment extends Fragment implements LauncherCardAdapter.Li
                 if (appContext.getPackageName().equals(e.component.getPackageName())) continue;
                 if (pinned.contains(e.component.flattenToString())) continue;
 
-                boolean isSystem = false;
-                try {
-                    ApplicationInfo ai = pm.getApplicationInfo(e.component.getPackageName(), 0);
-                    isSystem = (ai.flags & ApplicationInfo.FLAG_SYSTEM) != 0;
-                } catch (Exception ignored) {
-                }
-                if (!isSystem) {
+                if (!e.isSystem) {
                     candidates.add(e);
                 }
             }
@@ -500,7 +516,6 @@ public class LauncherFragment extends Fragment implements LauncherCardAdapter.Li
     private static List<String> seedDefaultSystemApps(Context appContext, List<LauncherAppEntry> all) {
         List<String> pinned = new ArrayList<>();
         if (all == null) return pinned;
-        PackageManager pm = appContext.getPackageManager();
 
         // Prefer Settings if present.
         for (LauncherAppEntry e : all) {
@@ -516,13 +531,7 @@ public class LauncherFragment extends Fragment implements LauncherCardAdapter.Li
             if (appContext.getPackageName().equals(e.component.getPackageName())) continue;
             if (pinned.contains(e.component.flattenToString())) continue;
 
-            boolean isSystem = false;
-            try {
-                ApplicationInfo ai = pm.getApplicationInfo(e.component.getPackageName(), 0);
-                isSystem = (ai.flags & ApplicationInfo.FLAG_SYSTEM) != 0;
-            } catch (Exception ignored) {
-            }
-            if (isSystem) {
+            if (e.isSystem) {
                 pinned.add(e.component.flattenToString());
                 if (pinned.size() >= 6) break;
             }
@@ -542,54 +551,6 @@ public class LauncherFragment extends Fragment implements LauncherCardAdapter.Li
         return null;
     }
 
-    @SuppressLint("QueryPermissionsNeeded")
-    private static List<LauncherAppEntry> queryAllLaunchableApps(PackageManager pm, Context ctx) {
-        List<LauncherAppEntry> out = new ArrayList<>();
-        if (pm == null || ctx == null) return out;
-
-        // Query LAUNCHER and LEANBACK_LAUNCHER and merge.
-        List<ResolveInfo> resolved = new ArrayList<>();
-        try {
-            Intent i1 = new Intent(Intent.ACTION_MAIN);
-            i1.addCategory(Intent.CATEGORY_LAUNCHER);
-            resolved.addAll(pm.queryIntentActivities(i1, 0));
-        } catch (Exception ignored) {
-        }
-        try {
-            Intent i2 = new Intent(Intent.ACTION_MAIN);
-            i2.addCategory("android.intent.category.LEANBACK_LAUNCHER");
-            resolved.addAll(pm.queryIntentActivities(i2, 0));
-        } catch (Exception ignored) {
-        }
-
-        // Dedup by component.
-        List<String> seen = new ArrayList<>();
-        for (ResolveInfo ri : resolved) {
-            if (ri == null || ri.activityInfo == null) continue;
-            ComponentName cn = new ComponentName(ri.activityInfo.packageName, ri.activityInfo.name);
-            String key = cn.flattenToString();
-            if (seen.contains(key)) continue;
-            seen.add(key);
-            try {
-                LauncherAppEntry e = LauncherAppEntry.fromResolveInfo(ri, pm);
-                // Exclude our own app.
-                if (ctx.getPackageName().equals(cn.getPackageName())) continue;
-                if (e.icon == null) continue;
-                out.add(e);
-            } catch (Exception ignored) {
-            }
-        }
-
-        // Sort by label (avoid List.sort for Android 4.x compatibility).
-        java.util.Collections.sort(out, (a, b) -> {
-            String la = a != null && a.label != null ? a.label : "";
-            String lb = b != null && b.label != null ? b.label : "";
-            return la.compareToIgnoreCase(lb);
-        });
-
-        return out;
-    }
-
     @Override
     public void onCardClicked(LauncherCard card) {
         if (card == null) return;
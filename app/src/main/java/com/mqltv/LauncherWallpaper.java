@@ -1,13 +1,20 @@
 package com.mqltv;
 
+import android.app.ActivityManager;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Point;
 import android.os.Build;
+import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
 import android.util.DisplayMetrics;
+import android.view.WindowManager;
 
 import org.json.JSONObject;
 
@@ -17,7 +24,12 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import okhttp3.Request;
 import okhttp3.Response;
@@ -35,10 +47,34 @@ public final class LauncherWallpaper {
     public static final String SOURCE_CUSTOM = "custom";
     public static final String SOURCE_BING = "bing";
 
+    // Wallpaper already scaled and cropped to the display, stored as raw pixels.
+    private static final String PREPARED_FILE_NAME = "launcher_wallpaper.px";
+    private static final int PREPARED_MAGIC = 0x4d515750;
+    private static final Object PREPARE_LOCK = new Object();
+    private static final String ASSET_KEY = "asset:" + FILE_NAME;
+
     private static final String BING_API_URL = "https://bing.biturl.top/?resolution=UHD&format=json&index=0&mkt=id-ID";
 
+    private static final Handler MAIN = new Handler(Looper.getMainLooper());
+    private static final CopyOnWriteArrayList<Runnable> LISTENERS = new CopyOnWriteArrayList<>();
+
     private LauncherWallpaper() {}
 
+    /** Main-thread callback after a background refresh stored a new wallpaper. */
+    public static void addListener(Runnable listener) {
+        if (listener != null) LISTENERS.addIfAbsent(listener);
+    }
+
+    public static void removeListener(Runnable listener) {
+        LISTENERS.remove(listener);
+    }
+
+    private static void notifyChanged() {
+        MAIN.post(() -> {
+            for (Runnable r : LISTENERS) r.run();
+        });
+    }
+
     private static SharedPreferences prefs(Context context) {
         return context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
     }
@@ -73,6 +109,7 @@ public final class LauncherWallpaper {
 
     public static boolean clear(Context context) {
         try {
+            dropPrepared(context);
             File f = getFile(context);
             boolean ok = f != null && (!f.exists() || f.delete());
             // If user clears custom wallpaper, fall back to Bing auto mode.
@@ -81,6 +118,7 @@ public final class LauncherWallpaper {
                     prefs(context).edit().putString(KEY_SOURCE, SOURCE_BING).apply();
                 } catch (Exception ignored) {
                 }
+                WallpaperRefreshScheduler.refreshNow(context);
             }
             return ok;
         } catch (Exception ignored) {
@@ -156,28 +194,19 @@ public final class LauncherWallpaper {
             try {
                 File f = getFile(context);
                 if (f.exists() && f.length() > 0) {
-                    try (FileInputStream fis = new FileInputStream(f)) {
-                        return decodeScaled(context, new BufferedInputStream(fis));
-                    }
+                    return loadFile(context, f);
                 }
             } catch (Exception ignored) {
             }
         }
 
-        // 2) Auto Bing wallpaper (cached daily). Never do network on main thread.
-        // In auto mode (src != custom), try Bing first so auto-update actually changes
-        // even if a legacy custom wallpaper file exists.
+        // 2) Auto Bing wallpaper, kept current by WallpaperRefreshScheduler; only the local file
+        // is read here. In auto mode (src != custom), try Bing first so auto-update actually
+        // changes even if a legacy custom wallpaper file exists.
         try {
-            boolean mainThread = Looper.getMainLooper() == Looper.myLooper();
-            if (!mainThread) {
-                ensureBingUpToDate(context);
-            }
-
             File f = getBingFile(context);
             if (f.exists() && f.length() > 0) {
-                try (FileInputStream fis = new FileInputStream(f)) {
-                    return decodeScaled(context, new BufferedInputStream(fis));
-                }
+                return loadFile(context, f);
             }
         } catch (Exception ignored) {
         }
@@ -187,17 +216,17 @@ public final class LauncherWallpaper {
         try {
             File f = getFile(context);
             if (f.exists() && f.length() > 0) {
-                try (FileInputStream fis = new FileInputStream(f)) {
-                    return decodeScaled(context, new BufferedInputStream(fis));
-                }
+                return loadFile(context, f);
             }
         } catch (Exception ignored) {
         }
 
         // 4) Asset fallback (optional): app/src/main/assets/launcher_wallpaper.jpg
         try {
+            Bitmap prepared = readPrepared(context, ASSET_KEY);
+            if (prepared != null) return prepared;
             try (InputStream is = new BufferedInputStream(context.getAssets().open(FILE_NAME))) {
-                return decodeScaled(context, is);
+                return prepare(context, ASSET_KEY, decodeScaled(context, is));
             } catch (Exception ignored) {
             }
         } catch (Exception ignored) {
@@ -206,13 +235,18 @@ public final class LauncherWallpaper {
         return null;
     }
 
-    private static void ensureBingUpToDate(Context context) {
-        if (context == null) return;
+    /**
+     * Fetches today's Bing wallpaper if it is not cached yet. Network; called from
+     * {@link WallpaperRefreshScheduler}, never from the launcher. Returns false when the attempt
+     * failed and should be retried later.
+     */
+    static boolean refreshBing(Context context) {
+        if (context == null) return true;
 
         try {
             // Only run in auto mode if user hasn't set custom.
             String src = getSource(context);
-            if (SOURCE_CUSTOM.equals(src)) return;
+            if (SOURCE_CUSTOM.equals(src)) return true;
         } catch (Exception ignored) {
         }
 
@@ -237,11 +271,11 @@ public final class LauncherWallpaper {
             }
             if (!resp.isSuccessful() || resp.body() == null) {
                 Log.w(TAG, "Bing JSON failed: http=" + resp.code());
-                return;
+                return false;
             }
 
             String json = resp.body().string();
-            if (json.trim().isEmpty()) return;
+            if (json.trim().isEmpty()) return false;
 
             JSONObject obj = new JSONObject(json);
             String url = obj.optString("url", null);
@@ -249,21 +283,21 @@ public final class LauncherWallpaper {
 
             Log.d(TAG, "Bing JSON ok: date=" + date + " last=" + lastDate + " url=" + url);
 
-            if (url.trim().isEmpty()) return;
+            if (url == null || url.trim().isEmpty()) return false;
             url = url.trim();
             if (url.startsWith("//")) url = "https:" + url;
             if (!url.startsWith("http://") && !url.startsWith("https://")) {
                 url = "https://www.bing.com" + (url.startsWith("/") ? "" : "/") + url;
             }
 
-            boolean upToDate = cached.exists() && cached.length() > 0 && date.equals(lastDate);
+            boolean upToDate = cached.exists() && cached.length() > 0 && date != null && date.equals(lastDate);
             if (upToDate) {
                 try {
                     prefs(context).edit().putString(KEY_SOURCE, SOURCE_BING).putString(KEY_BING_URL, url).apply();
                 } catch (Exception ignored) {
                 }
                 Log.d(TAG, "Bing wallpaper up-to-date (cached)");
-                return;
+                return true;
             }
 
             // Download image and cache.
@@ -283,17 +317,17 @@ public final class LauncherWallpaper {
                 }
                 if (!imgResp.isSuccessful() || imgResp.body() == null) {
                     Log.w(TAG, "Bing image failed: http=" + imgResp.code());
-                    return;
+                    return false;
                 }
 
                 long len = imgResp.body().contentLength();
-                if (len > 25L * 1024L * 1024L) return;
+                if (len > 25L * 1024L * 1024L) return true;
 
                 boolean ok;
                 try (InputStream is = imgResp.body().byteStream()) {
                     ok = saveToFile(context, is, BING_FILE_NAME, false);
                 }
-                if (!ok) return;
+                if (!ok) return false;
 
                 File out = getBingFile(context);
                 long written = out.exists() ? out.length() : -1;
@@ -302,11 +336,20 @@ public final class LauncherWallpaper {
                 try {
                     SharedPreferences.Editor e = prefs(context).edit();
                     e.putString(KEY_SOURCE, SOURCE_BING);
-                    if (!date.trim().isEmpty()) e.putString(KEY_BING_DATE, date.trim());
+                    if (date != null && !date.trim().isEmpty()) e.putString(KEY_BING_DATE, date.trim());
                     e.putString(KEY_BING_URL, url);
                     e.apply();
                 } catch (Exception ignored) {
                 }
+
+                // Transcode now so the launcher only has to map the prepared pixels.
+                try {
+                    Bitmap prepared = loadFile(context, out);
+                    if (prepared != null) prepared.recycle();
+                } catch (Exception ignored) {
+                }
+                notifyChanged();
+                return true;
             } finally {
                 try { if (imgResp != null) imgResp.close(); } catch (Exception ignored) {}
             }
@@ -316,16 +359,158 @@ public final class LauncherWallpaper {
             } catch (Exception ignored2) {
             }
             // Keep existing cached wallpaper if any; otherwise caller will fall back to default.
+            return false;
         } finally {
             try { if (resp != null) resp.close(); } catch (Exception ignored) {}
         }
     }
 
-    private static Bitmap decodeScaled(Context context, InputStream is) {
+    private static Bitmap loadFile(Context context, File f) throws Exception {
+        String key = "file:" + f.getName() + ":" + f.length() + ":" + f.lastModified();
+        Bitmap prepared = readPrepared(context, key);
+        if (prepared != null) return prepared;
+        try (FileInputStream fis = new FileInputStream(f)) {
+            return prepare(context, key, decodeScaled(context, new BufferedInputStream(fis)));
+        }
+    }
+
+    /**
+     * Display size in the current orientation, including system bars, since the launcher
+     * draws the wallpaper behind them.
+     */
+    private static Point targetSize(Context context) {
+        Point p = new Point();
         try {
+            WindowManager wm = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+            wm.getDefaultDisplay().getRealSize(p);
+        } catch (Exception ignored) {
+        }
+        if (p.x <= 0 || p.y <= 0) {
             DisplayMetrics dm = context.getResources().getDisplayMetrics();
-            int reqW = Math.max(1, dm.widthPixels);
-            int reqH = Math.max(1, dm.heightPixels);
+            p.set(Math.max(1, dm.widthPixels), Math.max(1, dm.heightPixels));
+        }
+        return p;
+    }
+
+    /**
+     * RGB_565 halves the memory of a wallpaper, which matters on 720p/1GB boxes; devices with
+     * room to spare get ARGB_8888 to avoid banding on photos.
+     */
+    private static Bitmap.Config targetConfig(Context context, Point size) {
+        try {
+            ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+            boolean lowRam = Build.VERSION.SDK_INT >= 19 && am.isLowRamDevice();
+            if (lowRam || am.getMemoryClass() <= 128) return Bitmap.Config.RGB_565;
+        } catch (Exception ignored) {
+        }
+        return (long) size.x * size.y <= 1280L * 720L ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+    }
+
+    private static String preparedKey(String sourceKey, Point size, Bitmap.Config config) {
+        return sourceKey + "@" + size.x + "x" + size.y + ":" + config.name();
+    }
+
+    /**
+     * Returns the prepared wallpaper if it was made from {@code sourceKey} for the current display,
+     * otherwise null. The pixels are mapped straight from the file into the bitmap; there is no
+     * JPEG decode and no scaling.
+     */
+    private static Bitmap readPrepared(Context context, String sourceKey) {
+        File f = new File(context.getFilesDir(), PREPARED_FILE_NAME);
+        if (!f.isFile()) return null;
+        Point size = targetSize(context);
+        Bitmap.Config config = targetConfig(context, size);
+        String expected = preparedKey(sourceKey, size, config);
+
+        try (RandomAccessFile raf = new RandomAccessFile(f, "r")) {
+            if (raf.readInt() != PREPARED_MAGIC) return null;
+            if (!expected.equals(raf.readUTF())) return null;
+            int w = raf.readInt();
+            int h = raf.readInt();
+            long offset = raf.getFilePointer();
+            int bpp = config == Bitmap.Config.RGB_565 ? 2 : 4;
+            long bytes = (long) w * h * bpp;
+            if (w <= 0 || h <= 0 || offset + bytes != raf.length()) return null;
+
+            Bitmap bmp = Bitmap.createBitmap(w, h, config);
+            MappedByteBuffer pixels = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, offset, bytes);
+            bmp.copyPixelsFromBuffer(pixels);
+            return bmp;
+        } catch (Throwable e) {
+            Log.w(TAG, "prepared wallpaper unreadable: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Center-crops {@code decoded} to the display size and pixel format, stores the result for
+     * {@link #readPrepared} and returns it. Runs once per wallpaper change.
+     */
+    private static Bitmap prepare(Context context, String sourceKey, Bitmap decoded) {
+        if (decoded == null) return null;
+        Point size = targetSize(context);
+        Bitmap.Config config = targetConfig(context, size);
+
+        Bitmap out;
+        try {
+            out = Bitmap.createBitmap(size.x, size.y, config);
+            float scale = Math.max(size.x / (float) decoded.getWidth(), size.y / (float) decoded.getHeight());
+            float dx = (size.x - decoded.getWidth() * scale) / 2f;
+            float dy = (size.y - decoded.getHeight() * scale) / 2f;
+            Matrix m = new Matrix();
+            m.setScale(scale, scale);
+            m.postTranslate(dx, dy);
+            new Canvas(out).drawBitmap(decoded, m, new Paint(Paint.FILTER_BITMAP_FLAG | Paint.DITHER_FLAG));
+        } catch (Throwable e) {
+            Log.w(TAG, "wallpaper transcode failed: " + e.getMessage());
+            return decoded;
+        }
+        decoded.recycle();
+
+        // The launcher and the background refresh may both prepare at once; they share the tmp
+        // file, so one must not rename the other's half-written pixels into place.
+        synchronized (PREPARE_LOCK) {
+            File f = new File(context.getFilesDir(), PREPARED_FILE_NAME);
+            File tmp = new File(context.getFilesDir(), PREPARED_FILE_NAME + ".tmp");
+            try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw")) {
+                raf.setLength(0);
+                raf.writeInt(PREPARED_MAGIC);
+                raf.writeUTF(preparedKey(sourceKey, size, config));
+                raf.writeInt(out.getWidth());
+                raf.writeInt(out.getHeight());
+                ByteBuffer pixels = ByteBuffer.allocate(out.getRowBytes() * out.getHeight());
+                out.copyPixelsToBuffer(pixels);
+                pixels.rewind();
+                FileChannel ch = raf.getChannel();
+                long pos = raf.getFilePointer();
+                while (pixels.hasRemaining()) {
+                    pos += ch.write(pixels, pos);
+                }
+            } catch (Throwable e) {
+                Log.w(TAG, "prepared wallpaper not saved: " + e.getMessage());
+                try { tmp.delete(); } catch (Exception ignored) {}
+                return out;
+            }
+            if (!tmp.renameTo(f)) {
+                try { tmp.delete(); } catch (Exception ignored) {}
+            }
+        }
+        return out;
+    }
+
+    private static void dropPrepared(Context context) {
+        if (context == null) return;
+        try {
+            new File(context.getFilesDir(), PREPARED_FILE_NAME).delete();
+        } catch (Exception ignored) {
+        }
+    }
+
+    private static Bitmap decodeScaled(Context context, InputStream is) {
+        try {
+            Point size = targetSize(context);
+            int reqW = size.x;
+            int reqH = size.y;
 
             // Read bounds first.
             BitmapFactory.Options opts = new BitmapFactory.Options();
@@ -339,7 +524,7 @@ public final class LauncherWallpaper {
 
             opts.inSampleSize = calculateInSampleSize(opts, reqW, reqH);
             opts.inJustDecodeBounds = false;
-            opts.inPreferredConfig = Bitmap.Config.RGB_565;
+            opts.inPreferredConfig = targetConfig(context, size);
             return BitmapFactory.decodeStream(is, null, opts);
         } catch (Exception ignored) {
             try {
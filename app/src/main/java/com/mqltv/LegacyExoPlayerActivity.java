@@ -1,5 +1,6 @@
 package com.mqltv;
 
+import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
@@ -29,6 +30,12 @@ import com.google.android.exoplayer2.upstream.DefaultDataSourceFactory;
 import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DefaultHttpDataSource;
 import com.google.android.exoplayer2.util.Util;
+import com.google.android.exoplayer2.analytics.AnalyticsListener;
+import com.google.android.exoplayer2.source.LoadEventInfo;
+import com.google.android.exoplayer2.source.MediaLoadData;
+import com.google.android.exoplayer2.video.VideoListener;
+
+import java.util.Map;
 
 /**
  * ExoPlayer "legacy" (older line than Media3) for compatibility testing.
@@ -41,6 +48,7 @@ public class LegacyExoPlayerActivity extends FragmentActivity {
     private SurfaceView surfaceView;
 
     private PlayerChannelOverlayController channelOverlay;
+    private PlaybackTracer trace;
 
     private final Handler accessHandler = new Handler(Looper.getMainLooper());
     private boolean accessCheckInFlight = false;
@@ -72,19 +80,7 @@ public class LegacyExoPlayerActivity extends FragmentActivity {
             setTitle(title);
         }
 
-        channelOverlay = new PlayerChannelOverlayController(this, channel -> {
-            if (channel == null) return;
-            if (!LoginGuard.ensureLoggedIn(LegacyExoPlayerActivity.this, LoginActivity.DEST_LIVE_TV)) return;
-            if (!SubscriptionGuard.ensureNotExpired(LegacyExoPlayerActivity.this)) return;
-            RecentChannelsStore.record(LegacyExoPlayerActivity.this, channel);
-            PresenceReporter.reportOnlineLaunch(LegacyExoPlayerActivity.this, channel.getTitle(), channel.getUrl());
-            try {
-                startActivity(PlayerIntents.createPreferredPlayIntent(LegacyExoPlayerActivity.this, channel.getTitle(), channel.getUrl()));
-            } catch (Exception e) {
-                startActivity(PlayerIntents.createPlayIntent(LegacyExoPlayerActivity.this, channel.getTitle(), channel.getUrl()));
-            }
-            finish();
-        });
+        channelOverlay = new PlayerChannelOverlayController(this, new PlayerChannelSwitcher(this, this::switchTo));
     }
 
     @Override
@@ -106,6 +102,7 @@ public class LegacyExoPlayerActivity extends FragmentActivity {
         if (channelOverlay != null) channelOverlay.setCurrentChannel(url);
 
         PresenceReporter.startPlayback(getApplicationContext(), title, url);
+        trace = PlaybackTracer.start(this, PlaybackTracer.ENGINE_EXO2, getIntent(), false);
 
         DefaultTrackSelector trackSelector = new DefaultTrackSelector(this);
         boolean limit480p = PlaybackPrefs.isExoLimit480p(this);
@@ -139,9 +136,27 @@ public class LegacyExoPlayerActivity extends FragmentActivity {
         }
 
         player.addListener(new Player.EventListener() {
+            @Override
+            public void onPlaybackStateChanged(int state) {
+                if (trace == null) return;
+                if (state == Player.STATE_READY) {
+                    trace.ready();
+                    trace.bufferingEnded();
+                } else if (state == Player.STATE_BUFFERING) {
+                    trace.bufferingStarted();
+                }
+            }
+
+            @Override
+            public void onIsPlayingChanged(boolean isPlaying) {
+                // ExoPlayer 2.13 has no audio-playout callback; the clock starting is the closest.
+                if (isPlaying && trace != null) trace.firstAudio();
+            }
+
             @Override
             public void onPlayerError(@NonNull ExoPlaybackException error) {
                 Log.e(TAG, "Legacy Exo error type=" + error.type, error);
+                if (trace != null) trace.failed("exo2_type_" + error.type);
 
                 boolean codecNotSupported = false;
                 if (error.type == ExoPlaybackException.TYPE_RENDERER) {
@@ -159,34 +174,75 @@ public class LegacyExoPlayerActivity extends FragmentActivity {
                 if (codecNotSupported && PlaybackPrefs.getPlayerMode(LegacyExoPlayerActivity.this) == PlaybackPrefs.PLAYER_MODE_AUTO) {
                     String title = getIntent().getStringExtra(Constants.EXTRA_TITLE);
                     String playUrl = getIntent().getStringExtra(Constants.EXTRA_URL);
-                    startActivity(PlayerIntents.createPlayIntent(LegacyExoPlayerActivity.this, title, playUrl));
+                    // Explicit: AUTO's pick for this URL may be legacy Exo again.
+                    Intent next = new Intent(LegacyExoPlayerActivity.this, PlayerActivity.class)
+                            .putExtra(Constants.EXTRA_TITLE, title)
+                            .putExtra(Constants.EXTRA_URL, playUrl);
+                    PlayerIntents.copyStreamHeaders(getIntent(), next);
+                    startActivity(next);
                     finish();
                 }
             }
         });
 
-        String userAgent = Util.getUserAgent(this, "MQLTV");
+        player.addVideoListener(new VideoListener() {
+            @Override
+            public void onRenderedFirstFrame() {
+                if (trace != null) trace.firstVideoFrame();
+            }
+        });
+        player.addAnalyticsListener(new AnalyticsListener() {
+            @Override
+            public void onLoadCompleted(@NonNull EventTime eventTime, @NonNull LoadEventInfo loadEventInfo, @NonNull MediaLoadData mediaLoadData) {
+                if (trace != null && mediaLoadData.dataType == com.google.android.exoplayer2.C.DATA_TYPE_MANIFEST) trace.manifestLoaded();
+            }
+        });
+
+        player.setMediaSource(buildMediaSource(getIntent(), url));
+        player.prepare();
+        player.setPlayWhenReady(true);
+    }
+
+    /** HLS or progressive source for {@code url}, carrying the headers the intent asks for. */
+    private MediaSource buildMediaSource(Intent intent, String url) {
+        // Playlist-provided headers (#EXTVLCOPT / #KODIPROP) win over our default User-Agent.
+        Map<String, String> streamHeaders = PlayerIntents.getStreamHeaders(intent);
+        String userAgent = streamHeaders.containsKey("User-Agent")
+            ? streamHeaders.remove("User-Agent")
+            : Util.getUserAgent(this, "MQLTV");
         DefaultHttpDataSource.Factory httpFactory = new DefaultHttpDataSource.Factory()
             .setUserAgent(userAgent)
+            .setDefaultRequestProperties(streamHeaders)
             .setAllowCrossProtocolRedirects(true);
-        DataSource.Factory dataSourceFactory = new DefaultDataSourceFactory(this, httpFactory);
+        // Bodies ZapPrebuffer already fetched for this channel are served before going to the network.
+        DataSource.Factory dataSourceFactory =
+            new LegacyPrebufferedDataSource.Factory(new DefaultDataSourceFactory(this, httpFactory));
 
         Uri uri = Uri.parse(url);
 
         int type = Util.inferContentType(uri);
         MediaItem item = MediaItem.fromUri(uri);
 
-        MediaSource mediaSource;
         if (type == com.google.android.exoplayer2.C.TYPE_HLS) {
-            mediaSource = new HlsMediaSource.Factory(dataSourceFactory).createMediaSource(item);
-        } else {
-            // Many IPTV endpoints are TS/MP4 streams even when URL doesn't end with .m3u8.
-            mediaSource = new ProgressiveMediaSource.Factory(dataSourceFactory).createMediaSource(item);
+            return new HlsMediaSource.Factory(dataSourceFactory).createMediaSource(item);
         }
+        // Many IPTV endpoints are TS/MP4 streams even when URL doesn't end with .m3u8.
+        return new ProgressiveMediaSource.Factory(dataSourceFactory).createMediaSource(item);
+    }
 
-        player.setMediaSource(mediaSource);
+    /** Replaces the media source on the running player; renderers and the surface are kept. */
+    private boolean switchTo(Intent intent) {
+        if (player == null) return false;
+        String url = intent.getStringExtra(Constants.EXTRA_URL);
+        if (url == null || url.trim().isEmpty()) return false;
+
+        if (channelOverlay != null) channelOverlay.setCurrentChannel(url);
+        if (trace != null) trace.finish("zap");
+        trace = PlaybackTracer.start(this, PlaybackTracer.ENGINE_EXO2, intent, true);
+        player.setMediaSource(buildMediaSource(intent, url));
         player.prepare();
         player.setPlayWhenReady(true);
+        return true;
     }
 
     @Override
@@ -210,6 +266,10 @@ public class LegacyExoPlayerActivity extends FragmentActivity {
         if (isFinishing()) {
             PresenceReporter.stopPlayback(getApplicationContext());
         }
+        if (trace != null) {
+            trace.finish("stop");
+            trace = null;
+        }
         if (player != null) {
             if (surfaceView != null) {
                 player.clearVideoSurfaceView(surfaceView);
@@ -5,12 +5,16 @@ import android.content.Context;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.KeyEvent;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.inputmethod.EditorInfo;
+import android.view.inputmethod.InputMethodManager;
+import android.widget.EditText;
 import android.widget.TextView;
-import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -21,13 +25,13 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class LiveTvFragment extends Fragment {
 
@@ -38,17 +42,37 @@ public class LiveTvFragment extends Fragment {
 
     private TextView title;
     private TextView time;
+    private EditText searchInput;
     private LiveTvCategoryAdapter categoryAdapter;
     private LiveTvChannelGridAdapter gridAdapter;
     private RecyclerView categoryList;
     private RecyclerView grid;
+    private LogoPrefetcher logoPrefetcher;
 
     private int selectedCategoryPosition = 0;
 
     private final List<String> categoryKeys = new ArrayList<>();
     private final List<String> categoryLabels = new ArrayList<>();
 
-    private volatile List<Channel> allChannels;
+    private volatile ChannelTable allTable = ChannelTable.EMPTY;
+    private volatile CategoryIndex allCategories = CategoryIndex.EMPTY;
+    private long shownVersion = -1;
+    private ChannelCatalog.Snapshot shownSnapshot;
+    private boolean gridFocused;
+
+    // Bumped on every keystroke; a query whose generation is no longer current is abandoned.
+    private final AtomicInteger searchGeneration = new AtomicInteger();
+    private String searchQuery = "";
+
+    private final ChannelCatalog.Listener catalogListener = new ChannelCatalog.Listener() {
+        @Override
+        public void onCatalogChanged(ChannelCatalog.Snapshot snapshot) {
+            Context ctx = getContext();
+            if (ctx == null || gridAdapter == null || snapshot.version <= shownVersion) return;
+            final Context appContext = ctx.getApplicationContext();
+            executor.execute(() -> show(appContext, snapshot, false));
+        }
+    };
 
     private final Runnable timeTicker = new Runnable() {
         @Override
@@ -76,16 +100,42 @@ public class LiveTvFragment extends Fragment {
         mainHandler.removeCallbacks(timeTicker);
         mainHandler.post(timeTicker);
 
+        searchInput = v.findViewById(R.id.live_tv_search_input);
         View search = v.findViewById(R.id.live_tv_search);
         if (search != null) {
-            search.setOnClickListener(view -> Toast.makeText(getContext(), "Search belum tersedia", Toast.LENGTH_SHORT).show());
+            search.setOnClickListener(view -> toggleSearch(appContext));
+        }
+        if (searchInput != null) {
+            searchInput.addTextChangedListener(new TextWatcher() {
+                @Override
+                public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+                }
+
+                @Override
+                public void onTextChanged(CharSequence s, int start, int before, int count) {
+                }
+
+                @Override
+                public void afterTextChanged(Editable s) {
+                    runSearch(appContext, s.toString().trim());
+                }
+            });
+            searchInput.setOnEditorActionListener((tv, actionId, event) -> {
+                if (actionId != EditorInfo.IME_ACTION_SEARCH && actionId != EditorInfo.IME_ACTION_DONE) return false;
+                hideKeyboard();
+                if (grid != null && grid.getChildCount() > 0) grid.getChildAt(0).requestFocus();
+                return true;
+            });
         }
 
         categoryList = v.findViewById(R.id.live_tv_categories);
         categoryList.setLayoutManager(new LinearLayoutManager(v.getContext(), LinearLayoutManager.HORIZONTAL, false));
         categoryList.setHasFixedSize(false);
         categoryList.setItemViewCacheSize(12);
-        categoryAdapter = new LiveTvCategoryAdapter(position -> applyCategory(appContext, position));
+        categoryAdapter = new LiveTvCategoryAdapter(position -> {
+            closeSearch();
+            applyCategory(appContext, position);
+        });
         categoryList.setAdapter(categoryAdapter);
 
         grid = v.findViewById(R.id.live_tv_grid);
@@ -97,6 +147,21 @@ public class LiveTvFragment extends Fragment {
         grid.addItemDecoration(new GridSpacingItemDecoration(dpToPx(v), dpToPx(v), dpToPx(v)));
         gridAdapter = new LiveTvChannelGridAdapter();
         grid.setAdapter(gridAdapter);
+        final LiveTvChannelGridAdapter adapter = gridAdapter;
+        logoPrefetcher = new LogoPrefetcher(grid, R.id.live_tv_channel_logo, 3, new LogoPrefetcher.Urls() {
+            @Override
+            public int size() {
+                return adapter.getItemCount();
+            }
+
+            @Override
+            public String urlAt(int position) {
+                return adapter.getLogoUrl(position);
+            }
+        });
+        gridAdapter.setOnItemFocusListener(position -> {
+            if (logoPrefetcher != null) logoPrefetcher.onFocused(position);
+        });
 
         // TV UX:
         // - From the first row: DPAD_UP goes to the *active* category (not a random tab).
@@ -132,6 +197,7 @@ public class LiveTvFragment extends Fragment {
             }
         });
 
+        ChannelCatalog.get().addListener(catalogListener);
         load(appContext);
 
         return v;
@@ -144,42 +210,64 @@ public class LiveTvFragment extends Fragment {
 
     private void load(Context context) {
         executor.execute(() -> {
-            PlaylistRepository repo = new PlaylistRepository();
-            List<Channel> channels = repo.loadFromUrls(context, AuthPrefs.getPlaylistUrls(context));
-            AuthPrefs.getPlaylistUrl(context);
-            boolean hasServerPlaylist = !AuthPrefs.getPlaylistUrl(context).trim().isEmpty();
-            if ((channels == null || channels.isEmpty()) && !hasServerPlaylist) {
-                channels = repo.loadDefault(context);
+            ChannelCatalog.Snapshot snapshot = ChannelCatalog.get().load(context);
+            show(context, snapshot, true);
+        });
+    }
+
+    /** Worker thread: rebuilds categories for a snapshot and swaps it into the UI. */
+    private void show(Context context, ChannelCatalog.Snapshot snapshot, boolean initial) {
+        final ChannelTable table = snapshot.table;
+        final CategoryIndex index = snapshot.categories;
+        final CategoryData cats = buildCategories(index);
+        mainHandler.post(() -> {
+            if (gridAdapter == null) return;
+            if (snapshot.version < shownVersion || (!initial && snapshot.version == shownVersion)) return;
+            shownVersion = snapshot.version;
+            shownSnapshot = snapshot;
+            allTable = table;
+            allCategories = index;
+
+            // Keep the user on the same category when a refreshed list is swapped in.
+            String selectedKey = !initial && selectedCategoryPosition < categoryKeys.size()
+                    ? categoryKeys.get(selectedCategoryPosition) : null;
+            int position = selectedKey != null ? Math.max(0, cats.keys.indexOf(selectedKey)) : 0;
+
+            categoryKeys.clear();
+            categoryKeys.addAll(cats.keys);
+            categoryLabels.clear();
+            categoryLabels.addAll(cats.labels);
+            if (categoryAdapter != null) {
+                categoryAdapter.submit(categoryLabels);
+                categoryAdapter.setSelected(position);
+            }
+            // Partial and refreshed lists must not yank the user back to the top of the grid.
+            if (searchQuery.isEmpty()) {
+                applyCategory(context, position, initial || selectedKey == null);
+            } else {
+                selectedCategoryPosition = position;
+                runSearch(context, searchQuery);
             }
-            allChannels = channels;
 
-            final CategoryData cats = buildCategories(channels);
-            mainHandler.post(() -> {
-                categoryKeys.clear();
-                categoryKeys.addAll(cats.keys);
-                categoryLabels.clear();
-                categoryLabels.addAll(cats.labels);
-                if (categoryAdapter != null) {
-                    categoryAdapter.submit(categoryLabels);
-                    categoryAdapter.setSelected(0);
-                }
-                applyCategory(context, 0);
-
-                // Prefer focus into the grid (like typical TV channel browsers).
-                if (grid != null) {
-                    grid.post(() -> {
-                        if (grid.getChildCount() > 0) {
-                            View first = grid.getChildAt(0);
-                            if (first != null) first.requestFocus();
-                        }
-                    });
-                }
-            });
+            // Prefer focus into the grid (like typical TV channel browsers).
+            if (!gridFocused && !table.isEmpty() && grid != null) {
+                gridFocused = true;
+                grid.post(() -> {
+                    if (grid != null && grid.getChildCount() > 0) {
+                        View first = grid.getChildAt(0);
+                        if (first != null) first.requestFocus();
+                    }
+                });
+            }
         });
     }
 
-    @SuppressLint("SetTextI18n")
     private void applyCategory(Context context, int position) {
+        applyCategory(context, position, true);
+    }
+
+    @SuppressLint("SetTextI18n")
+    private void applyCategory(Context context, int position, boolean scrollToTop) {
         if (position < 0 || position >= categoryKeys.size()) return;
         if (categoryAdapter != null) categoryAdapter.setSelected(position);
         selectedCategoryPosition = position;
@@ -197,26 +285,84 @@ public class LiveTvFragment extends Fragment {
             }
         }
 
-        List<Channel> base = allChannels;
-        List<Channel> out = new ArrayList<>();
-
+        // Views over the shared table: the grid reads rows from it directly, nothing is copied.
+        List<Channel> out;
         if (CAT_ALL.equals(key)) {
-            if (base != null) out.addAll(base);
+            out = allTable.asList();
         } else {
-            if (base != null) {
-                for (Channel c : base) {
-                    if (c == null) continue;
-                    String g = c.getGroupTitle();
-                    if (g == null) continue;
-                    if (g.equals(key) || g.equalsIgnoreCase(key)) {
-                        out.add(c);
-                    }
-                }
-            }
+            // Positions after "ALL CHANNELS" map 1:1 onto the snapshot's category index.
+            CategoryIndex index = allCategories;
+            int cat = position - 1;
+            out = cat < index.getCategories().size()
+                    ? index.channelsOf(index.getCategories().get(cat))
+                    : Collections.<Channel>emptyList();
         }
 
         if (gridAdapter != null) gridAdapter.submit(out);
-        if (grid != null) grid.scrollToPosition(0);
+        if (logoPrefetcher != null) logoPrefetcher.reset();
+        if (scrollToTop && grid != null) grid.scrollToPosition(0);
+    }
+
+    private void toggleSearch(Context context) {
+        if (searchInput == null) return;
+        if (searchInput.getVisibility() == View.VISIBLE) {
+            closeSearch();
+            applyCategory(context, selectedCategoryPosition, true);
+            return;
+        }
+        searchInput.setVisibility(View.VISIBLE);
+        searchInput.requestFocus();
+        InputMethodManager imm = (InputMethodManager) context.getSystemService(Context.INPUT_METHOD_SERVICE);
+        if (imm != null) imm.showSoftInput(searchInput, InputMethodManager.SHOW_IMPLICIT);
+    }
+
+    /** Hides the search box without touching the grid; callers decide what to show next. */
+    private void closeSearch() {
+        searchGeneration.incrementAndGet();
+        searchQuery = "";
+        if (searchInput == null || searchInput.getVisibility() != View.VISIBLE) return;
+        hideKeyboard();
+        searchInput.setVisibility(View.GONE);
+        // searchQuery is already empty, so the watcher firing here does not re-apply anything.
+        searchInput.setText("");
+    }
+
+    private void hideKeyboard() {
+        if (searchInput == null) return;
+        InputMethodManager imm = (InputMethodManager) searchInput.getContext().getSystemService(Context.INPUT_METHOD_SERVICE);
+        if (imm != null) imm.hideSoftInputFromWindow(searchInput.getWindowToken(), 0);
+    }
+
+    /**
+     * Main thread: queries the snapshot's search index on the worker. Each keystroke bumps the
+     * generation, so a slower earlier query stops early and its result is never shown.
+     */
+    @SuppressLint("SetTextI18n")
+    private void runSearch(Context context, String query) {
+        final int gen = searchGeneration.incrementAndGet();
+        if (query.isEmpty()) {
+            if (!searchQuery.isEmpty()) {
+                searchQuery = "";
+                applyCategory(context, selectedCategoryPosition, true);
+            }
+            return;
+        }
+        searchQuery = query;
+        final ChannelCatalog.Snapshot snapshot = shownSnapshot;
+        if (snapshot == null) return;
+        final ChannelSearchIndex.Cancellation cancel = () -> searchGeneration.get() != gen;
+        executor.execute(() -> {
+            if (cancel.isCancelled()) return;
+            final int[] rows = snapshot.searchIndex().search(query, cancel);
+            if (rows == null) return;
+            mainHandler.post(() -> {
+                if (cancel.isCancelled() || gridAdapter == null) return;
+                if (title != null) title.setText("Cari: " + query + " (" + rows.length + ")");
+                gridAdapter.submit(snapshot.table.subList(rows));
+                if (logoPrefetcher != null) logoPrefetcher.reset();
+                if (grid != null) grid.scrollToPosition(0);
+            });
+        });
     }
 
     private void focusSelectedCategory() {
@@ -252,32 +398,16 @@ public class LiveTvFragment extends Fragment {
         }
     }
 
-    private static CategoryData buildCategories(List<Channel> channels) {
+    private static CategoryData buildCategories(CategoryIndex index) {
         List<String> keys = new ArrayList<>();
         List<String> labels = new ArrayList<>();
 
         keys.add(CAT_ALL);
         labels.add("ALL CHANNELS");
 
-        // Keep insertion order; de-dupe by display label (case-insensitive).
-        Map<String, String> seen = new LinkedHashMap<>();
-        if (channels != null) {
-            for (Channel c : channels) {
-                if (c == null) continue;
-                String g = c.getGroupTitle();
-                if (g == null) continue;
-                g = g.trim();
-                if (g.isEmpty()) continue;
-                String label = g.toUpperCase(Locale.US);
-                if (!seen.containsKey(label)) {
-                    seen.put(label, g);
-                }
-            }
-        }
-
-        for (Map.Entry<String, String> e : seen.entrySet()) {
-            keys.add(e.getValue());
-            labels.add(e.getKey());
+        for (CategoryIndex.Category c : index.getCategories()) {
+            keys.add(c.label);
+            labels.add(c.label);
         }
         return new CategoryData(keys, labels);
     }
@@ -319,13 +449,20 @@ public class LiveTvFragment extends Fragment {
     @Override
     public void onDestroyView() {
         super.onDestroyView();
+        ChannelCatalog.get().removeListener(catalogListener);
         mainHandler.removeCallbacks(timeTicker);
+        gridFocused = false;
+        searchGeneration.incrementAndGet();
+        searchQuery = "";
+        shownSnapshot = null;
         title = null;
         time = null;
+        searchInput = null;
         categoryAdapter = null;
         gridAdapter = null;
         categoryList = null;
         grid = null;
+        logoPrefetcher = null;
     }
 
     @Override
@@ -0,0 +1,65 @@
+package com.mqltv;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Small set of mutable bitmaps that are no longer shown anywhere, handed to
+ * {@code BitmapFactory.Options.inBitmap} so decoding a logo reuses their memory instead of
+ * allocating. Only used on API 19+, where any large-enough bitmap of the same config fits.
+ */
+final class LogoBitmapPool {
+    private static final int MAX_BYTES = 4 * 1024 * 1024;
+
+    private static final List<Bitmap> POOL = new ArrayList<>();
+    private static int pooledBytes;
+
+    private LogoBitmapPool() {}
+
+    static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= 19;
+    }
+
+    /** Offers a bitmap the caller guarantees is not displayed; ignored if it cannot be reused. */
+    @TargetApi(19)
+    static synchronized void put(Bitmap bmp) {
+        if (!isSupported() || bmp == null || bmp.isRecycled() || !bmp.isMutable()) return;
+        int size = bmp.getAllocationByteCount();
+        if (size > MAX_BYTES / 2) return;
+        while (!POOL.isEmpty() && pooledBytes + size > MAX_BYTES) {
+            Bitmap old = POOL.remove(0);
+            pooledBytes -= old.getAllocationByteCount();
+        }
+        POOL.add(bmp);
+        pooledBytes += size;
+    }
+
+    /** Removes and returns the smallest pooled bitmap that can hold a decode of this size. */
+    @TargetApi(19)
+    static synchronized Bitmap take(int width, int height, Bitmap.Config config) {
+        if (!isSupported() || width <= 0 || height <= 0) return null;
+        int needed = width * height * (config == Bitmap.Config.RGB_565 ? 2 : 4);
+        int best = -1;
+        for (int i = 0; i < POOL.size(); i++) {
+            Bitmap b = POOL.get(i);
+            if (b.getConfig() != config || b.getAllocationByteCount() < needed) continue;
+            if (best < 0 || b.getAllocationByteCount() < POOL.get(best).getAllocationByteCount()) best = i;
+        }
+        if (best < 0) return null;
+        Bitmap b = POOL.remove(best);
+        pooledBytes -= b.getAllocationByteCount();
+        return b;
+    }
+
+    /** Drops every pooled bitmap; returns the bytes released. */
+    static synchronized int clear() {
+        int freed = pooledBytes;
+        POOL.clear();
+        pooledBytes = 0;
+        return freed;
+    }
+}
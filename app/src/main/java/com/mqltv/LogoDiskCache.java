@@ -0,0 +1,201 @@
+package com.mqltv;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Locale;
+
+import okhttp3.Response;
+
+/**
+ * Size-bounded LRU of downscaled logo bytes in {@code cacheDir/logos}, so a second launch paints
+ * the grid from local storage. Each file keeps the HTTP expiry and validators of the response it
+ * came from; expired entries are revalidated, and still served if the network is unavailable.
+ */
+final class LogoDiskCache {
+    private static final String TAG = "LogoDiskCache";
+    private static final String DIR = "logos";
+    private static final int MAGIC = 0x4d514c4c; // "MQLL"
+    private static final int FORMAT_VERSION = 1;
+
+    private static final long MAX_BYTES = 24L * 1024L * 1024L;
+    // Used when the server sends no freshness information at all.
+    private static final long DEFAULT_TTL_MS = 7L * 24L * 60L * 60L * 1000L;
+
+    /** Stored logo plus what is needed to decide whether and how to revalidate it. */
+    static final class Entry {
+        final byte[] data;
+        final long expiresAtMs;
+        final String etag;
+        final String lastModified;
+
+        Entry(byte[] data, long expiresAtMs, String etag, String lastModified) {
+            this.data = data;
+            this.expiresAtMs = expiresAtMs;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        boolean isFresh() {
+            return System.currentTimeMillis() < expiresAtMs;
+        }
+    }
+
+    private static File dir;
+    private static long totalBytes = -1;
+
+    private LogoDiskCache() {}
+
+    static synchronized void init(Context context) {
+        if (dir == null && context != null) dir = new File(context.getCacheDir(), DIR);
+    }
+
+    /** Returns null if nothing usable is stored for the URL. Marks the entry as recently used. */
+    static synchronized Entry get(String url) {
+        File f = fileFor(url);
+        if (f == null || !f.exists() || f.length() == 0) return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 16 * 1024))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) return null;
+            if (!url.equals(in.readUTF())) return null;
+            long expiresAt = in.readLong();
+            String etag = readNullable(in);
+            String lastModified = readNullable(in);
+            int len = in.readInt();
+            if (len <= 0 || len > f.length()) return null;
+            byte[] data = new byte[len];
+            in.readFully(data);
+            try { f.setLastModified(System.currentTimeMillis()); } catch (Exception ignored) {}
+            return new Entry(data, expiresAt, etag, lastModified);
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "read failed for " + url + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    static synchronized void put(String url, Entry entry) {
+        File f = fileFor(url);
+        if (f == null || entry == null || entry.data == null || entry.data.length == 0) return;
+        if (!dir.exists() && !dir.mkdirs()) return;
+
+        long before = f.exists() ? f.length() : 0;
+        File tmp = new File(f.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 16 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(url);
+            out.writeLong(entry.expiresAtMs);
+            writeNullable(out, entry.etag);
+            writeNullable(out, entry.lastModified);
+            out.writeInt(entry.data.length);
+            out.write(entry.data);
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "write failed for " + url + ": " + e.getMessage());
+            try { tmp.delete(); } catch (Exception ignored) {}
+            return;
+        }
+
+        if (!tmp.renameTo(f)) {
+            try { f.delete(); } catch (Exception ignored) {}
+            if (!tmp.renameTo(f)) {
+                try { tmp.delete(); } catch (Exception ignored) {}
+                return;
+            }
+        }
+        if (totalBytes < 0) totalBytes = measure();
+        totalBytes += f.length() - before;
+        if (totalBytes > MAX_BYTES) trim();
+    }
+
+    /**
+     * Absolute expiry for a response from its Cache-Control / Expires headers, or -1 if the
+     * server asked for it not to be stored at all.
+     */
+    static long expiresAt(Response response) {
+        long now = System.currentTimeMillis();
+        String cc = response.header("Cache-Control");
+        if (cc != null) {
+            String lower = cc.toLowerCase(Locale.US);
+            if (lower.contains("no-store")) return -1;
+            // no-cache may be stored but has to be revalidated before every use.
+            if (lower.contains("no-cache")) return now;
+            int i = lower.indexOf("max-age=");
+            if (i >= 0) {
+                int start = i + "max-age=".length();
+                int end = start;
+                while (end < lower.length() && Character.isDigit(lower.charAt(end))) end++;
+                try {
+                    return now + Long.parseLong(lower.substring(start, end)) * 1000L;
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        try {
+            Date expires = response.headers().getDate("Expires");
+            if (expires != null) return expires.getTime();
+        } catch (Exception ignored) {
+        }
+        return now + DEFAULT_TTL_MS;
+    }
+
+    private static File fileFor(String url) {
+        if (dir == null || url == null || url.isEmpty()) return null;
+        return new File(dir, Integer.toHexString(url.hashCode()) + "_" + url.length() + ".bin");
+    }
+
+    private static long measure() {
+        File[] files = dir.listFiles();
+        long sum = 0;
+        if (files != null) {
+            for (File f : files) sum += f.length();
+        }
+        return sum;
+    }
+
+    /** Deletes least recently used files until the directory is back under 3/4 of its budget. */
+    private static void trim() {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        final long[] stamps = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            stamps[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return stamps[a] < stamps[b] ? -1 : (stamps[a] == stamps[b] ? 0 : 1);
+            }
+        });
+        long target = MAX_BYTES * 3 / 4;
+        long total = measure();
+        for (int k = 0; k < order.length && total > target; k++) {
+            File f = files[order[k]];
+            long len = f.length();
+            if (f.delete()) total -= len;
+        }
+        totalBytes = total;
+        Log.d(TAG, "trimmed to " + (total / 1024) + "KB");
+    }
+
+    private static void writeNullable(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) out.writeUTF(s);
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,142 @@
+package com.mqltv;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * What {@link LogoLoader} has learned about failing logo sources.
+ *
+ * Broken URLs and unreachable hosts are skipped for an exponentially growing backoff instead of
+ * costing two round trips on every scroll pass. For hosts whose HTTPS endpoint does not work
+ * (old TLS stacks, bad certificates) the working scheme is remembered across restarts, so later
+ * logos from the same CDN go straight to it.
+ */
+final class LogoFailureCache {
+    private static final String PREFS = "mqltv_logo_hosts";
+    private static final String KEY_SCHEMES = "schemes";
+
+    private static final long URL_BACKOFF_MS = 5L * 60L * 1000L;
+    private static final long URL_BACKOFF_MAX_MS = 6L * 60L * 60L * 1000L;
+    private static final long HOST_BACKOFF_MS = 60L * 1000L;
+    private static final long HOST_BACKOFF_MAX_MS = 30L * 60L * 1000L;
+    // A host is only blocked after this many consecutive connection failures.
+    private static final int HOST_FAILURE_THRESHOLD = 3;
+    private static final int MAX_URLS = 512;
+
+    private static final class Failure {
+        int count;
+        long retryAtMs;
+    }
+
+    private static final Map<String, Failure> URLS = new LinkedHashMap<String, Failure>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Failure> eldest) {
+            return size() > MAX_URLS;
+        }
+    };
+    private static final Map<String, Failure> HOSTS = new HashMap<>();
+    private static final Map<String, String> SCHEMES = new HashMap<>();
+
+    private static SharedPreferences prefs;
+
+    private LogoFailureCache() {}
+
+    static synchronized void init(Context context) {
+        if (prefs != null || context == null) return;
+        prefs = context.getApplicationContext().getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        try {
+            JSONObject o = new JSONObject(prefs.getString(KEY_SCHEMES, "{}"));
+            Iterator<String> keys = o.keys();
+            while (keys.hasNext()) {
+                String host = keys.next();
+                SCHEMES.put(host, o.optString(host, "https"));
+            }
+        } catch (Exception ignored) {
+        }
+    }
+
+    /** True while the URL or its host is backing off; the caller should not hit the network. */
+    static synchronized boolean shouldSkip(String url, String host) {
+        long now = SystemClock.elapsedRealtime();
+        Failure f = URLS.get(url);
+        if (f != null && now < f.retryAtMs) return true;
+        Failure h = host != null ? HOSTS.get(host) : null;
+        return h != null && h.count >= HOST_FAILURE_THRESHOLD && now < h.retryAtMs;
+    }
+
+    /** "http" if HTTPS is known not to work for this host, otherwise "https". */
+    static synchronized String preferredScheme(String host) {
+        String s = host != null ? SCHEMES.get(host) : null;
+        return s != null ? s : "https";
+    }
+
+    static synchronized void recordSuccess(String url, String host, String scheme) {
+        URLS.remove(url);
+        if (host == null) return;
+        HOSTS.remove(host);
+        // Only a switch away from the default is worth remembering.
+        String known = SCHEMES.get(host);
+        if ("http".equals(scheme) && !"http".equals(known)) {
+            SCHEMES.put(host, "http");
+            saveSchemes();
+        } else if ("https".equals(scheme) && known != null) {
+            SCHEMES.remove(host);
+            saveSchemes();
+        }
+    }
+
+    /**
+     * @param connectionFailed true for network-level errors (DNS, TLS, timeouts), which count
+     *                         against the whole host; HTTP errors only mark the URL.
+     */
+    static synchronized void recordFailure(String url, String host, boolean connectionFailed) {
+        long now = SystemClock.elapsedRealtime();
+        Failure f = URLS.get(url);
+        if (f == null) {
+            f = new Failure();
+            URLS.put(url, f);
+        }
+        f.count++;
+        f.retryAtMs = now + backoff(URL_BACKOFF_MS, URL_BACKOFF_MAX_MS, f.count - 1);
+
+        if (!connectionFailed || host == null) return;
+        Failure h = HOSTS.get(host);
+        if (h == null) {
+            h = new Failure();
+            HOSTS.put(host, h);
+        }
+        h.count++;
+        if (h.count >= HOST_FAILURE_THRESHOLD) {
+            h.retryAtMs = now + backoff(HOST_BACKOFF_MS, HOST_BACKOFF_MAX_MS, h.count - HOST_FAILURE_THRESHOLD);
+        }
+    }
+
+    /** Forgets every failure, e.g. after the network came back. Learned schemes are kept. */
+    static synchronized void clearFailures() {
+        URLS.clear();
+        HOSTS.clear();
+    }
+
+    private static long backoff(long base, long max, int exponent) {
+        long delay = base << Math.min(exponent, 16);
+        return delay > 0 && delay < max ? delay : max;
+    }
+
+    private static void saveSchemes() {
+        if (prefs == null) return;
+        try {
+            JSONObject o = new JSONObject();
+            for (Map.Entry<String, String> e : SCHEMES.entrySet()) o.put(e.getKey(), e.getValue());
+            prefs.edit().putString(KEY_SCHEMES, o.toString()).apply();
+        } catch (Exception ignored) {
+        }
+    }
+}
@@ -0,0 +1,567 @@
+package com.mqltv;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.text.TextUtils;
+import android.util.Log;
+import android.util.LruCache;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import androidx.annotation.NonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * The one place channel logos are downloaded, decoded and cached; used by the Home cards, the
+ * Live TV grid and the player overlay so a logo is fetched once and counted once against memory.
+ * Downscaled copies are kept in {@link LogoDiskCache} so they survive restarts.
+ */
+public final class LogoLoader {
+    private static final String TAG = "LogoLoader";
+
+    private static final int MIN_CACHE_BYTES = 4 * 1024 * 1024;
+    private static final int MAX_CACHE_BYTES = 32 * 1024 * 1024;
+    private static final int THREADS = 3;
+
+    private static final int PRIORITY_VISIBLE = 0;
+    private static final int PRIORITY_PREFETCH = 1;
+    private static final int MAX_PENDING_PREFETCHES = 48;
+
+    // Bigger sources are downscaled to this longest edge before being cached on disk.
+    private static final int MAX_STORED_PX = 320;
+    // Small originals are stored as downloaded instead of being re-encoded.
+    private static final int MAX_RAW_BYTES = 48 * 1024;
+
+    // Fallback target when a view has neither been laid out nor given a fixed size.
+    private static final int DEFAULT_TARGET_DP = 96;
+
+    private static final Handler MAIN = new Handler(Looper.getMainLooper());
+    // Main thread only: which bitmap each bound view currently shows, so evictions that are
+    // still on screen are never handed out for reuse.
+    private static final Map<ImageView, Bitmap> DISPLAYED = new WeakHashMap<>();
+    // Bitmaps a worker has handed to a posted deliver() that has not run yet, with a count per
+    // pending delivery; they must not be pooled in between. Guarded by itself.
+    private static final Map<Bitmap, Integer> AWAITING = new IdentityHashMap<>();
+    // Main thread only: loads that are queued or running (by cache key), and the load each view waits for.
+    private static final Map<String, Job> IN_FLIGHT = new HashMap<>();
+    private static final Map<ImageView, Job> VIEW_JOBS = new WeakHashMap<>();
+    private static final ArrayDeque<Job> PREFETCHES = new ArrayDeque<>();
+    private static final ThreadPoolExecutor EXECUTOR = newExecutor();
+    private static volatile LruCache<String, Bitmap> cache;
+    // Set while a memory trim evicts, so those bitmaps are released instead of pooled.
+    private static volatile boolean trimming;
+
+    private LogoLoader() {
+    }
+
+    /** Sizes the memory cache to 1/8 of the app's heap class; call once from the Application. */
+    public static void init(Context context) {
+        if (cache != null || context == null) return;
+        LogoDiskCache.init(context);
+        LogoFailureCache.init(context);
+        int bytes = 6 * 1024 * 1024;
+        try {
+            ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+            if (am != null) bytes = am.getMemoryClass() * 1024 * 1024 / 8;
+        } catch (Exception ignored) {
+        }
+        cache = newCache(Math.max(MIN_CACHE_BYTES, Math.min(MAX_CACHE_BYTES, bytes)));
+        MemoryPressureCoordinator.get().register(LogoLoader::trimMemory);
+    }
+
+    /**
+     * Shrinks the memory cache by trim level: to 3/4 while running moderately low, to half when
+     * low or hidden, and empties it (and the reuse pool) when critical or in the background.
+     * Bitmaps evicted here are not pooled, since the point is to give the memory back.
+     */
+    static long trimMemory(int level) {
+        LruCache<String, Bitmap> c = cache();
+        int before = c.size();
+        int target;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            target = 0;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            target = c.maxSize() / 2;
+        } else {
+            target = c.maxSize() * 3 / 4;
+        }
+        long freed = LogoBitmapPool.clear();
+        trimming = true;
+        try {
+            if (target == 0) c.evictAll();
+            else c.trimToSize(target);
+        } finally {
+            trimming = false;
+        }
+        return freed + Math.max(0, before - c.size());
+    }
+
+    /**
+     * Main thread: shows the logo for {@code url} in {@code view}, from memory at once or after a
+     * background load. {@code placeholder} (optional) is hidden once a bitmap is shown. Views
+     * asking for the same URL share one load; rebinding a view detaches it from its old load.
+     */
+    public static void bind(ImageView view, String url, View placeholder) {
+        if (view == null) return;
+        Job pending = VIEW_JOBS.get(view);
+        int targetPx = TextUtils.isEmpty(url) ? 0 : sizeBucket(targetSize(view));
+        if (pending != null && pending.url.equals(url) && pending.targetPx == targetPx) return; // rebind of the same row
+        cancel(view);
+        DISPLAYED.remove(view);
+        if (TextUtils.isEmpty(url)) return;
+
+        String key = cacheKey(url, targetPx);
+        Bitmap cached = cache().get(key);
+        if (cached != null) {
+            show(view, placeholder, cached);
+            return;
+        }
+
+        Job job = IN_FLIGHT.get(key);
+        if (job == null) {
+            job = new Job(url, targetPx, PRIORITY_VISIBLE);
+            IN_FLIGHT.put(key, job);
+            EXECUTOR.execute(job);
+        } else if (job.priority != PRIORITY_VISIBLE && EXECUTOR.remove(job)) {
+            // A prefetch that has not started yet is now on screen: move it to the front.
+            job.priority = PRIORITY_VISIBLE;
+            EXECUTOR.execute(job);
+        }
+        job.targets.add(new Target(view, placeholder));
+        VIEW_JOBS.put(view, job);
+    }
+
+    /**
+     * Main thread: warms the memory cache for a logo that is about to scroll into view. Runs
+     * behind every visible load; the oldest prefetches are dropped if the user moves on faster
+     * than they complete.
+     */
+    public static void prefetch(String url, int targetPx) {
+        if (TextUtils.isEmpty(url)) return;
+        int bucket = sizeBucket(targetPx > 0 ? targetPx : MAX_STORED_PX);
+        String key = cacheKey(url, bucket);
+        if (IN_FLIGHT.containsKey(key) || cache().get(key) != null) return;
+        Job job = new Job(url, bucket, PRIORITY_PREFETCH);
+        IN_FLIGHT.put(key, job);
+        EXECUTOR.execute(job);
+        PREFETCHES.addLast(job);
+        while (PREFETCHES.size() > MAX_PENDING_PREFETCHES) {
+            Job old = PREFETCHES.pollFirst();
+            if (old.targets.isEmpty() && old.tryCancel()) {
+                if (IN_FLIGHT.get(old.key) == old) IN_FLIGHT.remove(old.key);
+                EXECUTOR.remove(old);
+            }
+        }
+    }
+
+    /**
+     * Main thread: the view no longer wants its pending logo (recycled or detached). A load
+     * nobody waits for any more is dropped from the queue before it reaches the network.
+     */
+    public static void cancel(ImageView view) {
+        if (view == null) return;
+        Job job = VIEW_JOBS.remove(view);
+        if (job == null) return;
+        for (int i = job.targets.size() - 1; i >= 0; i--) {
+            ImageView v = job.targets.get(i).view.get();
+            if (v == null || v == view) job.targets.remove(i);
+        }
+        if (job.targets.isEmpty() && job.tryCancel()) {
+            IN_FLIGHT.remove(job.key);
+            EXECUTOR.remove(job);
+        }
+    }
+
+    /** Main thread: hands a finished load to every view still waiting for it. */
+    private static void deliver(Job job, Bitmap bmp) {
+        if (IN_FLIGHT.get(job.key) == job) IN_FLIGHT.remove(job.key);
+        PREFETCHES.remove(job);
+        for (Target t : job.targets) {
+            ImageView view = t.view.get();
+            if (view == null || VIEW_JOBS.get(view) != job) continue;
+            VIEW_JOBS.remove(view);
+            if (bmp != null) show(view, t.placeholder.get(), bmp);
+        }
+        job.targets.clear();
+        if (bmp != null) release(bmp);
+    }
+
+    private static final class Target {
+        final WeakReference<ImageView> view;
+        final WeakReference<View> placeholder;
+
+        Target(ImageView view, View placeholder) {
+            this.view = new WeakReference<>(view);
+            this.placeholder = new WeakReference<>(placeholder);
+        }
+    }
+
+    /** One load per URL and size bucket, shared by every view bound to it while it runs. */
+    private static final class Job implements Runnable, Comparable<Job> {
+        private static final AtomicLong SEQ = new AtomicLong();
+
+        final String url;
+        final int targetPx;
+        final String key;
+        final long seq = SEQ.incrementAndGet();
+        // Only changed while the job is out of the executor queue.
+        volatile int priority;
+        // Main thread only.
+        final List<Target> targets = new ArrayList<>();
+        // 0 = queued, 1 = running, 2 = cancelled.
+        private final AtomicInteger state = new AtomicInteger();
+
+        Job(String url, int targetPx, int priority) {
+            this.url = url;
+            this.targetPx = targetPx;
+            this.key = cacheKey(url, targetPx);
+            this.priority = priority;
+        }
+
+        /** Visible loads first, then in the order they were asked for. */
+        @Override
+        public int compareTo(@NonNull Job o) {
+            if (priority != o.priority) return priority < o.priority ? -1 : 1;
+            return seq < o.seq ? -1 : (seq == o.seq ? 0 : 1);
+        }
+
+        /** Succeeds only while the job has not started; a running download is left to finish. */
+        boolean tryCancel() {
+            return state.compareAndSet(0, 2);
+        }
+
+        @Override
+        public void run() {
+            if (!state.compareAndSet(0, 1)) return;
+            LruCache<String, Bitmap> c = cache();
+            Bitmap bmp;
+            // Evictions happen under the cache's lock, so a hit is held before it can be evicted.
+            synchronized (c) {
+                bmp = c.get(key);
+                if (bmp != null) hold(bmp);
+            }
+            if (bmp == null) {
+                bmp = load(url, targetPx);
+                if (bmp != null) {
+                    hold(bmp);
+                    c.put(key, bmp);
+                }
+            }
+            final Bitmap result = bmp;
+            MAIN.post(() -> deliver(this, result));
+        }
+    }
+
+    private static void show(ImageView view, View placeholder, Bitmap bmp) {
+        if (placeholder != null) placeholder.setVisibility(View.GONE);
+        view.setImageBitmap(bmp);
+        view.setVisibility(View.VISIBLE);
+        DISPLAYED.put(view, bmp);
+    }
+
+    /** Longest edge the view will draw at, so decoding can sample down to it. */
+    static int targetSize(ImageView view) {
+        int w = view.getWidth();
+        int h = view.getHeight();
+        ViewGroup.LayoutParams lp = view.getLayoutParams();
+        if (w <= 0 && lp != null && lp.width > 0) w = lp.width;
+        if (h <= 0 && lp != null && lp.height > 0) h = lp.height;
+        int px = Math.max(w, h);
+        if (px > 0) return Math.min(px, MAX_STORED_PX);
+        return Math.round(DEFAULT_TARGET_DP * view.getResources().getDisplayMetrics().density);
+    }
+
+    /**
+     * Rounds a target size up to 64, 128, 256 or {@link #MAX_STORED_PX}, so views of similar size
+     * share one cached bitmap while a large tile never gets a thumbnail decoded for a small one.
+     */
+    static int sizeBucket(int px) {
+        int bucket = 64;
+        while (bucket < px && bucket < MAX_STORED_PX) bucket *= 2;
+        return Math.min(bucket, MAX_STORED_PX);
+    }
+
+    private static String cacheKey(String url, int bucket) {
+        return bucket + ":" + url;
+    }
+
+    /**
+     * Main thread: gives an evicted bitmap to the reuse pool unless some bound view still shows
+     * it or a delivery of it is pending. Views that were destroyed drop out of {@link #DISPLAYED}
+     * on their own; a bitmap evicted while pending is simply left to the GC.
+     */
+    private static void recycleIfUnused(Bitmap bmp) {
+        if (DISPLAYED.containsValue(bmp)) return;
+        synchronized (AWAITING) {
+            if (AWAITING.containsKey(bmp)) return;
+        }
+        LogoBitmapPool.put(bmp);
+    }
+
+    private static void hold(Bitmap bmp) {
+        synchronized (AWAITING) {
+            Integer n = AWAITING.get(bmp);
+            AWAITING.put(bmp, n == null ? 1 : n + 1);
+        }
+    }
+
+    private static void release(Bitmap bmp) {
+        synchronized (AWAITING) {
+            Integer n = AWAITING.get(bmp);
+            if (n == null || n <= 1) AWAITING.remove(bmp);
+            else AWAITING.put(bmp, n - 1);
+        }
+    }
+
+    private static LruCache<String, Bitmap> cache() {
+        LruCache<String, Bitmap> c = cache;
+        if (c == null) {
+            synchronized (LogoLoader.class) {
+                if (cache == null) cache = newCache(6 * 1024 * 1024);
+                c = cache;
+            }
+        }
+        return c;
+    }
+
+    private static LruCache<String, Bitmap> newCache(int maxBytes) {
+        return new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(@NonNull String key, @NonNull Bitmap value) {
+                return value.getByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, @NonNull String key, @NonNull Bitmap oldValue, Bitmap newValue) {
+                if (evicted && !trimming && LogoBitmapPool.isSupported()) MAIN.post(() -> recycleIfUnused(oldValue));
+            }
+        };
+    }
+
+    private static ThreadPoolExecutor newExecutor() {
+        final AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), r -> {
+                    Thread t = new Thread(() -> {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }, "logo-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /** Worker thread: disk first, then the network, then a stale disk copy if the fetch failed. */
+    private static Bitmap load(String url, int targetPx) {
+        LogoDiskCache.Entry stored = LogoDiskCache.get(url);
+        if (stored != null && stored.isFresh()) {
+            Bitmap bmp = decode(stored.data, targetPx);
+            if (bmp != null) return bmp;
+            stored = null;
+        }
+
+        String host = hostOf(url);
+        Bitmap bmp = null;
+        if (!LogoFailureCache.shouldSkip(url, host)) {
+            // Start with the scheme that worked last time for this host; fall back to the other.
+            String first = url;
+            String second = null;
+            if (url.startsWith("https://")) {
+                String httpUrl = "http://" + url.substring("https://".length());
+                if ("http".equals(LogoFailureCache.preferredScheme(host))) {
+                    first = httpUrl;
+                    second = url;
+                } else {
+                    second = httpUrl;
+                }
+            }
+            boolean connectionFailed = false;
+            String used = first;
+            try {
+                bmp = fetch(url, first, stored, targetPx);
+            } catch (IOException e) {
+                connectionFailed = true;
+                Log.w(TAG, "Logo download failed for " + first + ": " + e.getMessage());
+            }
+            if (bmp == null && second != null) {
+                Log.w(TAG, "Retry logo via " + second);
+                used = second;
+                try {
+                    bmp = fetch(url, second, stored, targetPx);
+                    connectionFailed = false;
+                } catch (IOException e) {
+                    connectionFailed = true;
+                    Log.w(TAG, "Logo download failed for " + second + ": " + e.getMessage());
+                }
+            }
+            if (bmp != null) {
+                LogoFailureCache.recordSuccess(url, host, used.startsWith("https://") ? "https" : "http");
+            } else {
+                LogoFailureCache.recordFailure(url, host, connectionFailed);
+            }
+        }
+        // Offline, backing off or server error: an outdated logo is better than an empty tile.
+        if (bmp == null && stored != null) bmp = decode(stored.data, targetPx);
+        return bmp;
+    }
+
+    private static String hostOf(String url) {
+        try {
+            return Uri.parse(url).getHost();
+        } catch (Exception ignored) {
+            return null;
+        }
+    }
+
+    /**
+     * One attempt at one URL. Returns null on an HTTP error or an undecodable body; throws if the
+     * server could not be reached at all, which the failure cache counts against the host.
+     */
+    private static Bitmap fetch(String key, String urlString, LogoDiskCache.Entry stored, int targetPx) throws IOException {
+        try {
+            String host = hostOf(urlString);
+            Request.Builder rb = new Request.Builder()
+                    .url(urlString)
+                    .header("User-Agent", "MQLTV/1.0");
+            if (stored != null) {
+                if (stored.etag != null) rb.header("If-None-Match", stored.etag);
+                if (stored.lastModified != null) rb.header("If-Modified-Since", stored.lastModified);
+            }
+            try (Response response = NetworkClient.getLogoClient(host).newCall(rb.build()).execute()) {
+                long expiresAt = LogoDiskCache.expiresAt(response);
+                if (response.code() == 304 && stored != null) {
+                    if (expiresAt >= 0) {
+                        LogoDiskCache.put(key, new LogoDiskCache.Entry(stored.data, expiresAt,
+                                stored.etag, stored.lastModified));
+                    }
+                    return decode(stored.data, targetPx);
+                }
+                if (!response.isSuccessful()) {
+                    Log.w(TAG, "Logo HTTP " + response.code() + " for " + urlString);
+                    return null;
+                }
+                ResponseBody body = response.body();
+                if (body == null) return null;
+                byte[] bytes = body.bytes();
+                if (expiresAt < 0) return decode(bytes, targetPx);
+
+                // The disk copy is made once at the largest size any screen uses.
+                BitmapFactory.Options bounds = readBounds(bytes);
+                if (bounds == null) return null;
+                byte[] data = bytes;
+                if (Math.max(bounds.outWidth, bounds.outHeight) > MAX_STORED_PX || bytes.length > MAX_RAW_BYTES) {
+                    Bitmap large = decode(bytes, MAX_STORED_PX);
+                    if (large == null) return null;
+                    Bitmap scaled = fitWithin(large, MAX_STORED_PX);
+                    data = encode(scaled, bounds.outMimeType);
+                    LogoBitmapPool.put(scaled);
+                    if (data == null) return null;
+                }
+                LogoDiskCache.put(key, new LogoDiskCache.Entry(data, expiresAt,
+                        response.header("ETag"), response.header("Last-Modified")));
+                return decode(data, targetPx);
+            }
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Bad logo URL " + urlString + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static BitmapFactory.Options readBounds(byte[] bytes) {
+        BitmapFactory.Options o = new BitmapFactory.Options();
+        o.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(bytes, 0, bytes.length, o);
+        return o.outWidth > 0 && o.outHeight > 0 ? o : null;
+    }
+
+    /**
+     * Bounds-first decode: samples by a power of two so the longest edge stays at or above
+     * {@code targetPx}, uses RGB_565 for JPEGs (never transparent) and, on API 19+, decodes into
+     * a pooled bitmap when one is large enough.
+     */
+    static Bitmap decode(byte[] bytes, int targetPx) {
+        BitmapFactory.Options o = readBounds(bytes);
+        if (o == null) return null;
+        int sample = 1;
+        int longest = Math.max(o.outWidth, o.outHeight);
+        while (targetPx > 0 && longest / (sample * 2) >= targetPx) sample *= 2;
+
+        o.inJustDecodeBounds = false;
+        o.inSampleSize = sample;
+        o.inPreferredConfig = "image/jpeg".equals(o.outMimeType) ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+        o.inMutable = LogoBitmapPool.isSupported();
+        if (LogoBitmapPool.isSupported()) {
+            int w = (o.outWidth + sample - 1) / sample;
+            int h = (o.outHeight + sample - 1) / sample;
+            o.inBitmap = LogoBitmapPool.take(w, h, o.inPreferredConfig);
+        }
+        try {
+            return BitmapFactory.decodeByteArray(bytes, 0, bytes.length, o);
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap did not fit after all (e.g. indexed PNG); decode into a fresh one.
+            o.inBitmap = null;
+            try {
+                return BitmapFactory.decodeByteArray(bytes, 0, bytes.length, o);
+            } catch (RuntimeException | OutOfMemoryError e2) {
+                return null;
+            }
+        } catch (OutOfMemoryError e) {
+            Log.w(TAG, "Logo decode OOM (" + bytes.length + " bytes)");
+            return null;
+        }
+    }
+
+    /** Power-of-two sampling can leave up to 2x the target; finish with one exact scale. */
+    private static Bitmap fitWithin(Bitmap bmp, int maxPx) {
+        int w = bmp.getWidth();
+        int h = bmp.getHeight();
+        int longest = Math.max(w, h);
+        if (longest <= maxPx) return bmp;
+        float f = maxPx / (float) longest;
+        try {
+            Bitmap scaled = Bitmap.createScaledBitmap(bmp, Math.max(1, Math.round(w * f)), Math.max(1, Math.round(h * f)), true);
+            if (scaled != bmp) LogoBitmapPool.put(bmp);
+            return scaled;
+        } catch (OutOfMemoryError e) {
+            return bmp;
+        }
+    }
+
+    private static byte[] encode(Bitmap bmp, String mimeType) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(32 * 1024);
+        boolean ok = "image/jpeg".equals(mimeType) || !bmp.hasAlpha()
+                ? bmp.compress(Bitmap.CompressFormat.JPEG, 90, out)
+                : bmp.compress(Bitmap.CompressFormat.PNG, 100, out);
+        return ok ? out.toByteArray() : null;
+    }
+}
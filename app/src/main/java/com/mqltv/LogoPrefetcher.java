@@ -0,0 +1,82 @@
+package com.mqltv;
+
+import android.view.View;
+import android.widget.ImageView;
+
+import androidx.recyclerview.widget.GridLayoutManager;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * Loads logos for the rows just beyond the visible part of a list, in the direction focus is
+ * moving, so a D-pad step lands on rows whose logos are already decoded. Requests go through
+ * {@link LogoLoader#prefetch}, behind anything on screen.
+ */
+final class LogoPrefetcher {
+    /** Logo URL per adapter position. */
+    interface Urls {
+        int size();
+
+        String urlAt(int position);
+    }
+
+    private final RecyclerView list;
+    private final int logoViewId;
+    private final int rowsAhead;
+    private final Urls urls;
+
+    private int lastPosition = RecyclerView.NO_POSITION;
+    private int targetPx;
+
+    LogoPrefetcher(RecyclerView list, int logoViewId, int rowsAhead, Urls urls) {
+        this.list = list;
+        this.logoViewId = logoViewId;
+        this.rowsAhead = rowsAhead;
+        this.urls = urls;
+    }
+
+    /** Main thread: call when the item at {@code position} gains focus. */
+    void onFocused(int position) {
+        int previous = lastPosition;
+        lastPosition = position;
+        if (previous == RecyclerView.NO_POSITION || previous == position) return;
+        if (!(list.getLayoutManager() instanceof LinearLayoutManager)) return;
+
+        LinearLayoutManager lm = (LinearLayoutManager) list.getLayoutManager();
+        int span = lm instanceof GridLayoutManager ? Math.max(1, ((GridLayoutManager) lm).getSpanCount()) : 1;
+        int first = lm.findFirstVisibleItemPosition();
+        int last = lm.findLastVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION || last == RecyclerView.NO_POSITION) return;
+
+        int px = targetPx();
+        int size = urls.size();
+        int count = rowsAhead * span;
+        if (position > previous) {
+            for (int i = last + 1; i < Math.min(size, last + 1 + count); i++) {
+                LogoLoader.prefetch(urls.urlAt(i), px);
+            }
+        } else {
+            for (int i = first - 1; i >= Math.max(0, first - count); i--) {
+                LogoLoader.prefetch(urls.urlAt(i), px);
+            }
+        }
+    }
+
+    /** Forget the scroll direction, e.g. after the list content was replaced. */
+    void reset() {
+        lastPosition = RecyclerView.NO_POSITION;
+    }
+
+    private int targetPx() {
+        if (targetPx > 0) return targetPx;
+        for (int i = 0; i < list.getChildCount(); i++) {
+            View logo = list.getChildAt(i).findViewById(logoViewId);
+            if (logo instanceof ImageView && logo.getWidth() > 0) {
+                targetPx = LogoLoader.targetSize((ImageView) logo);
+                return targetPx;
+            }
+        }
+        // Not laid out yet; LogoLoader falls back to its largest logo size.
+        return 0;
+    }
+}
@@ -4,15 +4,61 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.net.URLDecoder;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 public final class M3UParser {
+    // First batch is small so the UI can paint quickly; later ones grow to bound copying.
+    private static final int FIRST_BATCH = 100;
+    private static final int MAX_BATCH = 2000;
+
+    private static final String EXTM3U = "#EXTM3U";
+    private static final String EXTINF = "#EXTINF";
+    private static final String EXTVLCOPT = "#EXTVLCOPT:";
+    private static final String KODIPROP = "#KODIPROP:";
+    private static final String ATTR_GROUP_TITLE = "group-title";
+    private static final String ATTR_TVG_LOGO = "tvg-logo";
+    private static final String ATTR_TVG_NAME = "tvg-name";
+    private static final String ATTR_TVG_ID = "tvg-id";
+    private static final String ATTR_TVG_CHNO = "tvg-chno";
+    private static final String ATTR_CATCHUP = "catchup";
+    private static final String ATTR_CATCHUP_SOURCE = "catchup-source";
+    private static final String ATTR_URL_TVG = "url-tvg";
+    private static final String ATTR_X_TVG_URL = "x-tvg-url";
+    private static final String OPT_USER_AGENT = "http-user-agent=";
+    private static final String OPT_REFERRER = "http-referrer=";
+    private static final String KODI_HEADERS = "inputstream.adaptive.stream_headers=";
+
+    /** Receives channels while the stream is still being read. */
+    public interface BatchListener {
+        /** Called on the parsing thread with the channels parsed since the previous call. */
+        void onBatch(List<Channel> batch);
+    }
+
+    /** Playlist-level data from the #EXTM3U header line. */
+    public static final class PlaylistInfo {
+        /** XMLTV guide URL(s) from url-tvg / x-tvg-url, comma separated as in the source. */
+        public String epgUrl;
+    }
+
     private M3UParser() {}
 
     public static List<Channel> parse(InputStream inputStream) throws IOException {
+        return parse(inputStream, null, null);
+    }
+
+    public static List<Channel> parse(InputStream inputStream, BatchListener listener) throws IOException {
+        return parse(inputStream, listener, null);
+    }
+
+    /**
+     * Same as {@link #parse(InputStream)}, additionally pushing channels to {@code listener} in
+     * batches as they are read. The final partial batch is delivered before this returns.
+     *
+     * @param info if non-null, receives the #EXTM3U header attributes
+     */
+    public static List<Channel> parse(InputStream inputStream, BatchListener listener, PlaylistInfo info) throws IOException {
         List<Channel> channels = new ArrayList<>();
 
         if (inputStream == null) return channels;
@@ -26,96 +72,284 @@ public final class M3UParser {
             reader = new BufferedReader(new InputStreamReader(inputStream));
         }
 
-        String pendingTitle = null;
-        String pendingGroupTitle = null;
-        String pendingLogoUrl = null;
-        String line;
-        while (true) {
-            if ((line = reader.readLine()) == null) break;
-            line = line.trim();
-            if (line.isEmpty()) continue;
-
-            if (line.startsWith("#EXTINF")) {
-                int commaIndex = line.indexOf(',');
-                String header = commaIndex >= 0 ? line.substring(0, commaIndex) : line;
-                Map<String, String> attrs = parseAttributes(header);
-                pendingGroupTitle = emptyToNull(attrs.get("group-title"));
-                pendingLogoUrl = emptyToNull(attrs.get("tvg-logo"));
-
-                if (commaIndex >= 0 && commaIndex + 1 < line.length()) {
-                    pendingTitle = line.substring(commaIndex + 1).trim();
+        // Group titles, logo URLs and header values repeat across thousands of entries; keep one copy of each.
+        StringPool pool = new StringPool();
+        Extinf extinf = new Extinf();
+        // #EXTVLCOPT / #KODIPROP may come before or after #EXTINF; both apply to the next URL.
+        String pendingUserAgent = null;
+        String pendingReferrer = null;
+
+        int batchStart = 0;
+        int batchSize = FIRST_BATCH;
+        boolean pending = false;
+        // The last partial batch is delivered even if the stream breaks off, so a listener
+        // showing progress keeps everything that was parsed.
+        try {
+            String line;
+            while (true) {
+                if ((line = reader.readLine()) == null) break;
+                int start = trimStart(line, 0, line.length());
+                int end = trimEnd(line, start, line.length());
+                if (start >= end) continue;
+
+                if (line.startsWith(EXTINF, start)) {
+                    extinf.parse(line, start, end, pool);
+                    pending = true;
+                    continue;
+                }
+
+                if (line.startsWith(EXTVLCOPT, start)) {
+                    int o = trimStart(line, start + EXTVLCOPT.length(), end);
+                    if (line.startsWith(OPT_USER_AGENT, o)) {
+                        pendingUserAgent = valueOrNull(line, o + OPT_USER_AGENT.length(), end, pool);
+                    } else if (line.startsWith(OPT_REFERRER, o)) {
+                        pendingReferrer = valueOrNull(line, o + OPT_REFERRER.length(), end, pool);
+                    }
+                    continue;
+                }
+
+                if (line.startsWith(KODIPROP, start)) {
+                    int o = trimStart(line, start + KODIPROP.length(), end);
+                    if (line.startsWith(KODI_HEADERS, o)) {
+                        // e.g. inputstream.adaptive.stream_headers=User-Agent=Foo%2F1.0&Referer=https%3A%2F%2Fx
+                        String[] pairs = line.substring(o + KODI_HEADERS.length(), end).split("&");
+                        for (String pair : pairs) {
+                            int eq = pair.indexOf('=');
+                            if (eq <= 0) continue;
+                            String name = pair.substring(0, eq).trim();
+                            String value = urlDecode(pair.substring(eq + 1).trim());
+                            if (value.isEmpty()) continue;
+                            if ("User-Agent".equalsIgnoreCase(name)) pendingUserAgent = pool.get(value, 0, value.length());
+                            else if ("Referer".equalsIgnoreCase(name)) pendingReferrer = pool.get(value, 0, value.length());
+                        }
+                    }
+                    continue;
+                }
+
+                if (line.startsWith(EXTM3U, start)) {
+                    if (info != null) {
+                        Extinf header = new Extinf();
+                        header.scan(line, start + EXTM3U.length(), end, pool);
+                        info.epgUrl = header.epgUrl;
+                    }
+                    continue;
+                }
+
+                if (line.charAt(start) == '#') {
+                    continue;
+                }
+
+                // URL line
+                String url = start == 0 && end == line.length() ? line : line.substring(start, end);
+                if (pending) {
+                    // tvg-name is only worth keeping when it adds something to the title (for search).
+                    String tvgName = extinf.tvgName != null && !extinf.tvgName.equals(extinf.title) ? extinf.tvgName : null;
+                    Channel.Extras extras = Channel.Extras.of(extinf.tvgId, tvgName, extinf.number, extinf.catchup,
+                            extinf.catchupSource, pendingUserAgent, pendingReferrer);
+                    channels.add(new Channel(extinf.title != null ? extinf.title : url, url, extinf.groupTitle, extinf.logoUrl, extras));
                 } else {
-                    String tvgName = emptyToNull(attrs.get("tvg-name"));
-                    pendingTitle = tvgName != null ? tvgName : "Channel";
+                    channels.add(new Channel(url, url, null, null,
+                            Channel.Extras.of(null, null, 0, null, null, pendingUserAgent, pendingReferrer)));
                 }
-                continue;
-            }
+                pending = false;
+                pendingUserAgent = null;
+                pendingReferrer = null;
 
-            if (line.startsWith("#")) {
-                continue;
+                if (listener != null && channels.size() - batchStart >= batchSize) {
+                    List<Channel> batch = new ArrayList<>(channels.subList(batchStart, channels.size()));
+                    batchStart = channels.size();
+                    batchSize = Math.min(MAX_BATCH, batchSize * 2);
+                    listener.onBatch(batch);
+                }
+            }
+        } finally {
+            if (listener != null && channels.size() > batchStart) {
+                listener.onBatch(new ArrayList<>(channels.subList(batchStart, channels.size())));
             }
-
-            // URL line
-            String url = line;
-            String title = pendingTitle != null ? pendingTitle : url;
-            channels.add(new Channel(title, url, pendingGroupTitle, pendingLogoUrl));
-            pendingTitle = null;
-            pendingGroupTitle = null;
-            pendingLogoUrl = null;
         }
-
         return channels;
     }
 
-    private static String emptyToNull(String s) {
-        if (s == null) return null;
-        String t = s.trim();
-        return t.isEmpty() ? null : t;
-    }
+    /**
+     * Fields of the last #EXTINF line, reused for every entry. The line is scanned once and only
+     * the attributes we keep are materialized; keys are compared in place, never copied.
+     */
+    private static final class Extinf {
+        String title;
+        String groupTitle;
+        String logoUrl;
+        String tvgName;
+        String tvgId;
+        int number;
+        String catchup;
+        String catchupSource;
+        String epgUrl;
 
-    private static Map<String, String> parseAttributes(String extinfHeader) {
         // Example: #EXTINF:-1 tvg-logo="http://..." group-title="News",Title
-        Map<String, String> attrs = new HashMap<>();
-        if (extinfHeader == null) return attrs;
-
-        int i = extinfHeader.indexOf(' ');
-        if (i < 0) return attrs;
-
-        int n = extinfHeader.length();
-        while (i < n) {
-            while (i < n && extinfHeader.charAt(i) == ' ') i++;
-            if (i >= n) break;
-
-            int keyStart = i;
-            while (i < n) {
-                char c = extinfHeader.charAt(i);
-                if (c == '=' || c == ' ') break;
-                i++;
+        void parse(String line, int start, int end, StringPool pool) {
+            // Skip "#EXTINF:<duration>".
+            int i = start + EXTINF.length();
+            while (i < end && line.charAt(i) != ' ' && line.charAt(i) != ',') i++;
+
+            int titleComma = scan(line, i, end, pool);
+
+            title = null;
+            if (titleComma >= 0) {
+                int ts = trimStart(line, titleComma + 1, end);
+                if (ts < end) {
+                    title = line.substring(ts, end);
+                    return;
+                }
             }
-            if (i >= n) break;
+            title = tvgName != null ? tvgName : "Channel";
+        }
 
-            String key = extinfHeader.substring(keyStart, i).trim();
-            while (i < n && extinfHeader.charAt(i) == ' ') i++;
-            if (i >= n || extinfHeader.charAt(i) != '=') {
-                while (i < n && extinfHeader.charAt(i) != ' ') i++;
-                continue;
+        /** Reads key="value" pairs from {@code i}; returns the index of the title comma or -1. */
+        int scan(String line, int i, int end, StringPool pool) {
+            groupTitle = null;
+            logoUrl = null;
+            tvgName = null;
+            tvgId = null;
+            number = 0;
+            catchup = null;
+            catchupSource = null;
+            epgUrl = null;
+
+            while (i < end) {
+                while (i < end && line.charAt(i) == ' ') i++;
+                if (i >= end) break;
+                if (line.charAt(i) == ',') return i;
+
+                int keyStart = i;
+                while (i < end) {
+                    char c = line.charAt(i);
+                    if (c == '=' || c == ' ' || c == ',') break;
+                    i++;
+                }
+                int keyEnd = i;
+                while (i < end && line.charAt(i) == ' ') i++;
+                if (i >= end || line.charAt(i) != '=') continue;
+                i++; // '='
+                while (i < end && line.charAt(i) == ' ') i++;
+
+                int valueStart;
+                int valueEnd;
+                if (i < end && line.charAt(i) == '"') {
+                    valueStart = ++i;
+                    while (i < end && line.charAt(i) != '"') i++;
+                    valueEnd = i;
+                    if (i < end) i++; // closing quote
+                } else {
+                    valueStart = i;
+                    while (i < end && line.charAt(i) != ' ' && line.charAt(i) != ',') i++;
+                    valueEnd = i;
+                }
+
+                valueStart = trimStart(line, valueStart, valueEnd);
+                valueEnd = trimEnd(line, valueStart, valueEnd);
+                if (valueStart >= valueEnd) continue;
+
+                if (keyIs(line, keyStart, keyEnd, ATTR_GROUP_TITLE)) {
+                    groupTitle = pool.get(line, valueStart, valueEnd);
+                } else if (keyIs(line, keyStart, keyEnd, ATTR_TVG_LOGO)) {
+                    logoUrl = pool.get(line, valueStart, valueEnd);
+                } else if (keyIs(line, keyStart, keyEnd, ATTR_TVG_NAME)) {
+                    tvgName = line.substring(valueStart, valueEnd);
+                } else if (keyIs(line, keyStart, keyEnd, ATTR_TVG_ID)) {
+                    tvgId = line.substring(valueStart, valueEnd);
+                } else if (keyIs(line, keyStart, keyEnd, ATTR_TVG_CHNO)) {
+                    number = parsePositiveInt(line, valueStart, valueEnd);
+                } else if (keyIs(line, keyStart, keyEnd, ATTR_CATCHUP)) {
+                    catchup = pool.get(line, valueStart, valueEnd);
+                } else if (keyIs(line, keyStart, keyEnd, ATTR_CATCHUP_SOURCE)) {
+                    catchupSource = pool.get(line, valueStart, valueEnd);
+                } else if (keyIs(line, keyStart, keyEnd, ATTR_URL_TVG) || keyIs(line, keyStart, keyEnd, ATTR_X_TVG_URL)) {
+                    if (epgUrl == null) epgUrl = line.substring(valueStart, valueEnd);
+                }
             }
-            i++; // '='
-            while (i < n && extinfHeader.charAt(i) == ' ') i++;
-            if (i >= n || extinfHeader.charAt(i) != '"') {
-                while (i < n && extinfHeader.charAt(i) != ' ') i++;
-                continue;
+            return -1;
+        }
+    }
+
+    private static int parsePositiveInt(String s, int start, int end) {
+        int n = 0;
+        for (int k = start; k < end; k++) {
+            char c = s.charAt(k);
+            if (c < '0' || c > '9' || n > 99_999) return 0;
+            n = n * 10 + (c - '0');
+        }
+        return n;
+    }
+
+    private static String valueOrNull(String line, int start, int end, StringPool pool) {
+        start = trimStart(line, start, end);
+        return start < end ? pool.get(line, start, end) : null;
+    }
+
+    private static String urlDecode(String s) {
+        if (s.indexOf('%') < 0 && s.indexOf('+') < 0) return s;
+        try {
+            return URLDecoder.decode(s, "UTF-8");
+        } catch (Exception ignored) {
+            return s;
+        }
+    }
+
+    private static boolean keyIs(String line, int keyStart, int keyEnd, String key) {
+        return keyEnd - keyStart == key.length() && line.regionMatches(keyStart, key, 0, key.length());
+    }
+
+    private static int trimStart(String s, int start, int end) {
+        while (start < end && s.charAt(start) <= ' ') start++;
+        return start;
+    }
+
+    private static int trimEnd(String s, int start, int end) {
+        while (end > start && s.charAt(end - 1) <= ' ') end--;
+        return end;
+    }
+
+    /**
+     * Per-parse canonicalizing pool. Looks up a region of a line without creating a substring, so
+     * a repeated value costs no allocation at all.
+     */
+    private static final class StringPool {
+        private String[] table = new String[256];
+        private int size;
+
+        String get(String src, int start, int end) {
+            int len = end - start;
+            int h = 0;
+            for (int k = start; k < end; k++) h = 31 * h + src.charAt(k);
+
+            int mask = table.length - 1;
+            int idx = spread(h) & mask;
+            String s;
+            while ((s = table[idx]) != null) {
+                if (s.length() == len && s.hashCode() == h && src.regionMatches(start, s, 0, len)) return s;
+                idx = (idx + 1) & mask;
             }
-            i++; // opening quote
 
-            int valueStart = i;
-            while (i < n && extinfHeader.charAt(i) != '"') i++;
-            if (i <= n) {
-                String value = extinfHeader.substring(valueStart, i);
-                if (!key.isEmpty()) attrs.put(key, value);
+            s = src.substring(start, end);
+            table[idx] = s;
+            if (++size * 2 > table.length) grow();
+            return s;
+        }
+
+        private void grow() {
+            String[] old = table;
+            table = new String[old.length * 2];
+            int mask = table.length - 1;
+            for (String s : old) {
+                if (s == null) continue;
+                int idx = spread(s.hashCode()) & mask;
+                while (table[idx] != null) idx = (idx + 1) & mask;
+                table[idx] = s;
             }
-            if (i < n && extinfHeader.charAt(i) == '"') i++;
         }
-        return attrs;
+
+        private static int spread(int h) {
+            return h ^ (h >>> 16);
+        }
     }
 }
@@ -36,11 +36,11 @@ public class MainFragment extends BrowseSupportFragment {
             if (!LoginGuard.ensureLoggedIn(requireContext())) return;
             if (!SubscriptionGuard.ensureNotExpired(requireContext())) return;
             PresenceReporter.reportOnlineLaunch(requireContext(), channel.getTitle(), channel.getUrl());
-            Intent intent = PlayerIntents.createPreferredPlayIntent(requireContext(), channel.getTitle(), channel.getUrl());
+            Intent intent = PlayerIntents.createPreferredPlayIntent(requireContext(), channel);
             try {
                 startActivity(intent);
             } catch (Exception e) {
-                startActivity(PlayerIntents.createPlayIntent(requireContext(), channel.getTitle(), channel.getUrl()));
+                startActivity(PlayerIntents.createPlayIntent(requireContext(), channel));
             }
         });
 
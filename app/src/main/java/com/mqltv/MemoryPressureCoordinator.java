@@ -0,0 +1,75 @@
+package com.mqltv;
+
+import android.content.ComponentCallbacks2;
+import android.util.Log;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Fans {@link ComponentCallbacks2#onTrimMemory} out to every cache that can give memory back,
+ * so the process is not the one the OS kills on 1GB boxes while a player is running.
+ *
+ * Each {@link Trimmable} decides what to drop for a level and reports roughly how many bytes it
+ * released; the totals are kept for diagnostics.
+ */
+public final class MemoryPressureCoordinator {
+    private static final String TAG = "MemoryPressure";
+
+    public interface Trimmable {
+        /** Main thread. Returns an estimate of the bytes released, 0 if nothing was dropped. */
+        long onTrimMemory(int level);
+    }
+
+    private static final MemoryPressureCoordinator INSTANCE = new MemoryPressureCoordinator();
+
+    private final CopyOnWriteArrayList<Trimmable> trimmables = new CopyOnWriteArrayList<>();
+
+    private volatile int lastLevel = -1;
+    private volatile long lastFreedBytes;
+    private volatile long totalFreedBytes;
+
+    private MemoryPressureCoordinator() {}
+
+    public static MemoryPressureCoordinator get() {
+        return INSTANCE;
+    }
+
+    public void register(Trimmable t) {
+        if (t != null) trimmables.addIfAbsent(t);
+    }
+
+    public void unregister(Trimmable t) {
+        trimmables.remove(t);
+    }
+
+    /** Called from {@link MqlTvApp}; {@code onLowMemory} arrives as {@code TRIM_MEMORY_COMPLETE}. */
+    public void onTrimMemory(int level) {
+        long freed = 0;
+        for (Trimmable t : trimmables) {
+            try {
+                freed += Math.max(0, t.onTrimMemory(level));
+            } catch (Throwable e) {
+                Log.w(TAG, "trim failed in " + t, e);
+            }
+        }
+        lastLevel = level;
+        lastFreedBytes = freed;
+        totalFreedBytes += freed;
+        Log.i(TAG, "trim level=" + level + " freed~" + (freed / 1024) + "KB total~" + (totalFreedBytes / 1024) + "KB");
+    }
+
+    /** Last level received, or -1 if the app was never asked to trim. */
+    public int getLastLevel() {
+        return lastLevel;
+    }
+
+    /** Estimated bytes released by the last trim. */
+    public long getLastFreedBytes() {
+        return lastFreedBytes;
+    }
+
+    /** Estimated bytes released by all trims since the process started. */
+    public long getTotalFreedBytes() {
+        return totalFreedBytes;
+    }
+}
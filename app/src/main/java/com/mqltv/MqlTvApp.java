@@ -1,5 +1,7 @@
 package com.mqltv;
 
+import android.os.Build;
+
 import androidx.multidex.MultiDexApplication;
 
 public class MqlTvApp extends MultiDexApplication {
@@ -7,5 +9,25 @@ public class MqlTvApp extends MultiDexApplication {
 	public void onCreate() {
 		super.onCreate();
 		NetworkClient.init(this);
+		LogoLoader.init(this);
+		ChannelCatalog.get().registerForMemoryPressure();
+		WallpaperRefreshScheduler.schedule(this);
+		registerReceiver(new ConnectivityChangeReceiver(), ConnectivityChangeReceiver.filter());
+		if (Build.VERSION.SDK_INT >= 26) {
+			// Package broadcasts only reach runtime receivers on 8.0+; older releases use the manifest one.
+			registerReceiver(new PackageChangeReceiver(), PackageChangeReceiver.filter());
+		}
+	}
+
+	@Override
+	public void onTrimMemory(int level) {
+		super.onTrimMemory(level);
+		MemoryPressureCoordinator.get().onTrimMemory(level);
+	}
+
+	@Override
+	public void onLowMemory() {
+		super.onLowMemory();
+		MemoryPressureCoordinator.get().onTrimMemory(TRIM_MEMORY_COMPLETE);
 	}
 }
@@ -1,6 +1,7 @@
 package com.mqltv;
 
 import android.app.Activity;
+import android.content.Intent;
 import android.media.AudioManager;
 import android.media.MediaPlayer;
 import android.net.Uri;
@@ -21,6 +22,7 @@ import android.widget.Toast;
 import androidx.annotation.NonNull;
 
 import java.io.IOException;
+import java.util.Map;
 
 public class NativePlayerActivity extends Activity {
 
@@ -42,6 +44,10 @@ public class NativePlayerActivity extends Activity {
     private String title;
 
     private PlayerChannelOverlayController channelOverlay;
+    private PlaybackTracer trace;
+
+    // MediaPlayer.MEDIA_INFO_AUDIO_RENDERING_START, API 26.
+    private static final int MEDIA_INFO_AUDIO_RENDERING_START = 4;
 
     private final Handler mainHandler = new Handler(Looper.getMainLooper());
 
@@ -65,6 +71,9 @@ public class NativePlayerActivity extends Activity {
     private boolean prepared = false;
     private boolean started = false;
     private boolean didResyncSeek = false;
+    // Bumped by every in-place channel switch; delayed callbacks of the previous channel check it,
+    // since the MediaPlayer object (and so the mediaPlayer != player test) stays the same.
+    private int playbackGeneration = 0;
 
     private final Runnable showBufferingIfStillBuffering = new Runnable() {
         @Override
@@ -148,19 +157,7 @@ public class NativePlayerActivity extends Activity {
         title = getIntent().getStringExtra(Constants.EXTRA_TITLE);
         url = getIntent().getStringExtra(Constants.EXTRA_URL);
 
-        channelOverlay = new PlayerChannelOverlayController(this, channel -> {
-            if (channel == null) return;
-            if (!LoginGuard.ensureLoggedIn(NativePlayerActivity.this, LoginActivity.DEST_LIVE_TV)) return;
-            if (!SubscriptionGuard.ensureNotExpired(NativePlayerActivity.this)) return;
-            RecentChannelsStore.record(NativePlayerActivity.this, channel);
-            PresenceReporter.reportOnlineLaunch(NativePlayerActivity.this, channel.getTitle(), channel.getUrl());
-            try {
-                startActivity(PlayerIntents.createPreferredPlayIntent(NativePlayerActivity.this, channel.getTitle(), channel.getUrl()));
-            } catch (Exception e) {
-                startActivity(PlayerIntents.createPlayIntent(NativePlayerActivity.this, channel.getTitle(), channel.getUrl()));
-            }
-            finish();
-        });
+        channelOverlay = new PlayerChannelOverlayController(this, new PlayerChannelSwitcher(this, this::switchTo));
         if (channelOverlay != null) channelOverlay.setCurrentChannel(url);
 
         PresenceReporter.startPlayback(getApplicationContext(), title, url);
@@ -222,6 +219,8 @@ public class NativePlayerActivity extends Activity {
         lastPositionChangedAtMs = 0;
 
         Log.i(TAG, "Starting native playback: " + title + " / " + url);
+        // A watchdog restart continues the session; it shows up as a stall.
+        if (trace == null) trace = PlaybackTracer.start(this, PlaybackTracer.ENGINE_NATIVE, getIntent(), false);
 
         try {
             MediaPlayer mp = new MediaPlayer();
@@ -232,6 +231,7 @@ public class NativePlayerActivity extends Activity {
 
             mp.setOnPreparedListener(player -> {
                 prepared = true;
+                if (trace != null) trace.ready();
                 // Keep loading visible until we actually see video rendering.
                 if (loading != null) loading.setVisibility(View.VISIBLE);
                 try {
@@ -248,6 +248,7 @@ public class NativePlayerActivity extends Activity {
             });
 
             mp.setOnInfoListener((player, what, extra) -> {
+                traceInfo(what);
                 if (what == MediaPlayer.MEDIA_INFO_BUFFERING_START) {
                     isBuffering = true;
                     mainHandler.removeCallbacks(showBufferingIfStillBuffering);
@@ -267,7 +268,7 @@ public class NativePlayerActivity extends Activity {
                     // Don't unmute yet unless we already have video rendering.
                     // Some STBs report BUFFERING_END before the first frame, which causes audio lead.
                     if (firstVideoFrameRendered) {
-                        mainHandler.postDelayed(() -> setMuted(false), getAudioPostBufferDelayMs());
+                        postForCurrentChannel(() -> setMuted(false), getAudioPostBufferDelayMs());
                     }
                 } else if (what == MediaPlayer.MEDIA_INFO_VIDEO_RENDERING_START) {
                     firstVideoFrameRendered = true;
@@ -284,13 +285,14 @@ public class NativePlayerActivity extends Activity {
                         return false;
                     }
                     // Unmute after first video frame is actually rendering.
-                    mainHandler.postDelayed(() -> setMuted(false), getAudioPostVideoRenderDelayMs());
+                    postForCurrentChannel(() -> setMuted(false), getAudioPostVideoRenderDelayMs());
                 }
                 return false;
             });
 
             mp.setOnErrorListener((player, what, extra) -> {
                 Log.e(TAG, "MediaPlayer error what=" + what + " extra=" + extra);
+                if (trace != null) trace.failed("native_" + what + "_" + extra);
                 Toast.makeText(NativePlayerActivity.this, "Native player error: " + what, Toast.LENGTH_SHORT).show();
                 finish();
                 return true;
@@ -301,14 +303,7 @@ public class NativePlayerActivity extends Activity {
                 finish();
             });
 
-            mp.setDisplay(holder);
-
-            Uri uri = Uri.parse(url);
-            // Use setDataSource(Context, Uri) for better compatibility.
-            mp.setDataSource(getApplicationContext(), uri);
-
-            // For some legacy devices, preparing async is safer.
-            mp.prepareAsync();
+            openUrl(mp, holder);
 
         } catch (IOException e) {
             Log.e(TAG, "Failed to start playback", e);
@@ -321,6 +316,94 @@ public class NativePlayerActivity extends Activity {
         }
     }
 
+    private void traceInfo(int what) {
+        if (trace == null) return;
+        if (what == MediaPlayer.MEDIA_INFO_BUFFERING_START) {
+            trace.bufferingStarted();
+        } else if (what == MediaPlayer.MEDIA_INFO_BUFFERING_END) {
+            trace.bufferingEnded();
+        } else if (what == MediaPlayer.MEDIA_INFO_VIDEO_RENDERING_START) {
+            trace.bufferingEnded();
+            trace.firstVideoFrame();
+        } else if (what == MEDIA_INFO_AUDIO_RENDERING_START) {
+            trace.firstAudio();
+        }
+    }
+
+    private void finishTrace(String reason) {
+        if (trace != null) {
+            trace.finish(reason);
+            trace = null;
+        }
+    }
+
+    private void openUrl(MediaPlayer mp, SurfaceHolder holder) throws IOException {
+        mp.setDisplay(holder);
+
+        Uri uri = Uri.parse(url);
+        // Use setDataSource(Context, Uri) for better compatibility; the headers overload
+        // only when the playlist asks for a specific User-Agent / Referer.
+        Map<String, String> streamHeaders = PlayerIntents.getStreamHeaders(getIntent());
+        if (streamHeaders.isEmpty()) {
+            mp.setDataSource(getApplicationContext(), uri);
+        } else {
+            mp.setDataSource(getApplicationContext(), uri, streamHeaders);
+        }
+
+        // For some legacy devices, preparing async is safer.
+        mp.prepareAsync();
+    }
+
+    /**
+     * Zaps on the existing MediaPlayer: reset() keeps the object, its listeners and the
+     * surface, so only the new data source has to be prepared.
+     */
+    private boolean switchTo(Intent intent) {
+        MediaPlayer mp = mediaPlayer;
+        SurfaceHolder holder = surfaceView != null ? surfaceView.getHolder() : null;
+        String nextUrl = intent.getStringExtra(Constants.EXTRA_URL);
+        if (mp == null || holder == null || nextUrl == null || nextUrl.trim().isEmpty()) return false;
+
+        url = nextUrl;
+        title = intent.getStringExtra(Constants.EXTRA_TITLE);
+        Log.i(TAG, "Switching native playback: " + title + " / " + url);
+        if (channelOverlay != null) channelOverlay.setCurrentChannel(url);
+        finishTrace("zap");
+        trace = PlaybackTracer.start(this, PlaybackTracer.ENGINE_NATIVE, intent, true);
+
+        // Unmutes, spinner and resync callbacks still queued belong to the old channel.
+        playbackGeneration++;
+        mainHandler.removeCallbacks(showBufferingIfStillBuffering);
+        prepared = false;
+        started = false;
+        audioMuted = false;
+        firstVideoFrameRendered = false;
+        didResyncSeek = false;
+        isBuffering = true;
+        lastPositionMs = -1;
+        lastPositionChangedAtMs = 0;
+        showLoading(true);
+        try {
+            mp.setOnSeekCompleteListener(null);
+            mp.reset();
+            openUrl(mp, holder);
+            return true;
+        } catch (Throwable t) {
+            Log.w(TAG, "in-place switch failed; reopening", t);
+            releasePlayer();
+            startPlayback(holder);
+            return true;
+        }
+    }
+
+    /** Runs {@code r} after {@code delayMs} unless the channel was switched meanwhile. */
+    private void postForCurrentChannel(Runnable r, long delayMs) {
+        final int gen = playbackGeneration;
+        mainHandler.postDelayed(() -> {
+            if (gen == playbackGeneration) r.run();
+        }, delayMs);
+    }
+
     private void setMuted(boolean muted) {
         MediaPlayer mp = mediaPlayer;
         if (mp == null) return;
@@ -348,7 +431,7 @@ public class NativePlayerActivity extends Activity {
 
         // Fallback: if video is already playing but the device never sends VIDEO_RENDERING_START,
         // don't keep the spinner forever.
-        mainHandler.postDelayed(() -> {
+        postForCurrentChannel(() -> {
             if (mediaPlayer != player) return;
             if (loading != null && loading.getVisibility() == View.VISIBLE) {
                 try {
@@ -362,7 +445,7 @@ public class NativePlayerActivity extends Activity {
         }, 2500);
 
         // Fallback: if we don't get VIDEO_RENDERING_START, unmute after a delay.
-        mainHandler.postDelayed(() -> {
+        postForCurrentChannel(() -> {
             if (mediaPlayer == null) return;
             if (!firstVideoFrameRendered) {
                 Log.w(TAG, "No VIDEO_RENDERING_START; unmuting via fallback delay");
@@ -382,9 +465,10 @@ public class NativePlayerActivity extends Activity {
             final int pos = Math.max(0, player.getCurrentPosition());
             Log.w(TAG, "Resync: seekTo currentPosition=" + pos);
 
+            final int gen = playbackGeneration;
             final Runnable unmuteFallback = () -> {
-                if (mediaPlayer != player) return;
-                mainHandler.postDelayed(() -> {
+                if (mediaPlayer != player || gen != playbackGeneration) return;
+                postForCurrentChannel(() -> {
                     setMuted(false);
                     isBuffering = false;
                     if (firstVideoFrameRendered) showLoading(false);
@@ -402,10 +486,10 @@ public class NativePlayerActivity extends Activity {
 
             player.seekTo(pos);
             // If seek complete never arrives, unmute anyway.
-            mainHandler.postDelayed(unmuteFallback, 700);
+            postForCurrentChannel(unmuteFallback, 700);
         } catch (Throwable t) {
             Log.w(TAG, "Resync seek failed", t);
-            mainHandler.postDelayed(() -> setMuted(false), 200);
+            postForCurrentChannel(() -> setMuted(false), 200);
         }
     }
 
@@ -434,6 +518,7 @@ public class NativePlayerActivity extends Activity {
         if (holder == null) return;
 
         if (loading != null) loading.setVisibility(View.VISIBLE);
+        if (trace != null) trace.bufferingStarted();
         releasePlayer();
         mainHandler.postDelayed(() -> startPlayback(holder), 400);
     }
@@ -516,6 +601,7 @@ public class NativePlayerActivity extends Activity {
         mainHandler.removeCallbacks(accessTick);
         super.onPause();
         // Stop playback when leaving.
+        finishTrace("stop");
         releasePlayer();
     }
 
@@ -531,6 +617,7 @@ public class NativePlayerActivity extends Activity {
         }
         mainHandler.removeCallbacks(accessTick);
         mainHandler.removeCallbacks(watchdog);
+        finishTrace("stop");
         releasePlayer();
     }
 }
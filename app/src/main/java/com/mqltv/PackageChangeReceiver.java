@@ -0,0 +1,35 @@
+package com.mqltv;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+
+/**
+ * Drops {@link LauncherAppsIndex} when an app is installed, removed or updated.
+ *
+ * Declared in the manifest for API < 26 and registered from {@link MqlTvApp} for the lifetime
+ * of the process, since newer releases no longer deliver these broadcasts to manifest receivers.
+ */
+public class PackageChangeReceiver extends BroadcastReceiver {
+
+    static IntentFilter filter() {
+        IntentFilter f = new IntentFilter();
+        f.addAction(Intent.ACTION_PACKAGE_ADDED);
+        f.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        f.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        f.addDataScheme("package");
+        return f;
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (context == null || intent == null) return;
+        // Updates arrive as REMOVED + ADDED with EXTRA_REPLACING; the ADDED one is enough.
+        if (Intent.ACTION_PACKAGE_REMOVED.equals(intent.getAction())
+                && intent.getBooleanExtra(Intent.EXTRA_REPLACING, false)) {
+            return;
+        }
+        LauncherAppsIndex.invalidate(context.getApplicationContext());
+    }
+}
@@ -35,6 +35,7 @@ public final class PlaybackPrefs {
     public static final int VLC_VOUT_GLES2 = 3;
 
     public static final String PREF_EXO_LIMIT_480P = "pref_exo_limit_480p";
+    public static final String PREF_ZAP_PREBUFFER = "pref_zap_prebuffer";
     public static final String PREF_VLC_NETWORK_CACHING = "pref_vlc_network_caching"; // in ms: 1500/3000/5000/10000
     public static final String PREF_VLC_DEINTERLACE = "pref_vlc_deinterlace";
     public static final String PREF_VLC_HW_IMPL = "pref_vlc_hw_impl"; // 0=auto, 1=mediacodec, 2=mediacodec_ndk
@@ -96,6 +97,14 @@ public final class PlaybackPrefs {
         sp(context).edit().putBoolean(PREF_EXO_LIMIT_480P, enabled).apply();
     }
 
+    public static boolean isZapPrebuffer(Context context) {
+        return sp(context).getBoolean(PREF_ZAP_PREBUFFER, true);
+    }
+
+    public static void setZapPrebuffer(Context context, boolean enabled) {
+        sp(context).edit().putBoolean(PREF_ZAP_PREBUFFER, enabled).apply();
+    }
+
     public static int getVlcNetworkCaching(Context context) {
         // Legacy STBs (SDK<=19) often need higher preroll to avoid A/V clock starting too early,
         // which can make every decoded frame appear "too late" and look stuck.
@@ -0,0 +1,311 @@
+package com.mqltv;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * One playback session, from the channel click to the player leaving the channel, with startup
+ * milestones and stalls. Finished sessions are appended as JSON lines to
+ * {@code files/playback_trace.jsonl} so engines and caching defaults can be compared per device
+ * model and stream host.
+ *
+ * Milestones are milliseconds after the click (stamped into the play intent by
+ * {@link PlayerIntents}); -1 when the engine never reported one. Not every engine exposes every
+ * step: connect / first byte come from the Exo data sources, manifest from Exo's loader, and
+ * VLC / MediaPlayer only report what their event APIs offer.
+ *
+ * Outcomes also feed {@link EngineStats} for AUTO engine selection.
+ *
+ * Main thread, except {@link #noteConnected} and {@link #noteFirstByte}, which loader threads call.
+ */
+final class PlaybackTracer {
+    private static final String TAG = "PlaybackTracer";
+
+    static final String ENGINE_MEDIA3 = "media3";
+    static final String ENGINE_EXO2 = "exo2";
+    static final String ENGINE_VLC = "vlc";
+    static final String ENGINE_NATIVE = "native";
+    static final String ENGINE_MX = "mx";
+
+    private static final String FILE_NAME = "playback_trace.jsonl";
+    private static final String ROTATED_FILE_NAME = "playback_trace.1.jsonl";
+    // Current file is rotated past this size; one rotated file is kept.
+    private static final long MAX_FILE_BYTES = 256 * 1024;
+
+    private static final ExecutorService IO = Executors.newSingleThreadExecutor();
+
+    private static volatile PlaybackTracer active;
+
+    private final Context appContext;
+    private final String engine;
+    private final String url;
+    private final boolean inPlace;
+    private final long clickAt;
+    private final long startAt;
+    private final long wallStart;
+
+    private long connect = -1;
+    private long firstByte = -1;
+    private long manifest = -1;
+    private long ready = -1;
+    private long firstVideo = -1;
+    private long firstAudio = -1;
+    private boolean prebuffered;
+    private int rebuffers;
+    private long rebufferMs;
+    private long stallStartedAt = -1;
+    private String error;
+    private boolean finished;
+
+    private PlaybackTracer(Context context, String engine, String url, long clickAt, boolean inPlace) {
+        this.appContext = context.getApplicationContext();
+        this.engine = engine;
+        this.url = url;
+        this.inPlace = inPlace;
+        this.startAt = SystemClock.elapsedRealtime();
+        this.clickAt = clickAt > 0 && clickAt <= startAt ? clickAt : startAt;
+        this.wallStart = System.currentTimeMillis();
+    }
+
+    /**
+     * Starts the session for {@code intent}'s channel and makes it the one the data sources
+     * report into. {@code inPlace} is true for a zap inside the running player.
+     */
+    static PlaybackTracer start(Context context, String engine, Intent intent, boolean inPlace) {
+        String url = intent != null ? intent.getStringExtra(Constants.EXTRA_URL) : null;
+        long clickAt = intent != null ? intent.getLongExtra(Constants.EXTRA_CLICKED_AT, 0L) : 0L;
+        // Only the first start after a click measures from it; a resume starts from now.
+        if (intent != null) intent.removeExtra(Constants.EXTRA_CLICKED_AT);
+        PlaybackTracer t = new PlaybackTracer(context, engine, url, clickAt, inPlace);
+        active = t;
+        return t;
+    }
+
+    /** Records a hand-off to an external player; nothing after the launch is visible to us. */
+    static void recordExternalLaunch(Context context, String engine, String url) {
+        if (context == null) return;
+        PlaybackTracer t = new PlaybackTracer(context, engine, url, 0L, false);
+        t.finish("external");
+    }
+
+    /** Loader thread. The current session's first response headers arrived. */
+    static void noteConnected(boolean fromPrebuffer) {
+        PlaybackTracer t = active;
+        if (t != null) t.connected(fromPrebuffer);
+    }
+
+    /** Loader thread. The current session's first media bytes arrived. */
+    static void noteFirstByte() {
+        PlaybackTracer t = active;
+        if (t != null) t.firstByte();
+    }
+
+    synchronized void connected(boolean fromPrebuffer) {
+        if (connect >= 0) return;
+        connect = sinceClick();
+        prebuffered = fromPrebuffer;
+    }
+
+    synchronized void firstByte() {
+        if (firstByte < 0) firstByte = sinceClick();
+    }
+
+    synchronized void manifestLoaded() {
+        if (manifest < 0) manifest = sinceClick();
+    }
+
+    synchronized void ready() {
+        if (ready < 0) ready = sinceClick();
+    }
+
+    synchronized void firstVideoFrame() {
+        if (firstVideo >= 0) return;
+        if (firstAudio < 0) noteStarted();
+        firstVideo = sinceClick();
+    }
+
+    synchronized void firstAudio() {
+        if (firstAudio >= 0) return;
+        if (firstVideo < 0) noteStarted();
+        firstAudio = sinceClick();
+    }
+
+    /** First picture or sound: the engine did not crash on this stream. */
+    private void noteStarted() {
+        final String e = engine;
+        final String u = url;
+        IO.execute(() -> EngineStats.started(appContext, e, u));
+    }
+
+    /** Playback stalled. Stalls before the first frame or sound are startup, not rebuffering. */
+    synchronized void bufferingStarted() {
+        if (stallStartedAt >= 0 || (firstVideo < 0 && firstAudio < 0)) return;
+        stallStartedAt = SystemClock.elapsedRealtime();
+        rebuffers++;
+    }
+
+    synchronized void bufferingEnded() {
+        if (stallStartedAt < 0) return;
+        rebufferMs += SystemClock.elapsedRealtime() - stallStartedAt;
+        stallStartedAt = -1;
+    }
+
+    synchronized void failed(String reason) {
+        if (error == null) error = reason != null ? reason : "error";
+    }
+
+    /** Ends the session and queues it for the trace file. Later calls are ignored. */
+    void finish(String endReason) {
+        final JSONObject json;
+        final boolean failed;
+        final long startMs;
+        final long stalledMs;
+        final long watchMs;
+        synchronized (this) {
+            if (finished) return;
+            finished = true;
+            bufferingEnded();
+            json = toJson(endReason);
+            failed = error != null;
+            startMs = firstVideo >= 0 ? firstVideo : firstAudio;
+            stalledMs = rebufferMs;
+            watchMs = SystemClock.elapsedRealtime() - startAt;
+        }
+        if (active == this) active = null;
+        IO.execute(() -> {
+            if (json != null) append(appContext, json.toString());
+            EngineStats.record(appContext, engine, url, failed, startMs, stalledMs, watchMs);
+        });
+    }
+
+    private long sinceClick() {
+        return SystemClock.elapsedRealtime() - clickAt;
+    }
+
+    private JSONObject toJson(String endReason) {
+        try {
+            JSONObject o = new JSONObject();
+            o.put("ts", wallStart);
+            o.put("engine", engine);
+            o.put("model", deviceModel());
+            o.put("sdk", Build.VERSION.SDK_INT);
+            o.put("host", hostOf(url));
+            o.put("hls", url != null && url.toLowerCase(Locale.US).contains(".m3u8"));
+            o.put("inPlace", inPlace);
+            o.put("setupMs", startAt - clickAt);
+            o.put("connectMs", connect);
+            o.put("firstByteMs", firstByte);
+            o.put("manifestMs", manifest);
+            o.put("readyMs", ready);
+            o.put("firstVideoMs", firstVideo);
+            o.put("firstAudioMs", firstAudio);
+            o.put("prebuffered", prebuffered);
+            o.put("rebuffers", rebuffers);
+            o.put("rebufferMs", rebufferMs);
+            o.put("watchMs", SystemClock.elapsedRealtime() - startAt);
+            if (error != null) o.put("error", error);
+            o.put("end", endReason);
+            return o;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    static String deviceModel() {
+        String manufacturer = Build.MANUFACTURER != null ? Build.MANUFACTURER : "";
+        String model = Build.MODEL != null ? Build.MODEL : "";
+        return (manufacturer + " " + model).trim();
+    }
+
+    static String hostOf(String url) {
+        if (url == null) return "";
+        try {
+            String host = Uri.parse(url).getHost();
+            return host != null ? host.toLowerCase(Locale.US) : "";
+        } catch (Exception e) {
+            return "";
+        }
+    }
+
+    private static void append(Context context, String line) {
+        File file = new File(context.getFilesDir(), FILE_NAME);
+        try {
+            if (file.length() > MAX_FILE_BYTES) {
+                File rotated = new File(context.getFilesDir(), ROTATED_FILE_NAME);
+                //noinspection ResultOfMethodCallIgnored
+                rotated.delete();
+                //noinspection ResultOfMethodCallIgnored
+                file.renameTo(rotated);
+            }
+            OutputStream out = new FileOutputStream(file, true);
+            try {
+                out.write((line + "\n").getBytes("UTF-8"));
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "append failed", e);
+        }
+    }
+
+    /**
+     * Worker thread. Copies the recorded sessions (oldest first) to the app's external files
+     * directory, or its internal one when there is no external storage. Returns the file, or
+     * null if nothing has been recorded or the copy failed.
+     */
+    static File export(Context context) {
+        Context app = context.getApplicationContext();
+        File dir = null;
+        try {
+            dir = app.getExternalFilesDir(null);
+        } catch (Exception ignored) {
+        }
+        if (dir == null) dir = app.getFilesDir();
+        File target = new File(dir, "playback_trace_export.jsonl");
+
+        File rotated = new File(app.getFilesDir(), ROTATED_FILE_NAME);
+        File current = new File(app.getFilesDir(), FILE_NAME);
+        if (!rotated.exists() && !current.exists()) return null;
+        try {
+            OutputStream out = new FileOutputStream(target, false);
+            try {
+                copyInto(rotated, out);
+                copyInto(current, out);
+            } finally {
+                out.close();
+            }
+            return target;
+        } catch (IOException e) {
+            Log.w(TAG, "export failed", e);
+            return null;
+        }
+    }
+
+    private static void copyInto(File source, OutputStream out) throws IOException {
+        if (!source.exists()) return;
+        InputStream in = new FileInputStream(source);
+        try {
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) != -1) out.write(buf, 0, n);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -13,25 +13,36 @@ import androidx.annotation.Nullable;
 import androidx.annotation.OptIn;
 import androidx.fragment.app.FragmentActivity;
 
+import androidx.media3.common.C;
 import androidx.media3.common.MediaItem;
 import androidx.media3.common.AudioAttributes;
 import androidx.media3.common.PlaybackException;
 import androidx.media3.common.Player;
 import androidx.media3.common.util.UnstableApi;
+import androidx.media3.datasource.DefaultDataSource;
+import androidx.media3.datasource.DefaultHttpDataSource;
 import androidx.media3.exoplayer.DefaultLoadControl;
 import androidx.media3.exoplayer.DefaultRenderersFactory;
 import androidx.media3.exoplayer.ExoPlayer;
 import androidx.media3.exoplayer.ExoPlaybackException;
+import androidx.media3.exoplayer.analytics.AnalyticsListener;
+import androidx.media3.exoplayer.source.LoadEventInfo;
+import androidx.media3.exoplayer.source.MediaLoadData;
+import androidx.media3.exoplayer.source.DefaultMediaSourceFactory;
+import androidx.media3.exoplayer.source.MediaSource;
 import androidx.media3.exoplayer.video.MediaCodecVideoDecoderException;
 import androidx.media3.exoplayer.trackselection.DefaultTrackSelector;
 import androidx.media3.ui.PlayerView;
 
+import java.util.Map;
+
 public class PlayerActivity extends FragmentActivity {
 
     private ExoPlayer player;
     private PlayerView playerView;
 
     private PlayerChannelOverlayController channelOverlay;
+    private PlaybackTracer trace;
 
     private final Handler accessHandler = new Handler(Looper.getMainLooper());
     private boolean accessCheckInFlight = false;
@@ -63,20 +74,7 @@ public class PlayerActivity extends FragmentActivity {
             setTitle(title);
         }
 
-        channelOverlay = new PlayerChannelOverlayController(this, channel -> {
-            if (channel == null) return;
-            if (!LoginGuard.ensureLoggedIn(PlayerActivity.this, LoginActivity.DEST_LIVE_TV)) return;
-            if (!SubscriptionGuard.ensureNotExpired(PlayerActivity.this)) return;
-            RecentChannelsStore.record(PlayerActivity.this, channel);
-            PresenceReporter.reportOnlineLaunch(PlayerActivity.this, channel.getTitle(), channel.getUrl());
-            Intent i = PlayerIntents.createPreferredPlayIntent(PlayerActivity.this, channel.getTitle(), channel.getUrl());
-            try {
-                startActivity(i);
-            } catch (Exception e) {
-                startActivity(PlayerIntents.createPlayIntent(PlayerActivity.this, channel.getTitle(), channel.getUrl()));
-            }
-            finish();
-        });
+        channelOverlay = new PlayerChannelOverlayController(this, new PlayerChannelSwitcher(this, this::switchTo));
     }
 
     @Override
@@ -98,6 +96,7 @@ public class PlayerActivity extends FragmentActivity {
         if (channelOverlay != null) channelOverlay.setCurrentChannel(url);
 
         PresenceReporter.startPlayback(getApplicationContext(), title, url);
+        trace = PlaybackTracer.start(this, PlaybackTracer.ENGINE_MEDIA3, getIntent(), false);
 
         DefaultTrackSelector trackSelector = new DefaultTrackSelector(this);
         boolean limit480p = PlaybackPrefs.isExoLimit480p(this);
@@ -126,11 +125,12 @@ public class PlayerActivity extends FragmentActivity {
             .setPrioritizeTimeOverSizeThresholds(true)
             .build();
 
-        player = new ExoPlayer.Builder(this)
+        ExoPlayer.Builder builder = new ExoPlayer.Builder(this)
                 .setTrackSelector(trackSelector)
             .setRenderersFactory(renderersFactory)
-            .setLoadControl(loadControl)
-                .build();
+            .setLoadControl(loadControl);
+
+        player = builder.build();
 
         // Helps with correct audio routing & focus behavior on modern Android.
         player.setAudioAttributes(AudioAttributes.DEFAULT, true);
@@ -138,8 +138,25 @@ public class PlayerActivity extends FragmentActivity {
         playerView.setPlayer(player);
 
         player.addListener(new Player.Listener() {
+            @Override
+            public void onPlaybackStateChanged(int state) {
+                if (trace == null) return;
+                if (state == Player.STATE_READY) {
+                    trace.ready();
+                    trace.bufferingEnded();
+                } else if (state == Player.STATE_BUFFERING) {
+                    trace.bufferingStarted();
+                }
+            }
+
+            @Override
+            public void onRenderedFirstFrame() {
+                if (trace != null) trace.firstVideoFrame();
+            }
+
             @Override
             public void onPlayerError(@NonNull PlaybackException error) {
+                if (trace != null) trace.failed(error.getErrorCodeName());
                 String msg = "Playback error: " + error.getErrorCodeName();
                 Throwable cause = error.getCause();
                 boolean codecNotSupported = false;
@@ -163,19 +180,68 @@ public class PlayerActivity extends FragmentActivity {
                     if (mode != PlaybackPrefs.PLAYER_MODE_VLC) {
                         String title = getIntent().getStringExtra(Constants.EXTRA_TITLE);
                         String playUrl = getIntent().getStringExtra(Constants.EXTRA_URL);
-                        startActivity(new Intent(PlayerActivity.this, LegacyExoPlayerActivity.class)
+                        Intent next = new Intent(PlayerActivity.this, LegacyExoPlayerActivity.class)
                                 .putExtra(Constants.EXTRA_TITLE, title)
-                                .putExtra(Constants.EXTRA_URL, playUrl));
+                                .putExtra(Constants.EXTRA_URL, playUrl);
+                        PlayerIntents.copyStreamHeaders(getIntent(), next);
+                        startActivity(next);
                         finish();
                     }
                 }
             }
         });
 
+        player.addAnalyticsListener(new AnalyticsListener() {
+            @Override
+            public void onLoadCompleted(@NonNull EventTime eventTime, @NonNull LoadEventInfo loadEventInfo, @NonNull MediaLoadData mediaLoadData) {
+                if (trace != null && mediaLoadData.dataType == C.DATA_TYPE_MANIFEST) trace.manifestLoaded();
+            }
+
+            @Override
+            public void onAudioPositionAdvancing(@NonNull EventTime eventTime, long playoutStartSystemTimeMs) {
+                if (trace != null) trace.firstAudio();
+            }
+        });
+
+        player.setMediaSource(buildMediaSource(getIntent(), url));
+        player.prepare();
+        player.play();
+    }
+
+    /** Media source for {@code url}, carrying the headers the intent asks for. */
+    @OptIn(markerClass = UnstableApi.class)
+    private MediaSource buildMediaSource(Intent intent, String url) {
         MediaItem mediaItem = MediaItem.fromUri(Uri.parse(url));
-        player.setMediaItem(mediaItem);
+        // Playlist-provided headers (#EXTVLCOPT / #KODIPROP); default data sources otherwise.
+        // Either way, bodies ZapPrebuffer already fetched for this channel are served first.
+        Map<String, String> streamHeaders = PlayerIntents.getStreamHeaders(intent);
+        if (streamHeaders.isEmpty()) {
+            return new DefaultMediaSourceFactory(new PrebufferedDataSource.Factory(new DefaultDataSource.Factory(this)))
+                .createMediaSource(mediaItem);
+        }
+        DefaultHttpDataSource.Factory httpFactory = new DefaultHttpDataSource.Factory()
+            .setAllowCrossProtocolRedirects(true);
+        String ua = streamHeaders.remove("User-Agent");
+        if (ua != null) httpFactory.setUserAgent(ua);
+        httpFactory.setDefaultRequestProperties(streamHeaders);
+        return new DefaultMediaSourceFactory(new PrebufferedDataSource.Factory(new DefaultDataSource.Factory(this, httpFactory)))
+            .createMediaSource(mediaItem);
+    }
+
+    /** Replaces the media source on the running player; renderers and the surface are kept. */
+    @OptIn(markerClass = UnstableApi.class)
+    private boolean switchTo(Intent intent) {
+        if (player == null) return false;
+        String url = intent.getStringExtra(Constants.EXTRA_URL);
+        if (url == null || url.trim().isEmpty()) return false;
+
+        if (channelOverlay != null) channelOverlay.setCurrentChannel(url);
+        if (trace != null) trace.finish("zap");
+        trace = PlaybackTracer.start(this, PlaybackTracer.ENGINE_MEDIA3, intent, true);
+        player.setMediaSource(buildMediaSource(intent, url));
         player.prepare();
         player.play();
+        return true;
     }
 
     @Override
@@ -214,6 +280,10 @@ public class PlayerActivity extends FragmentActivity {
         if (isFinishing()) {
             PresenceReporter.stopPlayback(getApplicationContext());
         }
+        if (trace != null) {
+            trace.finish("stop");
+            trace = null;
+        }
         if (player != null) {
             playerView.setPlayer(null);
             player.release();
@@ -3,14 +3,8 @@ package com.mqltv;
 import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.net.Uri;
 import android.os.Handler;
 import android.os.Looper;
-import android.text.TextUtils;
-import android.util.LruCache;
-import android.util.Log;
 import android.view.KeyEvent;
 import android.view.View;
 import android.view.ViewGroup;
@@ -24,7 +18,6 @@ import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedHashMap;
@@ -34,10 +27,6 @@ import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
-import okhttp3.Request;
-import okhttp3.Response;
-import okhttp3.ResponseBody;
-
 public final class PlayerChannelOverlayController {
 
     public interface PlayerLauncher {
@@ -46,14 +35,7 @@ public final class PlayerChannelOverlayController {
 
     private static final String TAG = "PlayerOverlay";
 
-    private static final ExecutorService IMAGE_EXECUTOR = Executors.newFixedThreadPool(3);
     private static final Handler MAIN = new Handler(Looper.getMainLooper());
-    private static final LruCache<String, Bitmap> CACHE = new LruCache<String, Bitmap>(6 * 1024 * 1024) {
-        @Override
-        protected int sizeOf(@NonNull String key, @NonNull Bitmap value) {
-            return value.getByteCount();
-        }
-    };
 
     private final Activity activity;
     private final Context appContext;
@@ -65,6 +47,7 @@ public final class PlayerChannelOverlayController {
     private View header;
     private TextView categoryText;
     private RecyclerView list;
+    private LogoPrefetcher logoPrefetcher;
 
     private ImageView infoLogoImg;
     private TextView infoLogoText;
@@ -80,10 +63,29 @@ public final class PlayerChannelOverlayController {
 
     private final ChannelAdapter adapter = new ChannelAdapter();
 
+    private volatile ChannelTable allTable = ChannelTable.EMPTY;
+    private volatile CategoryIndex allIndex = CategoryIndex.EMPTY;
     private volatile List<Channel> allChannels = Collections.emptyList();
     private final List<String> categories = new ArrayList<>();
     private final Map<String, List<Channel>> byCategory = new LinkedHashMap<>();
     private int categoryIndex = 0;
+    // Main thread only: version of the catalog snapshot the lists above were built from.
+    private long shownVersion = -1;
+
+    // Swaps in newer snapshots (revalidated, or the rest of a partial list) while the player runs.
+    private final ChannelCatalog.Listener catalogListener = snapshot -> {
+        if (snapshot.version <= shownVersion) return;
+        worker.execute(() -> {
+            final CategoryState state = buildCategories(snapshot);
+            MAIN.post(() -> {
+                String label = categoryIndex < categories.size() ? categories.get(categoryIndex) : null;
+                if (!install(snapshot, state) || !isVisible()) return;
+                // Stay on the category the user is browsing.
+                int idx = label != null ? categories.indexOf(label) : -1;
+                applyCategory(Math.max(0, idx));
+            });
+        });
+    };
 
     private String currentUrl;
 
@@ -93,6 +95,10 @@ public final class PlayerChannelOverlayController {
     private final Runnable commitNumberRunnable = this::commitPendingChannelNumber;
     private final Runnable hideNumberRunnable = this::hideTypedNumber;
 
+    // Give the new stream a head start before fetching its neighbours.
+    private static final long PREBUFFER_DELAY_MS = 4000L;
+    private final Runnable prebufferRunnable = () -> ensureLoadedThen(this::prebufferNeighbours);
+
     public PlayerChannelOverlayController(@NonNull Activity activity, @NonNull PlayerLauncher launcher) {
         this.activity = activity;
         this.appContext = activity.getApplicationContext();
@@ -123,6 +129,18 @@ public final class PlayerChannelOverlayController {
             list.setAdapter(adapter);
             list.setHasFixedSize(false);
             list.setItemViewCacheSize(18);
+            logoPrefetcher = new LogoPrefetcher(list, R.id.player_channel_row_logo_img, 4, new LogoPrefetcher.Urls() {
+                @Override
+                public int size() {
+                    return adapter.getItemCount();
+                }
+
+                @Override
+                public String urlAt(int position) {
+                    Channel c = adapter.getItem(position);
+                    return c != null ? c.getLogoUrl() : null;
+                }
+            });
         }
 
         if (header != null) {
@@ -131,6 +149,8 @@ public final class PlayerChannelOverlayController {
             });
         }
 
+        ChannelCatalog.get().addListener(catalogListener);
+
         View left = activity.findViewById(R.id.player_channel_overlay_arrow_left);
         View right = activity.findViewById(R.id.player_channel_overlay_arrow_right);
         if (left != null) left.setOnClickListener(v -> prevCategory());
@@ -144,6 +164,7 @@ public final class PlayerChannelOverlayController {
             @Override
             public void onChannelFocused(Channel c, int absoluteIndex) {
                 bindInfo(c, absoluteIndex);
+                if (logoPrefetcher != null) logoPrefetcher.onFocused(absoluteIndex);
             }
 
             @Override
@@ -161,6 +182,8 @@ public final class PlayerChannelOverlayController {
         if (isVisible()) {
             focusCurrentChannel();
         }
+        MAIN.removeCallbacks(prebufferRunnable);
+        MAIN.postDelayed(prebufferRunnable, PREBUFFER_DELAY_MS);
     }
 
     public boolean isVisible() {
@@ -182,6 +205,7 @@ public final class PlayerChannelOverlayController {
     }
 
     public void destroy() {
+        ChannelCatalog.get().removeListener(catalogListener);
         try {
             worker.shutdownNow();
         } catch (Throwable ignored) {
@@ -190,8 +214,10 @@ public final class PlayerChannelOverlayController {
         try {
             MAIN.removeCallbacks(commitNumberRunnable);
             MAIN.removeCallbacks(hideNumberRunnable);
+            MAIN.removeCallbacks(prebufferRunnable);
         } catch (Throwable ignored) {
         }
+        ZapPrebuffer.stop();
     }
 
     public boolean handleKeyEvent(@NonNull KeyEvent event) {
@@ -223,6 +249,15 @@ public final class PlayerChannelOverlayController {
             }
         }
 
+        if (key == KeyEvent.KEYCODE_CHANNEL_UP || key == KeyEvent.KEYCODE_CHANNEL_DOWN) {
+            // P+/P-: step through the current category like a set-top box.
+            if (isVisible()) hide();
+            clearTypedNumber();
+            final int delta = key == KeyEvent.KEYCODE_CHANNEL_UP ? 1 : -1;
+            ensureLoadedThen(() -> zap(delta));
+            return true;
+        }
+
         if (key == KeyEvent.KEYCODE_BACK) {
             if (numberBuffer.length() > 0) {
                 clearTypedNumber();
@@ -320,19 +355,12 @@ public final class PlayerChannelOverlayController {
         }
 
         worker.execute(() -> {
-            List<Channel> loaded = loadChannels(appContext);
-            final List<Channel> loadedFinal = (loaded != null) ? loaded : Collections.emptyList();
-            final CategoryState state = buildCategories(loadedFinal);
+            final ChannelCatalog.Snapshot snapshot = ChannelCatalog.get().load(appContext);
+            final CategoryState state = buildCategories(snapshot);
 
             MAIN.post(() -> {
-                allChannels = loadedFinal;
-                categories.clear();
-                categories.addAll(state.labels);
-                byCategory.clear();
-                byCategory.putAll(state.map);
-
-                if (isVisible()) {
-                    int idx = pickInitialCategoryIndex(state, currentUrl);
+                if (install(snapshot, state) && isVisible()) {
+                    int idx = pickInitialCategoryIndex(snapshot.categories, currentUrl);
                     if (idx < 0) idx = 0;
                     categoryIndex = idx;
                     applyCategory(categoryIndex);
@@ -344,17 +372,76 @@ public final class PlayerChannelOverlayController {
         });
     }
 
+    /** Server-assigned number (tvg-chno) when the playlist has one, else the 1-based position. */
+    private static int displayNumber(Channel c, int position) {
+        int n = c != null ? c.getChannelNumber() : 0;
+        return n > 0 ? n : Math.max(1, position + 1);
+    }
+
     private void playChannelByNumber(int channelNumber) {
-        int idx = channelNumber - 1;
-        if (allChannels == null || idx < 0 || idx >= allChannels.size()) return;
-        Channel c = allChannels.get(idx);
-        if (c == null) return;
+        ChannelTable table = allTable;
+        int row = allIndex.rowOfNumber(channelNumber);
+        if (row < 0) {
+            // No tvg-chno match: the number is the 1-based position.
+            row = channelNumber - 1;
+            if (row < 0 || row >= table.size()) return;
+        }
+        Channel c = table.get(row);
 
         // Number selection should behave like direct tuning.
         hide();
         launcher.play(c);
     }
 
+    /** Plays the channel {@code delta} steps away from the current one in {@link #zapCategory}. */
+    private void zap(int delta) {
+        ChannelTable table = allTable;
+        CategoryIndex index = allIndex;
+        int row = index.rowOfUrl(currentUrl);
+        CategoryIndex.Category category = zapCategory(index, row);
+        int size = category != null ? category.size() : table.size();
+        if (size == 0) return;
+        int pos = category != null ? CategoryIndex.positionInCategory(category, row) : row;
+        int next = pos < 0 ? 0 : ((pos + delta) % size + size) % size;
+        launcher.play(table.get(category != null ? category.rowAt(next) : next));
+    }
+
+    /** Warms the channels P+ and P- would open from here. */
+    private void prebufferNeighbours() {
+        ChannelTable table = allTable;
+        CategoryIndex index = allIndex;
+        int row = index.rowOfUrl(currentUrl);
+        if (row < 0) return;
+        CategoryIndex.Category category = zapCategory(index, row);
+        int size = category != null ? category.size() : table.size();
+        int pos = category != null ? CategoryIndex.positionInCategory(category, row) : row;
+        if (size < 2 || pos < 0) return;
+        int up = (pos + 1) % size;
+        int down = (pos - 1 + size) % size;
+        List<Channel> neighbours = new ArrayList<>(2);
+        neighbours.add(table.get(category != null ? category.rowAt(up) : up));
+        if (size > 2) neighbours.add(table.get(category != null ? category.rowAt(down) : down));
+        ZapPrebuffer.warm(appContext, neighbours);
+    }
+
+    /**
+     * The category P+/P- step through: the one being browsed when it contains the current
+     * channel ({@code row}), otherwise the channel's own category. Null means every channel.
+     */
+    private CategoryIndex.Category zapCategory(CategoryIndex index, int row) {
+        List<CategoryIndex.Category> all = index.getCategories();
+        // Overlay positions are offset by "ALL CHANNELS".
+        int browsing = categoryIndex - 1;
+        if (browsing >= 0 && browsing < all.size()) {
+            CategoryIndex.Category c = all.get(browsing);
+            if (CategoryIndex.positionInCategory(c, row) >= 0) return c;
+        } else if (row >= 0) {
+            return null;
+        }
+        int own = index.categoryOfRow(row);
+        return own >= 0 ? all.get(own) : null;
+    }
+
     private void updateTypedNumberUi() {
         if (typedNumberView == null) return;
         if (numberBuffer.length() <= 0) {
@@ -423,18 +510,17 @@ public final class PlayerChannelOverlayController {
         }
 
         worker.execute(() -> {
-            List<Channel> loaded = loadChannels(appContext);
-            final List<Channel> loadedFinal = (loaded != null) ? loaded : Collections.emptyList();
-            final CategoryState state = buildCategories(loadedFinal);
+            final ChannelCatalog.Snapshot snapshot = ChannelCatalog.get().load(appContext);
+            final CategoryState state = buildCategories(snapshot);
 
             MAIN.post(() -> {
-                allChannels = loadedFinal;
-                categories.clear();
-                categories.addAll(state.labels);
-                byCategory.clear();
-                byCategory.putAll(state.map);
-
-                int idx = pickInitialCategoryIndex(state, currentUrl);
+                if (!install(snapshot, state)) {
+                    // A newer snapshot arrived meanwhile; show what is installed.
+                    applyCategory(categoryIndex);
+                    focusCurrentChannel();
+                    return;
+                }
+                int idx = pickInitialCategoryIndex(snapshot.categories, currentUrl);
                 if (idx < 0) idx = 0;
                 categoryIndex = idx;
 
@@ -444,22 +530,18 @@ public final class PlayerChannelOverlayController {
         });
     }
 
-    private static List<Channel> loadChannels(Context context) {
-        PlaylistRepository repo = new PlaylistRepository();
-        String[] urls = AuthPrefs.getPlaylistUrls(context);
-        List<Channel> channels = repo.loadFromUrls(context, urls);
-
-        boolean hasServerPlaylist = false;
-        try {
-            hasServerPlaylist = !AuthPrefs.getPlaylistUrl(context).trim().isEmpty();
-        } catch (Throwable ignored) {
-        }
-
-        if ((channels == null || channels.isEmpty()) && !hasServerPlaylist) {
-            channels = repo.loadDefault(context);
-        }
-
-        return channels != null ? channels : Collections.emptyList();
+    /** Main thread: makes {@code snapshot} the overlay's list. Returns false if a newer one is shown. */
+    private boolean install(ChannelCatalog.Snapshot snapshot, CategoryState state) {
+        if (snapshot.version < shownVersion) return false;
+        shownVersion = snapshot.version;
+        allTable = snapshot.table;
+        allIndex = snapshot.categories;
+        allChannels = snapshot.table.asList();
+        categories.clear();
+        categories.addAll(state.labels);
+        byCategory.clear();
+        byCategory.putAll(state.map);
+        return true;
     }
 
     private void applyCategory(int index) {
@@ -479,6 +561,7 @@ public final class PlayerChannelOverlayController {
         List<Channel> listForCat = byCategory.get(label);
         if (listForCat == null) listForCat = Collections.emptyList();
         adapter.submit(listForCat);
+        if (logoPrefetcher != null) logoPrefetcher.reset();
 
         // Update activated states.
         adapter.setCurrentUrl(currentUrl);
@@ -486,7 +569,7 @@ public final class PlayerChannelOverlayController {
         // Default info binding.
         Channel c = pickChannelToBind(listForCat, currentUrl);
         if (c != null) {
-            int abs = findAbsoluteIndex(allChannels, c);
+            int abs = findAbsoluteIndex(allTable, allIndex, c);
             bindInfo(c, abs);
         }
     }
@@ -528,7 +611,7 @@ public final class PlayerChannelOverlayController {
     private void bindInfo(Channel c, int absoluteIndex) {
         if (c == null) return;
 
-        if (infoNumber != null) infoNumber.setText(String.valueOf(Math.max(1, absoluteIndex + 1)));
+        if (infoNumber != null) infoNumber.setText(String.valueOf(displayNumber(c, absoluteIndex)));
         if (infoTitle != null) infoTitle.setText(c.getTitle() != null ? c.getTitle() : "Channel");
 
         // Simple schedule placeholders: 30-minute blocks based on local time.
@@ -575,49 +658,30 @@ public final class PlayerChannelOverlayController {
         }
     }
 
-    private static CategoryState buildCategories(List<Channel> channels) {
+    /** Category lists are views from the snapshot's prebuilt index; nothing is grouped here. */
+    private static CategoryState buildCategories(ChannelCatalog.Snapshot snapshot) {
         List<String> labels = new ArrayList<>();
         Map<String, List<Channel>> map = new LinkedHashMap<>();
 
         String all = "ALL CHANNELS";
         labels.add(all);
-        map.put(all, channels != null ? channels : Collections.emptyList());
-
-        if (channels != null) {
-            for (Channel c : channels) {
-                if (c == null) continue;
-                String g = c.getGroupTitle();
-                g = g == null ? "" : g.trim();
-                if (g.isEmpty()) continue;
-                if (!map.containsKey(g)) {
-                    map.put(g, new ArrayList<>());
-                    labels.add(g);
-                }
-                List<Channel> list = map.get(g);
-                if (list != null) list.add(c);
-            }
+        map.put(all, snapshot.channels);
+
+        CategoryIndex index = snapshot.categories;
+        for (CategoryIndex.Category c : index.getCategories()) {
+            labels.add(c.name);
+            map.put(c.name, index.channelsOf(c));
         }
 
         return new CategoryState(labels, map);
     }
 
-    private static int pickInitialCategoryIndex(CategoryState state, String currentUrl) {
-        if (state == null || state.labels == null || state.labels.isEmpty()) return 0;
+    private static int pickInitialCategoryIndex(CategoryIndex index, String currentUrl) {
         if (currentUrl == null || currentUrl.trim().isEmpty()) return 0;
 
-        // Prefer the category of the current channel.
-        for (Map.Entry<String, List<Channel>> e : state.map.entrySet()) {
-            List<Channel> list = e.getValue();
-            if (list == null) continue;
-            for (Channel c : list) {
-                if (c != null && currentUrl.equals(c.getUrl())) {
-                    String label = e.getKey();
-                    int idx = state.labels.indexOf(label);
-                    return idx >= 0 ? idx : 0;
-                }
-            }
-        }
-        return 0;
+        // Prefer the category of the current channel; labels are offset by "ALL CHANNELS".
+        int cat = index.categoryOfRow(index.rowOfUrl(currentUrl));
+        return cat >= 0 ? cat + 1 : 0;
     }
 
     private static Channel pickChannelToBind(List<Channel> list, String currentUrl) {
@@ -630,21 +694,15 @@ public final class PlayerChannelOverlayController {
         return list.get(0);
     }
 
-    private static int findAbsoluteIndex(List<Channel> all, Channel target) {
+    private static int findAbsoluteIndex(ChannelTable all, CategoryIndex index, Channel target) {
         if (all == null || all.isEmpty() || target == null) return 0;
-        String url = target.getUrl();
-        if (url != null) {
-            for (int i = 0; i < all.size(); i++) {
-                Channel c = all.get(i);
-                if (c != null && url.equals(c.getUrl())) return i;
-            }
-        }
+        int row = index.rowOfUrl(target.getUrl());
+        if (row >= 0) return row;
         // Fallback: try by title.
         String t = target.getTitle();
         if (t != null) {
             for (int i = 0; i < all.size(); i++) {
-                Channel c = all.get(i);
-                if (c != null && t.equals(c.getTitle())) return i;
+                if (t.equals(all.getTitle(i))) return i;
             }
         }
         return 0;
@@ -657,66 +715,7 @@ public final class PlayerChannelOverlayController {
         imageView.setImageDrawable(null);
         imageView.setVisibility(View.GONE);
 
-        if (TextUtils.isEmpty(logoUrl)) return;
-
-        imageView.setTag(logoUrl);
-        Bitmap cached = CACHE.get(logoUrl);
-        if (cached != null) {
-            placeholder.setVisibility(View.GONE);
-            imageView.setImageBitmap(cached);
-            imageView.setVisibility(View.VISIBLE);
-            return;
-        }
-
-        IMAGE_EXECUTOR.execute(() -> {
-            Bitmap bmp = downloadBitmap(logoUrl);
-            if (bmp != null) CACHE.put(logoUrl, bmp);
-            MAIN.post(() -> {
-                Object tag = imageView.getTag();
-                if (tag != null && tag.equals(logoUrl) && bmp != null) {
-                    placeholder.setVisibility(View.GONE);
-                    imageView.setImageBitmap(bmp);
-                    imageView.setVisibility(View.VISIBLE);
-                }
-            });
-        });
-    }
-
-    private static Bitmap downloadBitmap(String urlString) {
-        Bitmap bmp = downloadBitmapOnce(urlString);
-        if (bmp == null && urlString != null && urlString.startsWith("https://")) {
-            String httpUrl = "http://" + urlString.substring("https://".length());
-            Log.w(TAG, "Retry logo over HTTP: " + httpUrl);
-            bmp = downloadBitmapOnce(httpUrl);
-        }
-        return bmp;
-    }
-
-    private static Bitmap downloadBitmapOnce(String urlString) {
-        try {
-            String host = null;
-            try {
-                host = Uri.parse(urlString).getHost();
-            } catch (Exception ignored) {
-            }
-            Request request = new Request.Builder()
-                    .url(urlString)
-                    .header("User-Agent", "MQLTV/1.0")
-                    .build();
-            try (Response response = NetworkClient.getLogoClient(host).newCall(request).execute()) {
-                if (!response.isSuccessful()) {
-                    Log.w(TAG, "Logo HTTP " + response.code() + " for " + urlString);
-                    return null;
-                }
-                ResponseBody body = response.body();
-                if (body == null) return null;
-                byte[] bytes = body.bytes();
-                return BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
-            }
-        } catch (IOException e) {
-            Log.w(TAG, "Logo download failed for " + urlString + ": " + e.getMessage());
-            return null;
-        }
+        LogoLoader.bind(imageView, logoUrl, placeholder);
     }
 
     private static final class ChannelAdapter extends RecyclerView.Adapter<ChannelAdapter.VH> {
@@ -727,7 +726,8 @@ public final class PlayerChannelOverlayController {
         }
 
         private Listener listener;
-        private final List<Channel> items = new ArrayList<>();
+        // Shared view from the catalog; never modified here.
+        private List<Channel> items = Collections.emptyList();
         private String currentUrl;
 
         void setListener(Listener l) {
@@ -754,8 +754,7 @@ public final class PlayerChannelOverlayController {
         }
 
         void submit(List<Channel> channels) {
-            items.clear();
-            if (channels != null) items.addAll(channels);
+            items = channels != null ? channels : Collections.<Channel>emptyList();
             notifyDataSetChanged();
         }
 
@@ -770,7 +769,7 @@ public final class PlayerChannelOverlayController {
         public void onBindViewHolder(@NonNull VH holder, int position) {
             Channel c = items.get(position);
 
-            holder.number.setText(String.valueOf(position + 1));
+            holder.number.setText(String.valueOf(displayNumber(c, position)));
             holder.title.setText(c != null && c.getTitle() != null ? c.getTitle() : "Channel");
 
             String group = c != null ? c.getGroupTitle() : null;
@@ -800,6 +799,12 @@ public final class PlayerChannelOverlayController {
             });
         }
 
+        @Override
+        public void onViewRecycled(@NonNull VH holder) {
+            super.onViewRecycled(holder);
+            LogoLoader.cancel(holder.logoImg);
+        }
+
         @Override
         public int getItemCount() {
             return items.size();
@@ -0,0 +1,80 @@
+package com.mqltv;
+
+import android.app.Activity;
+import android.content.Intent;
+import android.util.Log;
+
+/**
+ * Channel picks from {@link PlayerChannelOverlayController}, shared by the internal players.
+ *
+ * When the channel would open the same engine again, the running player only replaces its media
+ * source: the activity, its surface and the decoder setup stay, and the entry checks that ran
+ * when the player was opened are not repeated. Other picks (MX Player, another engine) still
+ * start the matching activity and finish this one.
+ */
+final class PlayerChannelSwitcher implements PlayerChannelOverlayController.PlayerLauncher {
+    private static final String TAG = "ChannelSwitch";
+
+    /** Implemented by each player activity. */
+    interface Engine {
+        /**
+         * Main thread. Starts playing {@code intent}'s URL and headers on the existing player;
+         * the intent is already the activity's intent. Returns false if the player cannot switch
+         * right now (not started, released), in which case a new activity is launched instead.
+         */
+        boolean switchTo(Intent intent);
+    }
+
+    private final Activity activity;
+    private final Engine engine;
+
+    PlayerChannelSwitcher(Activity activity, Engine engine) {
+        this.activity = activity;
+        this.engine = engine;
+    }
+
+    @Override
+    public void play(Channel channel) {
+        if (channel == null) return;
+        if (!LoginGuard.ensureLoggedIn(activity, LoginActivity.DEST_LIVE_TV)) return;
+        if (!SubscriptionGuard.ensureNotExpired(activity)) return;
+        RecentChannelsStore.record(activity, channel);
+        PresenceReporter.reportOnlineLaunch(activity, channel.getTitle(), channel.getUrl());
+
+        // Built once: AUTO may explore a different engine on each call.
+        Intent next = PlayerIntents.createPreferredPlayIntent(activity, channel);
+        if (switchInPlace(channel, next)) return;
+
+        try {
+            activity.startActivity(next);
+        } catch (Exception e) {
+            activity.startActivity(PlayerIntents.createPlayIntent(activity, channel));
+        }
+        activity.finish();
+    }
+
+    private boolean switchInPlace(Channel channel, Intent next) {
+        // MX Player intents carry a package but no component.
+        if (next.getComponent() == null || !activity.getClass().getName().equals(next.getComponent().getClassName())) {
+            return false;
+        }
+
+        Intent previous = activity.getIntent();
+        activity.setIntent(next);
+        boolean switched;
+        try {
+            switched = engine.switchTo(next);
+        } catch (Exception e) {
+            Log.w(TAG, "in-place switch failed", e);
+            switched = false;
+        }
+        if (!switched) {
+            activity.setIntent(previous);
+            return false;
+        }
+
+        if (channel.getTitle() != null) activity.setTitle(channel.getTitle());
+        PresenceReporter.startPlayback(activity.getApplicationContext(), channel.getTitle(), channel.getUrl());
+        return true;
+    }
+}
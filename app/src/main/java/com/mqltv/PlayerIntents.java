@@ -7,6 +7,11 @@ import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.net.Uri;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 public final class PlayerIntents {
     private PlayerIntents() {}
 
@@ -17,13 +22,66 @@ public final class PlayerIntents {
     public static final int PLAYER_MODE_NATIVE = PlaybackPrefs.PLAYER_MODE_NATIVE;
 
     public static Intent createPlayIntent(Context context, String title, String url) {
-        Class<?> target = getTargetPlayerActivity(context);
+        Class<?> target = getTargetPlayerActivity(context, url);
         Intent intent = new Intent(context, target);
         intent.putExtra(Constants.EXTRA_TITLE, title);
         intent.putExtra(Constants.EXTRA_URL, url);
+        intent.putExtra(Constants.EXTRA_CLICKED_AT, android.os.SystemClock.elapsedRealtime());
+        return intent;
+    }
+
+    /** Like {@link #createPlayIntent(Context, String, String)}, carrying the channel's stream headers. */
+    public static Intent createPlayIntent(Context context, Channel channel) {
+        Intent intent = createPlayIntent(context, channel.getTitle(), channel.getUrl());
+        putStreamHeaders(intent, channel.getUserAgent(), channel.getReferrer());
         return intent;
     }
 
+    /** Like {@link #createPreferredPlayIntent(Context, String, String)}, carrying the channel's stream headers. */
+    public static Intent createPreferredPlayIntent(Context context, Channel channel) {
+        if (PlaybackPrefs.isUseMxPlayer(context)) {
+            Intent mx = createMxPlayIntent(context, channel.getTitle(), channel.getUrl());
+            if (mx != null) {
+                // MX Player takes request headers as a flat name/value array.
+                List<String> headers = new ArrayList<>(4);
+                if (channel.getUserAgent() != null) {
+                    headers.add("User-Agent");
+                    headers.add(channel.getUserAgent());
+                }
+                if (channel.getReferrer() != null) {
+                    headers.add("Referer");
+                    headers.add(channel.getReferrer());
+                }
+                if (!headers.isEmpty()) mx.putExtra("headers", headers.toArray(new String[0]));
+                PlaybackTracer.recordExternalLaunch(context, PlaybackTracer.ENGINE_MX, channel.getUrl());
+                return mx;
+            }
+        }
+        return createPlayIntent(context, channel);
+    }
+
+    /** Copies stream headers when one player hands playback over to another engine. */
+    public static void copyStreamHeaders(Intent from, Intent to) {
+        if (from == null || to == null) return;
+        putStreamHeaders(to, from.getStringExtra(Constants.EXTRA_USER_AGENT), from.getStringExtra(Constants.EXTRA_REFERRER));
+    }
+
+    /** HTTP headers to send with the stream request, as a map for engines that take one. */
+    public static Map<String, String> getStreamHeaders(Intent intent) {
+        Map<String, String> headers = new HashMap<>();
+        if (intent == null) return headers;
+        String ua = intent.getStringExtra(Constants.EXTRA_USER_AGENT);
+        String ref = intent.getStringExtra(Constants.EXTRA_REFERRER);
+        if (ua != null && !ua.isEmpty()) headers.put("User-Agent", ua);
+        if (ref != null && !ref.isEmpty()) headers.put("Referer", ref);
+        return headers;
+    }
+
+    private static void putStreamHeaders(Intent intent, String userAgent, String referrer) {
+        if (userAgent != null && !userAgent.isEmpty()) intent.putExtra(Constants.EXTRA_USER_AGENT, userAgent);
+        if (referrer != null && !referrer.isEmpty()) intent.putExtra(Constants.EXTRA_REFERRER, referrer);
+    }
+
     /**
      * Creates a play intent that respects the "Putar di MX Player" setting.
      * Falls back to the internal player if MX Player isn't installed.
@@ -31,7 +89,10 @@ public final class PlayerIntents {
     public static Intent createPreferredPlayIntent(Context context, String title, String url) {
         if (PlaybackPrefs.isUseMxPlayer(context)) {
             Intent mx = createMxPlayIntent(context, title, url);
-            if (mx != null) return mx;
+            if (mx != null) {
+                PlaybackTracer.recordExternalLaunch(context, PlaybackTracer.ENGINE_MX, url);
+                return mx;
+            }
         }
         return createPlayIntent(context, title, url);
     }
@@ -72,13 +133,25 @@ public final class PlayerIntents {
         return null;
     }
 
-    public static Class<?> getTargetPlayerActivity(Context context) {
+    /**
+     * Player for {@code url}. In AUTO mode this is the engine with the best recorded history on
+     * this device for the stream's host (see {@link EngineStats}), or the SDK/device heuristic
+     * until there is enough history.
+     */
+    public static Class<?> getTargetPlayerActivity(Context context, String url) {
         int mode = PlaybackPrefs.getPlayerMode(context);
         if (mode == PlaybackPrefs.PLAYER_MODE_VLC) return VlcPlayerActivity.class;
         if (mode == PlaybackPrefs.PLAYER_MODE_EXO_LEGACY) return LegacyExoPlayerActivity.class;
         if (mode == PlaybackPrefs.PLAYER_MODE_EXO) return PlayerActivity.class;
         if (mode == PlaybackPrefs.PLAYER_MODE_NATIVE) return NativePlayerActivity.class;
 
+        Class<?> heuristic = getHeuristicPlayerActivity();
+        String engine = EngineStats.pick(context, url, engineOf(heuristic), autoCandidates());
+        Class<?> learned = activityFor(engine);
+        return learned != null ? learned : heuristic;
+    }
+
+    private static Class<?> getHeuristicPlayerActivity() {
         // AUTO: prefer legacy Exo on older Android (matches STB troubleshooting)
         if (android.os.Build.VERSION.SDK_INT <= 19) {
             // ZTE B760H has better results with the platform pipeline (Stagefright/OMX)
@@ -88,6 +161,35 @@ public final class PlayerIntents {
         return PlayerActivity.class;
     }
 
+    /**
+     * Engines AUTO may pick or explore on this device: never one the heuristic steers away from
+     * (Media3 on 4.4 and older, the Exo engines on the ZTE B760H).
+     */
+    private static String[] autoCandidates() {
+        if (android.os.Build.VERSION.SDK_INT <= 19) {
+            if (DeviceQuirks.isZteB760H()) {
+                return new String[] {PlaybackTracer.ENGINE_NATIVE, PlaybackTracer.ENGINE_VLC};
+            }
+            return new String[] {PlaybackTracer.ENGINE_EXO2, PlaybackTracer.ENGINE_NATIVE, PlaybackTracer.ENGINE_VLC};
+        }
+        return EngineStats.ENGINES;
+    }
+
+    private static String engineOf(Class<?> activity) {
+        if (activity == VlcPlayerActivity.class) return PlaybackTracer.ENGINE_VLC;
+        if (activity == LegacyExoPlayerActivity.class) return PlaybackTracer.ENGINE_EXO2;
+        if (activity == NativePlayerActivity.class) return PlaybackTracer.ENGINE_NATIVE;
+        return PlaybackTracer.ENGINE_MEDIA3;
+    }
+
+    private static Class<?> activityFor(String engine) {
+        if (PlaybackTracer.ENGINE_VLC.equals(engine)) return VlcPlayerActivity.class;
+        if (PlaybackTracer.ENGINE_EXO2.equals(engine)) return LegacyExoPlayerActivity.class;
+        if (PlaybackTracer.ENGINE_NATIVE.equals(engine)) return NativePlayerActivity.class;
+        if (PlaybackTracer.ENGINE_MEDIA3.equals(engine)) return PlayerActivity.class;
+        return null;
+    }
+
     public static int getPlayerMode(Context context) {
         return PlaybackPrefs.getPlayerMode(context);
     }
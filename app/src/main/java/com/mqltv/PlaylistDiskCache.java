@@ -0,0 +1,205 @@
+package com.mqltv;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Last successfully parsed channel list per playlist URL, stored in a compact binary file so a
+ * cold start can paint the channel grid without waiting for the network or {@link M3UParser}.
+ * The HTTP validators of that response are kept alongside so the next fetch can be conditional.
+ */
+final class PlaylistDiskCache {
+    private static final String TAG = "PlaylistDiskCache";
+    private static final String DIR = "playlists";
+    private static final int MAGIC = 0x4d514c50; // "MQLP"
+    private static final int FORMAT_VERSION = 4;
+
+    /** Cached list plus the validators of the response it was parsed from. */
+    static final class Entry {
+        final List<Channel> channels;
+        final String etag;
+        final String lastModified;
+        final String epgUrl;
+
+        Entry(List<Channel> channels, String etag, String lastModified, String epgUrl) {
+            this.channels = channels;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.epgUrl = epgUrl;
+        }
+
+        boolean hasValidators() {
+            return (etag != null && !etag.isEmpty()) || (lastModified != null && !lastModified.isEmpty());
+        }
+    }
+
+    private PlaylistDiskCache() {}
+
+    static List<Channel> read(Context context, String playlistUrl) {
+        Entry e = readEntry(context, playlistUrl);
+        return e != null ? e.channels : Collections.<Channel>emptyList();
+    }
+
+    /**
+     * Validators and guide URL of the stored list without reading its rows; {@link Entry#channels}
+     * is empty. Returns null if nothing usable is stored for the URL.
+     */
+    static Entry readHeader(Context context, String playlistUrl) {
+        File f = fileFor(context, playlistUrl);
+        if (f == null || !f.exists() || f.length() == 0) return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 1024))) {
+            return readFrom(in, playlistUrl, false);
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "header read failed for " + playlistUrl + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /** Returns null if nothing usable is stored for the URL. */
+    static Entry readEntry(Context context, String playlistUrl) {
+        File f = fileFor(context, playlistUrl);
+        if (f == null || !f.exists() || f.length() == 0) return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 32 * 1024))) {
+            return readFrom(in, playlistUrl, true);
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "read failed for " + playlistUrl + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Parses one stored list; null if it belongs to another URL, uses another format or is
+     * empty. Without {@code rows} only the header is read.
+     */
+    static Entry readFrom(DataInputStream in, String playlistUrl, boolean rows) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) return null;
+        if (!playlistUrl.equals(in.readUTF())) return null;
+        in.readLong(); // savedAtMs
+        String etag = readNullable(in);
+        String lastModified = readNullable(in);
+        String epgUrl = readNullable(in);
+
+        int count = in.readInt();
+        if (count <= 0) return null;
+        if (!rows) return new Entry(Collections.<Channel>emptyList(), etag, lastModified, epgUrl);
+
+        // Share repeated groups, logos and header values like M3UParser does.
+        Map<String, String> pool = new HashMap<>();
+        List<Channel> out = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String title = readNullable(in);
+            String url = readNullable(in);
+            String group = pooled(pool, readNullable(in));
+            String logo = pooled(pool, readNullable(in));
+            Channel.Extras extras = null;
+            if (in.readBoolean()) {
+                String tvgId = readNullable(in);
+                String tvgName = readNullable(in);
+                int number = in.readInt();
+                String catchup = pooled(pool, readNullable(in));
+                String catchupSource = pooled(pool, readNullable(in));
+                String userAgent = pooled(pool, readNullable(in));
+                String referrer = pooled(pool, readNullable(in));
+                extras = Channel.Extras.of(tvgId, tvgName, number, catchup, catchupSource, userAgent, referrer);
+            }
+            out.add(new Channel(title, url, group, logo, extras));
+        }
+        return new Entry(out, etag, lastModified, epgUrl);
+    }
+
+    static void write(Context context, String playlistUrl, List<Channel> channels) {
+        write(context, playlistUrl, channels, null, null, null);
+    }
+
+    static void write(Context context, String playlistUrl, List<Channel> channels, String etag, String lastModified, String epgUrl) {
+        if (channels == null || channels.isEmpty()) return;
+        File f = fileFor(context, playlistUrl);
+        if (f == null) return;
+        File dir = f.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) return;
+
+        File tmp = new File(f.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 32 * 1024))) {
+            writeTo(out, playlistUrl, channels, etag, lastModified, epgUrl);
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "write failed for " + playlistUrl + ": " + e.getMessage());
+            try { tmp.delete(); } catch (Exception ignored) {}
+            return;
+        }
+
+        if (!tmp.renameTo(f)) {
+            try { f.delete(); } catch (Exception ignored) {}
+            if (!tmp.renameTo(f)) {
+                try { tmp.delete(); } catch (Exception ignored) {}
+            }
+        }
+    }
+
+    static void writeTo(DataOutputStream out, String playlistUrl, List<Channel> channels, String etag,
+                        String lastModified, String epgUrl) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(playlistUrl);
+        out.writeLong(System.currentTimeMillis());
+        writeNullable(out, etag);
+        writeNullable(out, lastModified);
+        writeNullable(out, epgUrl);
+        out.writeInt(channels.size());
+        for (Channel c : channels) {
+            writeNullable(out, c.getTitle());
+            writeNullable(out, c.getUrl());
+            writeNullable(out, c.getGroupTitle());
+            writeNullable(out, c.getLogoUrl());
+            Channel.Extras x = c.getExtras();
+            out.writeBoolean(x != null);
+            if (x != null) {
+                writeNullable(out, x.tvgId);
+                writeNullable(out, x.tvgName);
+                out.writeInt(x.number);
+                writeNullable(out, x.catchup);
+                writeNullable(out, x.catchupSource);
+                writeNullable(out, x.userAgent);
+                writeNullable(out, x.referrer);
+            }
+        }
+    }
+
+    private static File fileFor(Context context, String playlistUrl) {
+        if (context == null || playlistUrl == null || playlistUrl.trim().isEmpty()) return null;
+        String name = Integer.toHexString(playlistUrl.hashCode()) + "_" + playlistUrl.length() + ".bin";
+        return new File(new File(context.getFilesDir(), DIR), name);
+    }
+
+    private static String pooled(Map<String, String> pool, String s) {
+        if (s == null) return null;
+        String existing = pool.get(s);
+        if (existing != null) return existing;
+        pool.put(s, s);
+        return s;
+    }
+
+    private static void writeNullable(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) out.writeUTF(s);
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -1,6 +1,7 @@
 package com.mqltv;
 
 import android.content.Context;
+import android.util.Log;
 
 import java.io.BufferedInputStream;
 import java.io.IOException;
@@ -10,14 +11,50 @@ import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import okhttp3.Call;
 import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
 
 public final class PlaylistRepository {
+    private static final String TAG = "PlaylistRepository";
     private static final String DEFAULT_ASSET = "channels.m3u";
-    private Context context;
+
+    // Per-source budget for connecting and receiving the response headers; a dead LAN source
+    // must not hold up the others.
+    private static final long SOURCE_TIMEOUT_MS = 12_000L;
+    // Per-source budget for the body once the headers arrived. Generous, so a large playlist on
+    // a slow link still completes; the client's read timeout already catches a stalled body, this
+    // catches one that trickles in a few bytes at a time.
+    private static final long BODY_TIMEOUT_MS = 120_000L;
+    private static final long MERGE_SLACK_MS = 5_000L;
+
+    // Shared by all loads; sized for the handful of configured playlist sources.
+    private static final ExecutorService SOURCE_POOL = Executors.newFixedThreadPool(3);
+
+    // Cancels calls whose headers or body do not arrive within their budget.
+    private static final ScheduledExecutorService CALL_WATCHDOG = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "playlist-watchdog");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Returned by a source that answered 304: the saved copy is still current.
+    private static final List<Channel> NOT_MODIFIED = Collections.unmodifiableList(new ArrayList<Channel>(0));
+    // Returned by a source whose connection failed, possibly after part of the body was parsed.
+    private static final List<Channel> BROKEN = Collections.unmodifiableList(new ArrayList<Channel>(0));
+
+    private boolean notModified;
+    private boolean firstSourceBroken;
 
     public List<Channel> loadDefault(Context context) {
         try (InputStream inputStream = context.getAssets().open(DEFAULT_ASSET)) {
@@ -28,18 +65,55 @@ public final class PlaylistRepository {
     }
 
     public List<Channel> loadFromUrl(Context context, String playlistUrl) {
-        this.context = context;
+        List<Channel> channels = loadFromUrl(context, playlistUrl, 0L, null);
+        if (channels == NOT_MODIFIED) return PlaylistDiskCache.read(context, playlistUrl);
+        return channels == BROKEN ? Collections.<Channel>emptyList() : channels;
+    }
+
+    /**
+     * @param timeoutMs deadline for connect + response headers; 0 keeps the client defaults. When
+     *                  set, the body additionally gets {@link #BODY_TIMEOUT_MS}.
+     * @param progress receives channels while the body downloads; not called for a 304.
+     * @return {@link #NOT_MODIFIED} when the server confirmed the saved copy, {@link #BROKEN} when
+     *         the connection failed.
+     */
+    private List<Channel> loadFromUrl(Context context, String playlistUrl, long timeoutMs, M3UParser.BatchListener progress) {
         if (playlistUrl == null || playlistUrl.trim().isEmpty()) {
             return Collections.emptyList();
         }
 
+        // Only revalidate when the list a 304 would refer to is still on disk.
+        PlaylistDiskCache.Entry cached = PlaylistDiskCache.readHeader(context, playlistUrl);
+        if (cached != null && !cached.hasValidators()) cached = null;
+
         InputStream inputStream = null;
         try {
-            Request request = new Request.Builder()
+            Request.Builder rb = new Request.Builder()
                     .url(playlistUrl)
-                    .header("User-Agent", "MQLTV/1.0")
-                    .build();
-            try (Response response = NetworkClient.getClient().newCall(request).execute()) {
+                    .header("User-Agent", "MQLTV/1.0");
+            if (cached != null) {
+                if (cached.etag != null && !cached.etag.isEmpty()) {
+                    rb.header("If-None-Match", cached.etag);
+                }
+                if (cached.lastModified != null && !cached.lastModified.isEmpty()) {
+                    rb.header("If-Modified-Since", cached.lastModified);
+                }
+            }
+            final Call call = NetworkClient.getClient().newCall(rb.build());
+            ScheduledFuture<?> watchdog = timeoutMs > 0
+                    ? CALL_WATCHDOG.schedule(call::cancel, timeoutMs, TimeUnit.MILLISECONDS)
+                    : null;
+            Response headers;
+            try {
+                headers = call.execute();
+            } finally {
+                if (watchdog != null) watchdog.cancel(false);
+            }
+            try (Response response = headers) {
+                if (response.code() == 304 && cached != null) {
+                    Log.d(TAG, "not modified: " + playlistUrl);
+                    return NOT_MODIFIED;
+                }
                 if (!response.isSuccessful()) {
                     return Collections.emptyList();
                 }
@@ -48,10 +122,26 @@ public final class PlaylistRepository {
                     return Collections.emptyList();
                 }
                 inputStream = new BufferedInputStream(body.byteStream());
-                return M3UParser.parse(inputStream);
+                M3UParser.PlaylistInfo info = new M3UParser.PlaylistInfo();
+                ScheduledFuture<?> bodyWatchdog = timeoutMs > 0
+                        ? CALL_WATCHDOG.schedule(call::cancel, BODY_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                        : null;
+                List<Channel> parsed;
+                try {
+                    parsed = M3UParser.parse(inputStream, progress, info);
+                } finally {
+                    if (bodyWatchdog != null) bodyWatchdog.cancel(false);
+                }
+                if (!parsed.isEmpty()) {
+                    String etag = response.header("ETag");
+                    String lastModified = response.header("Last-Modified");
+                    PlaylistDiskCache.write(context, playlistUrl, parsed, etag, lastModified, info.epgUrl);
+                }
+                return parsed;
             }
         } catch (IOException e) {
-            return Collections.emptyList();
+            Log.w(TAG, "load failed: " + playlistUrl + ": " + e.getMessage());
+            return BROKEN;
         } finally {
             if (inputStream != null) {
                 try {
@@ -62,23 +152,131 @@ public final class PlaylistRepository {
         }
     }
 
+    /**
+     * XMLTV guide URLs announced by the #EXTM3U headers of the given playlists (url-tvg /
+     * x-tvg-url), in source order. Only reflects playlists that were loaded or cached before.
+     */
+    public List<String> getEpgUrls(Context context, String[] playlistUrls) {
+        List<String> out = new ArrayList<>();
+        if (playlistUrls == null) return out;
+        for (String u : playlistUrls) {
+            if (u == null || u.trim().isEmpty()) continue;
+            PlaylistDiskCache.Entry e = PlaylistDiskCache.readHeader(context, u);
+            if (e == null || e.epgUrl == null) continue;
+            for (String epg : e.epgUrl.split(",")) {
+                String t = epg.trim();
+                if (!t.isEmpty() && !out.contains(t)) out.add(t);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * True when every source of the last {@link #loadFromUrls} answered 304. The list returned
+     * then is empty; the caller already holds the saved copy or reads it with
+     * {@link #loadCachedFromUrls}.
+     */
+    public boolean wasNotModified() {
+        return notModified;
+    }
+
+    /**
+     * True when the connection of the first source failed during the last {@link #loadFromUrls},
+     * so its progress listener may have seen channels the returned list does not contain.
+     */
+    public boolean firstSourceBroken() {
+        return firstSourceBroken;
+    }
+
+    /**
+     * Fetches all sources concurrently; each must answer within {@link #SOURCE_TIMEOUT_MS} and
+     * finish its body within {@link #BODY_TIMEOUT_MS}.
+     * Results are merged in the order of {@code playlistUrls}, so earlier sources win when
+     * deduplicating; a source that fails or does not answer in time simply contributes nothing.
+     */
     public List<Channel> loadFromUrls(Context context, String[] playlistUrls) {
+        return loadFromUrls(context, playlistUrls, null);
+    }
+
+    /**
+     * @param firstSourceProgress streams channels of the primary (first) source as they are
+     *                            parsed, for showing a partial list before all sources finish.
+     */
+    public List<Channel> loadFromUrls(Context context, String[] playlistUrls, M3UParser.BatchListener firstSourceProgress) {
+        notModified = false;
+        firstSourceBroken = false;
         if (playlistUrls == null || playlistUrls.length == 0) {
             return Collections.emptyList();
         }
+        if (playlistUrls.length == 1) {
+            List<Channel> only = loadFromUrl(context, playlistUrls[0], SOURCE_TIMEOUT_MS, firstSourceProgress);
+            notModified = only == NOT_MODIFIED;
+            firstSourceBroken = only == BROKEN;
+            return dedup(only);
+        }
+
+        List<Future<List<Channel>>> futures = new ArrayList<>(playlistUrls.length);
+        for (int i = 0; i < playlistUrls.length; i++) {
+            final String u = playlistUrls[i];
+            final M3UParser.BatchListener progress = i == 0 ? firstSourceProgress : null;
+            futures.add(SOURCE_POOL.submit(() -> new PlaylistRepository().loadFromUrl(context, u, SOURCE_TIMEOUT_MS, progress)));
+        }
 
         List<Channel> merged = new ArrayList<>();
-        for (String u : playlistUrls) {
-            List<Channel> part = loadFromUrl(context, u);
+        int unchanged = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            Future<List<Channel>> f = futures.get(i);
+            List<Channel> part = null;
+            try {
+                // Each source enforces its own deadlines by cancelling its call; this bound only
+                // guards against a source that ignores the cancel.
+                part = f.get(SOURCE_TIMEOUT_MS + BODY_TIMEOUT_MS + MERGE_SLACK_MS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                Log.w(TAG, "source timed out: " + playlistUrls[i]);
+                f.cancel(true);
+                part = BROKEN;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (Future<List<Channel>> other : futures) other.cancel(true);
+                break;
+            } catch (ExecutionException e) {
+                Log.w(TAG, "source failed: " + playlistUrls[i] + ": " + e.getCause());
+                part = BROKEN;
+            }
+            if (part == BROKEN && i == 0) firstSourceBroken = true;
+            if (part == NOT_MODIFIED) {
+                unchanged++;
+                part = PlaylistDiskCache.read(context, playlistUrls[i]);
+            }
             if (part != null && !part.isEmpty()) {
                 merged.addAll(part);
             }
         }
 
+        if (unchanged == futures.size()) {
+            notModified = true;
+            return Collections.emptyList();
+        }
+        return dedup(merged);
+    }
+
+    /**
+     * Last successfully downloaded lists for the given URLs, read from local storage only.
+     * Returns an empty list if nothing has been cached yet.
+     */
+    public List<Channel> loadCachedFromUrls(Context context, String[] playlistUrls) {
+        if (playlistUrls == null || playlistUrls.length == 0) {
+            return Collections.emptyList();
+        }
+
+        List<Channel> merged = new ArrayList<>();
+        for (String u : playlistUrls) {
+            merged.addAll(PlaylistDiskCache.read(context, u));
+        }
         return dedup(merged);
     }
 
-    private static List<Channel> dedup(List<Channel> channels) {
+    static List<Channel> dedup(List<Channel> channels) {
         if (channels == null || channels.isEmpty()) return Collections.emptyList();
 
         Map<String, Channel> out = new LinkedHashMap<>();
@@ -0,0 +1,111 @@
+package com.mqltv;
+
+import android.net.Uri;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.datasource.TransferListener;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serves whole-resource GETs that {@link ZapPrebuffer} already fetched for a neighbouring
+ * channel, and passes everything else to the upstream source. Also reports connect and
+ * first-byte times to {@link PlaybackTracer}.
+ */
+@UnstableApi
+final class PrebufferedDataSource implements DataSource {
+
+    static final class Factory implements DataSource.Factory {
+        private final DataSource.Factory upstream;
+
+        Factory(DataSource.Factory upstream) {
+            this.upstream = upstream;
+        }
+
+        @Override
+        public DataSource createDataSource() {
+            return new PrebufferedDataSource(upstream.createDataSource());
+        }
+    }
+
+    private final DataSource upstream;
+    @Nullable private byte[] data;
+    @Nullable private Uri uri;
+    private int readPosition;
+    private boolean firstByteReported;
+
+    private PrebufferedDataSource(DataSource upstream) {
+        this.upstream = upstream;
+    }
+
+    @Override
+    public void addTransferListener(TransferListener transferListener) {
+        upstream.addTransferListener(transferListener);
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+        firstByteReported = false;
+        if (dataSpec.position == 0 && dataSpec.length == C.LENGTH_UNSET
+                && dataSpec.httpMethod == DataSpec.HTTP_METHOD_GET) {
+            ZapPrebuffer.Entry e = ZapPrebuffer.take(dataSpec.uri.toString());
+            if (e != null) {
+                data = e.data;
+                uri = dataSpec.uri;
+                readPosition = 0;
+                PlaybackTracer.noteConnected(true);
+                return data.length;
+            }
+        }
+        long length = upstream.open(dataSpec);
+        PlaybackTracer.noteConnected(false);
+        return length;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int n;
+        if (data == null) {
+            n = upstream.read(buffer, offset, length);
+        } else {
+            if (length == 0) return 0;
+            if (readPosition >= data.length) return C.RESULT_END_OF_INPUT;
+            n = Math.min(length, data.length - readPosition);
+            System.arraycopy(data, readPosition, buffer, offset, n);
+            readPosition += n;
+        }
+        if (n > 0 && !firstByteReported) {
+            firstByteReported = true;
+            PlaybackTracer.noteFirstByte();
+        }
+        return n;
+    }
+
+    @Nullable
+    @Override
+    public Uri getUri() {
+        return data != null ? uri : upstream.getUri();
+    }
+
+    @Override
+    public Map<String, List<String>> getResponseHeaders() {
+        return data != null ? Collections.<String, List<String>>emptyMap() : upstream.getResponseHeaders();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (data != null) {
+            data = null;
+            uri = null;
+            return;
+        }
+        upstream.close();
+    }
+}
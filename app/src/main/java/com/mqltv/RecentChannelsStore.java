@@ -82,6 +82,9 @@ public final class RecentChannelsStore {
             o.put("title", nullToEmpty(c.getTitle()));
             o.put("url", nullToEmpty(c.getUrl()));
             o.put("logo", nullToEmpty(c.getLogoUrl()));
+            // Keep stream headers so a recent entry plays the same way as from the grid.
+            if (c.getUserAgent() != null) o.put("ua", c.getUserAgent());
+            if (c.getReferrer() != null) o.put("ref", c.getReferrer());
             o.put("ts", System.currentTimeMillis());
         } catch (Exception ignored) {
         }
@@ -94,7 +97,11 @@ public final class RecentChannelsStore {
         String url = o.optString("url", "");
         String logo = o.optString("logo", "");
         if (TextUtils.isEmpty(url)) return null;
-        return new Channel(title, url, null, logo);
+        String ua = o.optString("ua", "");
+        String ref = o.optString("ref", "");
+        Channel.Extras extras = Channel.Extras.of(null, null, 0, null, null,
+                TextUtils.isEmpty(ua) ? null : ua, TextUtils.isEmpty(ref) ? null : ref);
+        return new Channel(title, url, null, logo, extras);
     }
 
     private static String nullToEmpty(String s) {
@@ -44,6 +44,14 @@ public class SettingsFragment extends Fragment {
     private TextView wallpaperStatus;
     private ImageView wallpaperBg;
 
+    // The Bing wallpaper arrived in the background, e.g. after a reset.
+    private final Runnable wallpaperListener = () -> {
+        if (getContext() == null) return;
+        Context appContext = getContext().getApplicationContext();
+        updateWallpaperStatus(appContext);
+        loadSettingsWallpaper(appContext);
+    };
+
     @Nullable
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
@@ -63,6 +71,7 @@ public class SettingsFragment extends Fragment {
 
         wallpaperBg = v.findViewById(R.id.settings_wallpaper);
         loadSettingsWallpaper(appContext);
+        LauncherWallpaper.addListener(wallpaperListener);
 
         RadioGroup group = v.findViewById(R.id.player_mode_group);
         RadioButton auto = v.findViewById(R.id.player_mode_auto);
@@ -112,6 +121,27 @@ public class SettingsFragment extends Fragment {
             Toast.makeText(v.getContext(), isChecked ? "Exo: limit 480p ON" : "Exo: limit 480p OFF", Toast.LENGTH_SHORT).show();
         });
 
+        Switch zapPrebuffer = v.findViewById(R.id.setting_zap_prebuffer);
+        zapPrebuffer.setChecked(PlaybackPrefs.isZapPrebuffer(v.getContext()));
+        zapPrebuffer.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            PlaybackPrefs.setZapPrebuffer(v.getContext(), isChecked);
+            if (!isChecked) {
+                ZapPrebuffer.stop();
+                ZapPrebuffer.clear();
+            }
+            Toast.makeText(v.getContext(), isChecked ? "Pre-buffer channel: ON" : "Pre-buffer channel: OFF", Toast.LENGTH_SHORT).show();
+        });
+
+        View exportTrace = v.findViewById(R.id.playback_trace_export_button);
+        exportTrace.setOnClickListener(view -> executor.execute(() -> {
+            File out = PlaybackTracer.export(appContext);
+            mainHandler.post(() -> {
+                Toast.makeText(appContext,
+                        out != null ? "Statistik playback disimpan: " + out.getAbsolutePath() : "Belum ada statistik playback",
+                        Toast.LENGTH_LONG).show();
+            });
+        }));
+
         wallpaperStatus = v.findViewById(R.id.wallpaper_status);
         updateWallpaperStatus(appContext);
 
@@ -475,6 +505,7 @@ public class SettingsFragment extends Fragment {
     @Override
     public void onDestroyView() {
         super.onDestroyView();
+        LauncherWallpaper.removeListener(wallpaperListener);
         wallpaperBg = null;
         wallpaperStatus = null;
     }
@@ -0,0 +1,91 @@
+package com.mqltv;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.text.TextUtils;
+import android.util.Log;
+
+import org.videolan.libvlc.LibVLC;
+
+import java.util.ArrayList;
+
+/**
+ * Process-wide {@link LibVLC} instance. Creating one loads and probes every module and parses
+ * the option list, which is a large part of zap time on ARMv7 boxes, so it outlives the player
+ * activity and is reused as long as the options are the same.
+ *
+ * A player {@link #acquire}s the instance in onStart and {@link #release}s it in onStop. An
+ * unused instance stays alive for the next playback and is only freed when the options change
+ * or the system reports memory pressure.
+ */
+final class VlcEngine {
+    private static final String TAG = "VlcEngine";
+
+    private static LibVLC libVLC;
+    private static String optionsKey;
+    private static int users;
+    private static boolean trimRegistered;
+
+    private static final MemoryPressureCoordinator.Trimmable TRIMMABLE = level -> {
+        if (level < ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) return 0;
+        return releaseIdle() ? 8L * 1024L * 1024L : 0;
+    };
+
+    private VlcEngine() {}
+
+    /** Main thread. Returns the shared instance for {@code options}, creating it if needed. */
+    static synchronized LibVLC acquire(Context context, ArrayList<String> options) {
+        String key = TextUtils.join("\n", options);
+        if (libVLC != null && !key.equals(optionsKey)) {
+            if (users > 0) {
+                // Another player still holds the old instance; let it keep it and go private.
+                Log.w(TAG, "options changed while in use; creating an unshared instance");
+                return new LibVLC(context.getApplicationContext(), options);
+            }
+            Log.i(TAG, "options changed; recreating LibVLC");
+            releaseQuietly(libVLC);
+            libVLC = null;
+        }
+        if (libVLC == null) {
+            long start = System.currentTimeMillis();
+            libVLC = new LibVLC(context.getApplicationContext(), options);
+            optionsKey = key;
+            Log.i(TAG, "LibVLC created in " + (System.currentTimeMillis() - start) + "ms");
+        } else {
+            Log.i(TAG, "reusing LibVLC");
+        }
+        if (!trimRegistered) {
+            MemoryPressureCoordinator.get().register(TRIMMABLE);
+            trimRegistered = true;
+        }
+        users++;
+        return libVLC;
+    }
+
+    /** Main thread. Hands back an instance from {@link #acquire}; the shared one stays alive. */
+    static synchronized void release(LibVLC instance) {
+        if (instance == null) return;
+        if (instance != libVLC) {
+            releaseQuietly(instance);
+            return;
+        }
+        users = Math.max(0, users - 1);
+    }
+
+    /** Frees the shared instance if no player is using it. */
+    static synchronized boolean releaseIdle() {
+        if (libVLC == null || users > 0) return false;
+        releaseQuietly(libVLC);
+        libVLC = null;
+        optionsKey = null;
+        Log.i(TAG, "released idle LibVLC");
+        return true;
+    }
+
+    private static void releaseQuietly(LibVLC instance) {
+        try {
+            instance.release();
+        } catch (Exception ignored) {
+        }
+    }
+}
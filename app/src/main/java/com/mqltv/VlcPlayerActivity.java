@@ -1,5 +1,6 @@
 package com.mqltv;
 
+import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
@@ -46,7 +47,18 @@ public class VlcPlayerActivity extends FragmentActivity {
     private ProgressBar loading;
     private boolean released = false;
 
+    // Per-media options, fixed for the lifetime of the engine and reused on channel changes.
+    private boolean legacySdk;
+    private int cachingMs;
+    private int avThreads;
+    private boolean deinterlace;
+    private boolean useHw;
+    private boolean forceHw;
+    private boolean forceHwOnly;
+    private String hwCodecList;
+
     private PlayerChannelOverlayController channelOverlay;
+    private PlaybackTracer trace;
 
     private final IVLCVout.Callback vlcVoutCallback = new IVLCVout.Callback() {
         @Override
@@ -182,19 +194,7 @@ public class VlcPlayerActivity extends FragmentActivity {
             setTitle(title);
         }
 
-        channelOverlay = new PlayerChannelOverlayController(this, channel -> {
-            if (channel == null) return;
-            if (!LoginGuard.ensureLoggedIn(VlcPlayerActivity.this, LoginActivity.DEST_LIVE_TV)) return;
-            if (!SubscriptionGuard.ensureNotExpired(VlcPlayerActivity.this)) return;
-            RecentChannelsStore.record(VlcPlayerActivity.this, channel);
-            PresenceReporter.reportOnlineLaunch(VlcPlayerActivity.this, channel.getTitle(), channel.getUrl());
-            try {
-                startActivity(PlayerIntents.createPreferredPlayIntent(VlcPlayerActivity.this, channel.getTitle(), channel.getUrl()));
-            } catch (Exception e) {
-                startActivity(PlayerIntents.createPlayIntent(VlcPlayerActivity.this, channel.getTitle(), channel.getUrl()));
-            }
-            finish();
-        });
+        channelOverlay = new PlayerChannelOverlayController(this, new PlayerChannelSwitcher(this, this::switchTo));
     }
 
     @Override
@@ -212,22 +212,23 @@ public class VlcPlayerActivity extends FragmentActivity {
         }
 
         PresenceReporter.startPlayback(getApplicationContext(), title, url);
+        trace = PlaybackTracer.start(this, PlaybackTracer.ENGINE_VLC, getIntent(), false);
 
         if (channelOverlay != null) channelOverlay.setCurrentChannel(url);
 
+        released = false;
         ArrayList<String> options = new ArrayList<>();
         // Keep logging lightweight on legacy STBs.
-        boolean legacySdk = android.os.Build.VERSION.SDK_INT <= 19;
+        legacySdk = android.os.Build.VERSION.SDK_INT <= 19;
         options.add(legacySdk ? "-vv" : "-vvv");
 
         // Network buffering options; read from preferences.
-        int cachingMs = PlaybackPrefs.getVlcNetworkCaching(this);
+        cachingMs = PlaybackPrefs.getVlcNetworkCaching(this);
         // Safety floor for legacy devices to prevent "clock started too soon" lateness.
         if (legacySdk && cachingMs < 3000) cachingMs = 5000;
-        final int cachingMsFinal = cachingMs;
-        options.add("--network-caching=" + cachingMsFinal);
-        options.add("--live-caching=" + cachingMsFinal);
-        options.add("--file-caching=" + cachingMsFinal);
+        options.add("--network-caching=" + cachingMs);
+        options.add("--live-caching=" + cachingMs);
+        options.add("--file-caching=" + cachingMs);
 
         // On slow STBs (incl. Android 4.4), letting VLC drop/skip late video frames is
         // often required to prevent the video from falling behind and appearing stuck.
@@ -236,9 +237,8 @@ public class VlcPlayerActivity extends FragmentActivity {
         // Tuning for old CPUs: fewer threads + lighter decode.
         int cores = 1;
         try { cores = Math.max(1, Runtime.getRuntime().availableProcessors()); } catch (Exception ignored) {}
-        int avThreads = legacySdk ? Math.min(2, cores) : Math.min(4, cores);
-        final int avThreadsFinal = avThreads;
-        options.add("--avcodec-threads=" + avThreadsFinal);
+        avThreads = legacySdk ? Math.min(2, cores) : Math.min(4, cores);
+        options.add("--avcodec-threads=" + avThreads);
         options.add(legacySdk ? "--avcodec-skiploopfilter=nonref" : "--avcodec-skiploopfilter=all");
         if (legacySdk) {
             // Reduce CPU load when HW decode falls back to SW on legacy devices.
@@ -251,12 +251,12 @@ public class VlcPlayerActivity extends FragmentActivity {
             Log.w(TAG, "EC6108V9: disabling VLC HW+; using HW ON");
             hwMode = PlaybackPrefs.VLC_HW_ON;
         }
-        final int hwModeFinal = hwMode;
-        boolean useHw = hwMode != PlaybackPrefs.VLC_HW_OFF;
+        useHw = hwMode != PlaybackPrefs.VLC_HW_OFF;
+        forceHw = hwMode == PlaybackPrefs.VLC_HW_PLUS;
         boolean useTexture = PlaybackPrefs.isVlcUseTexture(this);
-        boolean deinterlace = PlaybackPrefs.isVlcDeinterlaceEnabled(this);
+        deinterlace = PlaybackPrefs.isVlcDeinterlaceEnabled(this);
         int hwImpl = PlaybackPrefs.getVlcHwDecoderImpl(this);
-        boolean forceHwOnly = PlaybackPrefs.isVlcHwForceOnly(this);
+        forceHwOnly = PlaybackPrefs.isVlcHwForceOnly(this);
 
         int vout = PlaybackPrefs.getVlcVout(this);
         // Force android_display on this device; gles2 crashes with EGL config error.
@@ -279,11 +279,12 @@ public class VlcPlayerActivity extends FragmentActivity {
         final String hwImplName = !useHw ? null
             : (hwImpl == PlaybackPrefs.VLC_HW_IMPL_MEDIACODEC_NDK ? "mediacodec_ndk"
             : (android.os.Build.VERSION.SDK_INT >= 21 ? "mediacodec_ndk" : "mediacodec_jni"));
-        final String hwCodecList = (hwImplName != null) ? hwImplName : (android.os.Build.VERSION.SDK_INT >= 21 ? "mediacodec_ndk" : "mediacodec_jni");
+        hwCodecList = (hwImplName != null) ? hwImplName : (android.os.Build.VERSION.SDK_INT >= 21 ? "mediacodec_ndk" : "mediacodec_jni");
 
-        Log.i(TAG, "Starting VLC: hwMode=" + hwMode + " useHw=" + useHw + " useTexture=" + useTexture + " vout=" + vout + " hwImpl=" + hwImplName + " forceHwOnly=" + forceHwOnly + " cachingMs=" + cachingMsFinal + " avThreads=" + avThreadsFinal);
+        Log.i(TAG, "Starting VLC: hwMode=" + hwMode + " useHw=" + useHw + " useTexture=" + useTexture + " vout=" + vout + " hwImpl=" + hwImplName + " forceHwOnly=" + forceHwOnly + " cachingMs=" + cachingMs + " avThreads=" + avThreads);
 
-        libVLC = new LibVLC(this, options);
+        // Shared across playbacks; only the first start (or changed settings) pays for init.
+        libVLC = VlcEngine.acquire(this, options);
         mediaPlayer = new MediaPlayer(libVLC);
         // Video scale is handled by SurfaceView/TextureView layout.
         mediaPlayer.setEventListener(new MediaPlayer.EventListener() {
@@ -295,8 +296,10 @@ public class VlcPlayerActivity extends FragmentActivity {
                     }
                 }
                 if (event.type == MediaPlayer.Event.EncounteredError) {
+                    if (trace != null) trace.failed("vlc_error");
                     Toast.makeText(VlcPlayerActivity.this, "VLC playback error", Toast.LENGTH_LONG).show();
                 }
+                traceEvent(event);
 
                 if (event.type == MediaPlayer.Event.Playing
                         || event.type == MediaPlayer.Event.Paused
@@ -346,35 +349,7 @@ public class VlcPlayerActivity extends FragmentActivity {
             }
             vlcVout.attachViews(voutLayoutListener);
 
-            Media media = new Media(libVLC, Uri.parse(url));
-            media.addOption(":network-caching=" + cachingMsFinal);
-            media.addOption(":live-caching=" + cachingMsFinal);
-            media.addOption(":file-caching=" + cachingMsFinal);
-            media.addOption(":drop-late-frames");
-            media.addOption(":skip-frames");
-            media.addOption(":avcodec-threads=" + avThreadsFinal);
-            media.addOption(legacySdk ? ":avcodec-skiploopfilter=nonref" : ":avcodec-skiploopfilter=all");
-            if (legacySdk) {
-                media.addOption(":avcodec-fast");
-                media.addOption(":avcodec-skip-frame=nonref");
-                media.addOption(":avcodec-skip-idct=nonref");
-            }
-            media.addOption(":android-display-chroma=RV16");
-            if (deinterlace) {
-                media.addOption(":deinterlace=1");
-                media.addOption(":deinterlace-mode=yadif");
-            } else {
-                media.addOption(":deinterlace=0");
-            }
-            boolean forceHw = hwModeFinal == PlaybackPrefs.VLC_HW_PLUS;
-            media.setHWDecoderEnabled(useHw, forceHw);
-            if (forceHwOnly && useHw) {
-                media.addOption(":codec=" + hwCodecList);
-            }
-            mediaPlayer.setMedia(media);
-            media.release();
-
-            mediaPlayer.play();
+            playUrl(url);
             // No updateVideoSurfaces() in older LibVLC API.
 
             showControlsTemporarily();
@@ -384,6 +359,91 @@ public class VlcPlayerActivity extends FragmentActivity {
         });
     }
 
+    /**
+     * LibVLC has no network-level events: input buffering progress stands in for the first
+     * byte, a video output appearing for the first frame and the clock moving for first audio.
+     */
+    private void traceEvent(MediaPlayer.Event event) {
+        if (trace == null) return;
+        switch (event.type) {
+            case MediaPlayer.Event.Buffering:
+                if (event.getBuffering() > 0f) trace.firstByte();
+                if (event.getBuffering() < 100f) {
+                    trace.bufferingStarted();
+                } else {
+                    trace.bufferingEnded();
+                }
+                break;
+            case MediaPlayer.Event.Playing:
+                trace.ready();
+                break;
+            case MediaPlayer.Event.Vout:
+                if (event.getVoutCount() > 0) trace.firstVideoFrame();
+                break;
+            case MediaPlayer.Event.TimeChanged:
+                trace.firstAudio();
+                break;
+            default:
+                break;
+        }
+    }
+
+    /** Sets a new {@link Media} on the running player; views and decoder setup are kept. */
+    private void playUrl(String url) {
+        Media media = new Media(libVLC, Uri.parse(url));
+        media.addOption(":network-caching=" + cachingMs);
+        media.addOption(":live-caching=" + cachingMs);
+        media.addOption(":file-caching=" + cachingMs);
+        media.addOption(":drop-late-frames");
+        media.addOption(":skip-frames");
+        media.addOption(":avcodec-threads=" + avThreads);
+        media.addOption(legacySdk ? ":avcodec-skiploopfilter=nonref" : ":avcodec-skiploopfilter=all");
+        if (legacySdk) {
+            media.addOption(":avcodec-fast");
+            media.addOption(":avcodec-skip-frame=nonref");
+            media.addOption(":avcodec-skip-idct=nonref");
+        }
+        media.addOption(":android-display-chroma=RV16");
+        if (deinterlace) {
+            media.addOption(":deinterlace=1");
+            media.addOption(":deinterlace-mode=yadif");
+        } else {
+            media.addOption(":deinterlace=0");
+        }
+        // Playlist-provided headers (#EXTVLCOPT / #KODIPROP).
+        String streamUa = getIntent().getStringExtra(Constants.EXTRA_USER_AGENT);
+        String streamRef = getIntent().getStringExtra(Constants.EXTRA_REFERRER);
+        if (streamUa != null && !streamUa.isEmpty()) media.addOption(":http-user-agent=" + streamUa);
+        if (streamRef != null && !streamRef.isEmpty()) media.addOption(":http-referrer=" + streamRef);
+        media.setHWDecoderEnabled(useHw, forceHw);
+        if (forceHwOnly && useHw) {
+            media.addOption(":codec=" + hwCodecList);
+        }
+        mediaPlayer.setMedia(media);
+        media.release();
+
+        mediaPlayer.play();
+    }
+
+    /**
+     * Zaps without leaving the activity: the LibVLC instance, the player and the attached
+     * surface stay, only the media is replaced.
+     */
+    private boolean switchTo(Intent intent) {
+        if (released || mediaPlayer == null || libVLC == null) return false;
+        String url = intent.getStringExtra(Constants.EXTRA_URL);
+        if (url == null || url.trim().isEmpty()) return false;
+        Log.i(TAG, "switching channel in place");
+
+        if (channelOverlay != null) channelOverlay.setCurrentChannel(url);
+        if (trace != null) trace.finish("zap");
+        trace = PlaybackTracer.start(this, PlaybackTracer.ENGINE_VLC, intent, true);
+        if (loading != null) loading.setVisibility(View.VISIBLE);
+        playUrl(url);
+        showControlsTemporarily();
+        return true;
+    }
+
     @Override
     public boolean dispatchKeyEvent(KeyEvent event) {
         if (channelOverlay != null && channelOverlay.handleKeyEvent(event)) {
@@ -526,6 +586,11 @@ public class VlcPlayerActivity extends FragmentActivity {
         if (released) return;
         released = true;
 
+        if (trace != null) {
+            trace.finish("stop");
+            trace = null;
+        }
+
         uiHandler.removeCallbacks(progressRunnable);
         uiHandler.removeCallbacks(hideControlsRunnable);
 
@@ -543,7 +608,8 @@ public class VlcPlayerActivity extends FragmentActivity {
         }
 
         if (libVLC != null) {
-            try { libVLC.release(); } catch (Exception ignored) {}
+            // Kept alive by VlcEngine for the next playback.
+            VlcEngine.release(libVLC);
             libVLC = null;
         }
     }
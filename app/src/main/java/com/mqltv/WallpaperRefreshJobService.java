@@ -0,0 +1,29 @@
+package com.mqltv;
+
+import android.annotation.TargetApi;
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/** Runs {@link WallpaperRefreshScheduler} jobs off the main thread (API 21+). */
+@TargetApi(21)
+public class WallpaperRefreshJobService extends JobService {
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor();
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        EXECUTOR.execute(() -> {
+            boolean ok = WallpaperRefreshScheduler.run(getApplicationContext());
+            jobFinished(params, !ok);
+        });
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // Connectivity went away mid-download; let JobScheduler retry.
+        return true;
+    }
+}
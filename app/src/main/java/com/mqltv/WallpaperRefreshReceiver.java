@@ -0,0 +1,29 @@
+package com.mqltv;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+/** Alarm target for {@link WallpaperRefreshScheduler} below API 21. */
+public class WallpaperRefreshReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (context == null) return;
+        Context appContext = context.getApplicationContext();
+        if (!WallpaperRefreshScheduler.isOnline(appContext)) {
+            WallpaperRefreshScheduler.retryLater(appContext);
+            return;
+        }
+        PendingResult result = goAsync();
+        new Thread(() -> {
+            try {
+                if (!WallpaperRefreshScheduler.run(appContext)) {
+                    WallpaperRefreshScheduler.retryLater(appContext);
+                }
+            } finally {
+                result.finish();
+            }
+        }, "wallpaper-refresh").start();
+    }
+}
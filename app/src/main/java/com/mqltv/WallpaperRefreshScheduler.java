@@ -0,0 +1,163 @@
+package com.mqltv;
+
+import android.annotation.TargetApi;
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+
+/**
+ * Keeps the Bing wallpaper current in the background, so the launcher only ever reads the local
+ * file and a slow wallpaper API never holds up its executor.
+ *
+ * API 21+ uses a daily JobScheduler job that needs a network connection, plus a one-shot job
+ * when there is no wallpaper yet or the last refresh is more than a day old. Older releases use
+ * an inexact daily alarm handled by {@link WallpaperRefreshReceiver}, which checks connectivity
+ * itself; its first trigger is a day after the last refresh rather than a day after process
+ * start, so boxes that are restarted daily still refresh.
+ */
+public final class WallpaperRefreshScheduler {
+    private static final String TAG = "WallpaperRefresh";
+
+    private static final String PREFS = "wallpaper_refresh";
+    private static final String KEY_LAST_REFRESH = "last_refresh";
+
+    static final int JOB_DAILY = 7301;
+    static final int JOB_NOW = 7302;
+
+    private static final long DAY_MS = 24L * 60L * 60L * 1000L;
+    // Below API 21 there is no network constraint; come back later instead.
+    private static final long RETRY_MS = 30L * 60L * 1000L;
+
+    private WallpaperRefreshScheduler() {}
+
+    /** Called from {@link MqlTvApp}; leaves an already scheduled daily refresh alone. */
+    public static void schedule(Context context) {
+        Context appContext = context.getApplicationContext();
+        long sinceLast = System.currentTimeMillis() - lastRefresh(appContext);
+        boolean stale = sinceLast < 0 || sinceLast >= DAY_MS;
+        try {
+            if (Build.VERSION.SDK_INT >= 21) {
+                scheduleDailyJob(appContext);
+            } else {
+                scheduleAlarm(appContext, stale ? DAY_MS : DAY_MS - sinceLast, true);
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "schedule failed", e);
+        }
+
+        File bing = LauncherWallpaper.getBingFile(appContext);
+        if (stale || bing == null || !bing.exists() || bing.length() == 0) {
+            refreshNow(appContext);
+        }
+    }
+
+    /** Fetches the wallpaper as soon as a network is available, e.g. after a reset to Bing mode. */
+    public static void refreshNow(Context context) {
+        Context appContext = context.getApplicationContext();
+        try {
+            if (Build.VERSION.SDK_INT >= 21) {
+                scheduleOneShotJob(appContext);
+            } else {
+                appContext.sendBroadcast(new Intent(appContext, WallpaperRefreshReceiver.class));
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "refresh request failed", e);
+        }
+    }
+
+    /** Worker thread. Returns false if the refresh failed and should be retried. */
+    static boolean run(Context context) {
+        long start = SystemClock.elapsedRealtime();
+        boolean ok = LauncherWallpaper.refreshBing(context);
+        if (ok) {
+            context.getSharedPreferences(PREFS, Context.MODE_PRIVATE).edit()
+                    .putLong(KEY_LAST_REFRESH, System.currentTimeMillis()).apply();
+        }
+        Log.i(TAG, "refresh " + (ok ? "done" : "failed") + " in " + (SystemClock.elapsedRealtime() - start) + "ms");
+        return ok;
+    }
+
+    /** Wall-clock time of the last successful refresh, or 0. */
+    private static long lastRefresh(Context context) {
+        try {
+            return context.getSharedPreferences(PREFS, Context.MODE_PRIVATE).getLong(KEY_LAST_REFRESH, 0L);
+        } catch (Exception ignored) {
+            return 0L;
+        }
+    }
+
+    static boolean isOnline(Context context) {
+        try {
+            ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+            NetworkInfo ni = cm != null ? cm.getActiveNetworkInfo() : null;
+            return ni != null && ni.isConnected();
+        } catch (Exception ignored) {
+            return false;
+        }
+    }
+
+    /** Pre-21 only: try again in a while without disturbing the daily alarm. */
+    static void retryLater(Context context) {
+        scheduleAlarm(context, RETRY_MS, false);
+    }
+
+    @TargetApi(21)
+    private static void scheduleDailyJob(Context context) {
+        JobScheduler js = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (js == null || isPending(js, JOB_DAILY)) return;
+        JobInfo job = new JobInfo.Builder(JOB_DAILY, new ComponentName(context, WallpaperRefreshJobService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+                .setPeriodic(DAY_MS)
+                .build();
+        js.schedule(job);
+    }
+
+    @TargetApi(21)
+    private static void scheduleOneShotJob(Context context) {
+        JobScheduler js = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (js == null || isPending(js, JOB_NOW)) return;
+        JobInfo job = new JobInfo.Builder(JOB_NOW, new ComponentName(context, WallpaperRefreshJobService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+                .setBackoffCriteria(RETRY_MS, JobInfo.BACKOFF_POLICY_EXPONENTIAL)
+                .build();
+        js.schedule(job);
+    }
+
+    @TargetApi(21)
+    private static boolean isPending(JobScheduler js, int id) {
+        try {
+            for (JobInfo j : js.getAllPendingJobs()) {
+                if (j.getId() == id) return true;
+            }
+        } catch (Exception ignored) {
+        }
+        return false;
+    }
+
+    private static void scheduleAlarm(Context context, long delayMs, boolean repeating) {
+        AlarmManager am = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (am == null) return;
+        Intent intent = new Intent(context, WallpaperRefreshReceiver.class);
+        int flags = PendingIntent.FLAG_UPDATE_CURRENT | (Build.VERSION.SDK_INT >= 23 ? PendingIntent.FLAG_IMMUTABLE : 0);
+        long at = SystemClock.elapsedRealtime() + delayMs;
+        if (repeating) {
+            // Request code 0 is the daily alarm; re-registering it on every start only moves it.
+            PendingIntent pi = PendingIntent.getBroadcast(context, 0, intent, flags);
+            am.setInexactRepeating(AlarmManager.ELAPSED_REALTIME, at, AlarmManager.INTERVAL_DAY, pi);
+        } else {
+            PendingIntent pi = PendingIntent.getBroadcast(context, 1, intent, flags);
+            am.set(AlarmManager.ELAPSED_REALTIME, at, pi);
+        }
+    }
+}
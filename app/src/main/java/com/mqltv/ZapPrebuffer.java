@@ -0,0 +1,299 @@
+package com.mqltv;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Warms the channels next to the one playing so P+/P- starts from fetched data instead of a
+ * cold TCP+TLS+manifest round trip.
+ *
+ * For HLS it fetches the playlist, the first variant's media playlist and the segment a live
+ * player starts from, and hands them to the Exo data sources through {@link #take}. Requests
+ * go through HttpURLConnection, so the keep-alive sockets land in the same pool that
+ * DefaultHttpDataSource and the platform MediaPlayer use. Other streams only get a DNS lookup.
+ *
+ * Reads are rate-limited, each response is size-capped, and the loop refreshes for a short
+ * window after a zap and then goes quiet, so the live stream keeps the bandwidth.
+ */
+final class ZapPrebuffer {
+    private static final String TAG = "ZapPrebuffer";
+
+    private static final int MAX_MANIFEST_BYTES = 256 * 1024;
+    private static final int MAX_SEGMENT_BYTES = 2 * 1024 * 1024;
+    // Well below an SD stream's bitrate so the live stream keeps priority.
+    private static final int MAX_BYTES_PER_SECOND = 192 * 1024;
+    // Segment bytes per refresh window across all neighbours.
+    private static final int MAX_SEGMENT_BYTES_PER_PASS = 3 * 1024 * 1024;
+    private static final int MAX_CACHED_BYTES = 6 * 1024 * 1024;
+
+    private static final long MANIFEST_TTL_MS = 10_000L;
+    private static final long SEGMENT_TTL_MS = 45_000L;
+    private static final long REFRESH_MS = 8_000L;
+    // Users who keep watching do not need warm neighbours; stop refreshing after this.
+    private static final long WARM_WINDOW_MS = 2L * 60L * 1000L;
+    // Live players start about three segments behind the newest one.
+    private static final int LIVE_EDGE_SEGMENTS = 3;
+
+    static final class Entry {
+        final byte[] data;
+        final long expiresAtMs;
+
+        Entry(byte[] data, long expiresAtMs) {
+            this.data = data;
+            this.expiresAtMs = expiresAtMs;
+        }
+    }
+
+    private static final class Fetched {
+        final byte[] data;
+        final URL finalUrl;
+
+        Fetched(byte[] data, URL finalUrl) {
+            this.data = data;
+            this.finalUrl = finalUrl;
+        }
+    }
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "zap-prebuffer");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+
+    // Guarded by ZapPrebuffer.class.
+    private static final Map<String, Entry> ENTRIES = new LinkedHashMap<>();
+    private static int cachedBytes;
+    private static boolean trimRegistered;
+
+    private static volatile int generation;
+
+    private static final MemoryPressureCoordinator.Trimmable TRIMMABLE = level ->
+            level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW ? clear() : 0;
+
+    private ZapPrebuffer() {}
+
+    /**
+     * Main thread. Replaces the set of warmed channels with {@code channels} (nearest first)
+     * and keeps them fresh for a while.
+     */
+    static void warm(Context context, List<Channel> channels) {
+        final int gen = ++generation;
+        if (context == null || channels == null || channels.isEmpty()) return;
+        if (!PlaybackPrefs.isZapPrebuffer(context)) return;
+        synchronized (ZapPrebuffer.class) {
+            if (!trimRegistered) {
+                MemoryPressureCoordinator.get().register(TRIMMABLE);
+                trimRegistered = true;
+            }
+        }
+        final List<Channel> targets = new ArrayList<>(channels);
+        EXECUTOR.execute(() -> loop(targets, gen));
+    }
+
+    /** Stops refreshing, e.g. when the player closes. Cached entries expire on their own. */
+    static void stop() {
+        generation++;
+    }
+
+    /** Any thread. Removes and returns the fresh prefetched body for {@code url}, or null. */
+    static synchronized Entry take(String url) {
+        if (url == null) return null;
+        Entry e = ENTRIES.remove(url);
+        if (e == null) return null;
+        cachedBytes -= e.data.length;
+        if (SystemClock.elapsedRealtime() > e.expiresAtMs) return null;
+        Log.d(TAG, "hit " + e.data.length + "B");
+        return e;
+    }
+
+    /** Drops every cached body; returns the bytes released. */
+    static synchronized long clear() {
+        long freed = cachedBytes;
+        ENTRIES.clear();
+        cachedBytes = 0;
+        return freed;
+    }
+
+    private static void loop(List<Channel> targets, int gen) {
+        long until = SystemClock.elapsedRealtime() + WARM_WINDOW_MS;
+        Map<String, String> lastSegments = new LinkedHashMap<>();
+        while (gen == generation && SystemClock.elapsedRealtime() < until) {
+            int segmentBudget = MAX_SEGMENT_BYTES_PER_PASS;
+            for (Channel c : targets) {
+                if (gen != generation) return;
+                try {
+                    segmentBudget -= warmChannel(c, gen, segmentBudget, lastSegments);
+                } catch (Exception e) {
+                    Log.d(TAG, "warm failed: " + e.getClass().getSimpleName() + ": " + e.getMessage());
+                }
+            }
+            evictExpired();
+            // Sleep in slices so a new zap does not wait behind this loop.
+            long wakeAt = SystemClock.elapsedRealtime() + REFRESH_MS;
+            while (gen == generation && SystemClock.elapsedRealtime() < wakeAt) {
+                SystemClock.sleep(250);
+            }
+        }
+    }
+
+    /** Returns the segment bytes spent. */
+    private static int warmChannel(Channel c, int gen, int segmentBudget, Map<String, String> lastSegments) throws IOException {
+        String url = c != null ? c.getUrl() : null;
+        if (url == null || !(url.startsWith("http://") || url.startsWith("https://"))) return 0;
+
+        URL u = new URL(url);
+        if (!isHls(url)) {
+            // Progressive/TS live streams cannot be fetched ahead; resolving the host is what is left.
+            try {
+                java.net.InetAddress.getByName(u.getHost());
+            } catch (Exception ignored) {
+            }
+            return 0;
+        }
+
+        Fetched master = fetch(u, c, MAX_MANIFEST_BYTES, gen);
+        if (master == null) return 0;
+        put(url, master.data, MANIFEST_TTL_MS);
+
+        String text = new String(master.data, "UTF-8");
+        String mediaText = text;
+        URL mediaBase = master.finalUrl;
+        if (text.contains("#EXT-X-STREAM-INF")) {
+            String variant = firstUriAfter(text, "#EXT-X-STREAM-INF");
+            if (variant == null) return 0;
+            URL variantUrl = new URL(master.finalUrl, variant);
+            Fetched media = fetch(variantUrl, c, MAX_MANIFEST_BYTES, gen);
+            if (media == null) return 0;
+            put(variantUrl.toString(), media.data, MANIFEST_TTL_MS);
+            mediaText = new String(media.data, "UTF-8");
+            mediaBase = media.finalUrl;
+        }
+
+        // fMP4 streams need their init section too; the playlists alone still save a round trip.
+        if (mediaText.contains("#EXT-X-MAP") || segmentBudget <= 0) return 0;
+        List<String> segments = segmentUris(mediaText);
+        if (segments.isEmpty()) return 0;
+        String segment = segments.get(Math.max(0, segments.size() - LIVE_EDGE_SEGMENTS));
+        URL segmentUrl = new URL(mediaBase, segment);
+        String key = segmentUrl.toString();
+        if (key.equals(lastSegments.get(url)) && has(key)) return 0;
+
+        Fetched seg = fetch(segmentUrl, c, Math.min(MAX_SEGMENT_BYTES, segmentBudget), gen);
+        if (seg == null) return 0;
+        put(key, seg.data, SEGMENT_TTL_MS);
+        lastSegments.put(url, key);
+        return seg.data.length;
+    }
+
+    private static Fetched fetch(URL url, Channel c, int maxBytes, int gen) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        conn.setConnectTimeout(5000);
+        conn.setReadTimeout(8000);
+        conn.setInstanceFollowRedirects(true);
+        if (c.getUserAgent() != null && !c.getUserAgent().isEmpty()) conn.setRequestProperty("User-Agent", c.getUserAgent());
+        if (c.getReferrer() != null && !c.getReferrer().isEmpty()) conn.setRequestProperty("Referer", c.getReferrer());
+        boolean complete = false;
+        try {
+            if (conn.getResponseCode() != HttpURLConnection.HTTP_OK) return null;
+            long declared = conn.getContentLength();
+            if (declared > maxBytes) return null;
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(declared > 0 ? (int) declared : 16 * 1024);
+            byte[] buf = new byte[16 * 1024];
+            long start = SystemClock.elapsedRealtime();
+            InputStream in = conn.getInputStream();
+            try {
+                int n;
+                while ((n = in.read(buf)) != -1) {
+                    if (gen != generation) return null;
+                    out.write(buf, 0, n);
+                    if (out.size() > maxBytes) return null;
+                    // Throttle to MAX_BYTES_PER_SECOND.
+                    long expectedMs = out.size() * 1000L / MAX_BYTES_PER_SECOND;
+                    long elapsed = SystemClock.elapsedRealtime() - start;
+                    if (expectedMs > elapsed) SystemClock.sleep(expectedMs - elapsed);
+                }
+            } finally {
+                in.close();
+            }
+            // Read to EOF and closed: the socket goes back to the keep-alive pool.
+            complete = true;
+            return new Fetched(out.toByteArray(), conn.getURL());
+        } finally {
+            // Any other way out leaves an unread body (or error body) on the socket; drop it
+            // rather than leave it open until the read timeout.
+            if (!complete || gen != generation) conn.disconnect();
+        }
+    }
+
+    private static synchronized void put(String url, byte[] data, long ttlMs) {
+        Entry old = ENTRIES.remove(url);
+        if (old != null) cachedBytes -= old.data.length;
+        ENTRIES.put(url, new Entry(data, SystemClock.elapsedRealtime() + ttlMs));
+        cachedBytes += data.length;
+        Iterator<Map.Entry<String, Entry>> it = ENTRIES.entrySet().iterator();
+        while (cachedBytes > MAX_CACHED_BYTES && it.hasNext()) {
+            cachedBytes -= it.next().getValue().data.length;
+            it.remove();
+        }
+    }
+
+    private static synchronized boolean has(String url) {
+        Entry e = ENTRIES.get(url);
+        return e != null && SystemClock.elapsedRealtime() < e.expiresAtMs;
+    }
+
+    private static synchronized void evictExpired() {
+        long now = SystemClock.elapsedRealtime();
+        Iterator<Map.Entry<String, Entry>> it = ENTRIES.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry e = it.next().getValue();
+            if (now > e.expiresAtMs) {
+                cachedBytes -= e.data.length;
+                it.remove();
+            }
+        }
+    }
+
+    private static boolean isHls(String url) {
+        return url.toLowerCase(java.util.Locale.US).contains(".m3u8");
+    }
+
+    private static String firstUriAfter(String playlist, String tag) {
+        boolean armed = false;
+        for (String line : playlist.split("\n")) {
+            String l = line.trim();
+            if (l.startsWith(tag)) {
+                armed = true;
+            } else if (armed && !l.isEmpty() && !l.startsWith("#")) {
+                return l;
+            }
+        }
+        return null;
+    }
+
+    private static List<String> segmentUris(String playlist) {
+        List<String> out = new ArrayList<>();
+        for (String line : playlist.split("\n")) {
+            String l = line.trim();
+            if (!l.isEmpty() && !l.startsWith("#")) out.add(l);
+        }
+        return out;
+    }
+}
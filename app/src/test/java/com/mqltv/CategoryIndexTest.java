@@ -0,0 +1,107 @@
+package com.mqltv;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class CategoryIndexTest {
+
+    private static Channel ch(String title, String url, String group, int number) {
+        return new Channel(title, url, group, null, Channel.Extras.of(null, null, number, null, null, null, null));
+    }
+
+    private static CategoryIndex index(Channel... channels) {
+        return CategoryIndex.build(ChannelTable.of(Arrays.asList(channels)));
+    }
+
+    @Test
+    public void mergesGroupsIgnoringCaseAndSpaces() {
+        CategoryIndex idx = index(
+                ch("A", "http://s/a", "News", 0),
+                ch("B", "http://s/b", "Sports", 0),
+                ch("C", "http://s/c", " NEWS ", 0),
+                ch("D", "http://s/d", "news", 0));
+
+        List<CategoryIndex.Category> cats = idx.getCategories();
+        assertEquals(2, cats.size());
+        assertEquals("News", cats.get(0).name);
+        assertEquals("NEWS", cats.get(0).label);
+        assertEquals(3, cats.get(0).size());
+        assertEquals(Arrays.asList("A", "C", "D"), titles(idx.channelsOf(cats.get(0))));
+        assertEquals(0, idx.indexOfLabel(" news"));
+        assertEquals(1, idx.indexOfLabel("Sports"));
+        assertEquals(-1, idx.indexOfLabel("Movies"));
+        assertEquals(0, idx.categoryOfRow(2));
+        assertEquals(1, idx.categoryOfRow(1));
+    }
+
+    @Test
+    public void blankGroupsAreUngrouped() {
+        CategoryIndex idx = index(
+                ch("A", "http://s/a", null, 0),
+                ch("B", "http://s/b", "  ", 0),
+                ch("C", "http://s/c", "Kids", 0));
+
+        assertEquals(1, idx.getCategories().size());
+        assertEquals(Arrays.asList("A", "B"), titles(idx.getUngroupedRows()));
+        assertEquals(-1, idx.categoryOfRow(0));
+        assertEquals(-1, idx.categoryOfRow(1));
+        assertEquals(-1, idx.categoryOfRow(99));
+    }
+
+    @Test
+    public void rowOfUrlKeepsFirstDuplicate() {
+        List<Channel> channels = new ArrayList<>();
+        for (int i = 0; i < 500; i++) channels.add(ch("C" + i, "http://s/" + i, "G", 0));
+        channels.add(ch("Dup", "http://s/7", "G", 0));
+        CategoryIndex idx = CategoryIndex.build(ChannelTable.of(channels));
+
+        for (int i = 0; i < 500; i++) assertEquals(i, idx.rowOfUrl("http://s/" + i));
+        assertEquals(7, idx.rowOfUrl("http://s/7"));
+        assertEquals(-1, idx.rowOfUrl("http://s/missing"));
+        assertEquals(-1, idx.rowOfUrl(null));
+        assertEquals(-1, CategoryIndex.EMPTY.rowOfUrl("http://s/0"));
+    }
+
+    @Test
+    public void rowOfNumberFindsFirstRow() {
+        CategoryIndex idx = index(
+                ch("A", "http://s/a", "G", 20),
+                ch("B", "http://s/b", "G", 0),
+                ch("C", "http://s/c", "G", 5),
+                ch("D", "http://s/d", "G", 20));
+
+        assertEquals(0, idx.rowOfNumber(20));
+        assertEquals(2, idx.rowOfNumber(5));
+        assertEquals(-1, idx.rowOfNumber(0));
+        assertEquals(-1, idx.rowOfNumber(6));
+        assertEquals(-1, CategoryIndex.EMPTY.rowOfNumber(1));
+    }
+
+    @Test
+    public void positionInCategoryInvertsRowAt() {
+        CategoryIndex idx = index(
+                ch("A", "http://s/a", "News", 0),
+                ch("B", "http://s/b", "Sports", 0),
+                ch("C", "http://s/c", "news", 0),
+                ch("D", "http://s/d", "Sports", 0),
+                ch("E", "http://s/e", "NEWS", 0));
+
+        CategoryIndex.Category news = idx.getCategories().get(0);
+        for (int p = 0; p < news.size(); p++) {
+            assertEquals(p, CategoryIndex.positionInCategory(news, news.rowAt(p)));
+        }
+        assertEquals(4, news.rowAt(2));
+        assertEquals(-1, CategoryIndex.positionInCategory(news, 1));
+    }
+
+    private static List<String> titles(List<Channel> channels) {
+        List<String> out = new ArrayList<>();
+        for (Channel c : channels) out.add(c.getTitle());
+        return out;
+    }
+}
@@ -0,0 +1,105 @@
+package com.mqltv;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ChannelSearchIndexTest {
+
+    private static ChannelSearchIndex index(Channel... channels) {
+        return ChannelSearchIndex.build(ChannelTable.of(Arrays.asList(channels)));
+    }
+
+    private static Channel ch(String title, String group) {
+        return new Channel(title, "http://s/" + title.hashCode(), group, null);
+    }
+
+    @Test
+    public void ranksPrefixBeforeWordBeforeSubstring() {
+        ChannelSearchIndex idx = index(
+                ch("Sky Sportsnews", null),  // substring "news"
+                ch("CNN International", null),
+                ch("BBC News", null),        // word prefix
+                ch("News 24", null));        // title prefix
+
+        assertArrayEquals(new int[] {3, 2, 0}, idx.search("news", null));
+    }
+
+    @Test
+    public void equalRanksKeepPlaylistOrder() {
+        ChannelSearchIndex idx = index(ch("Movie One", null), ch("Other", null), ch("Movie Two", null));
+
+        assertArrayEquals(new int[] {0, 2}, idx.search("movie", null));
+    }
+
+    @Test
+    public void groupMatchesComeLast() {
+        ChannelSearchIndex idx = index(
+                ch("Eurosport 1", "Sports"),
+                ch("Sportitalia", "Italy"),
+                ch("ESPN", "Sports"));
+
+        assertArrayEquals(new int[] {1, 0, 2}, idx.search("sport", null));
+    }
+
+    @Test
+    public void foldsCaseAndAccents() {
+        ChannelSearchIndex idx = index(ch("Télé Ñews", null), ch("Other", null));
+
+        assertArrayEquals(new int[] {0}, idx.search("TELE", null));
+        assertArrayEquals(new int[] {0}, idx.search("news", null));
+        assertArrayEquals(new int[] {0}, idx.search("ñéws", null));
+        assertEquals("tele news", ChannelSearchIndex.fold("Télé Ñews"));
+        assertEquals("abc", ChannelSearchIndex.fold("ABC"));
+        assertEquals("", ChannelSearchIndex.fold(null));
+    }
+
+    @Test
+    public void shortQueriesScanAllRows() {
+        ChannelSearchIndex idx = index(ch("ABC", null), ch("XYZ", null), ch("Cab", null));
+
+        assertArrayEquals(new int[] {0, 2}, idx.search("a", null));
+        assertArrayEquals(new int[] {0, 2}, idx.search("ab", null));
+        assertArrayEquals(new int[] {2}, idx.search("ca", null));
+    }
+
+    @Test
+    public void matchesTvgNameButNotAcrossIt() {
+        ChannelSearchIndex idx = ChannelSearchIndex.build(ChannelTable.of(Arrays.asList(
+                new Channel("One", "http://s/1", null, null,
+                        Channel.Extras.of(null, "Premium First", 0, null, null, null, null)),
+                new Channel("Two", "http://s/2", null, null))));
+
+        assertArrayEquals(new int[] {0}, idx.search("premium", null));
+        assertArrayEquals(new int[0], idx.search("onepre", null));
+        assertArrayEquals(new int[0], idx.search("one premium", null));
+    }
+
+    @Test
+    public void unknownTrigramMatchesNothing() {
+        ChannelSearchIndex idx = index(ch("Discovery", "Docs"), ch("History", "Docs"));
+
+        assertArrayEquals(new int[0], idx.search("qqq", null));
+        assertArrayEquals(new int[0], idx.search("discoverz", null));
+        assertArrayEquals(new int[] {0, 1}, idx.search("docs", null));
+    }
+
+    @Test
+    public void blankQueryMatchesNothing() {
+        ChannelSearchIndex idx = index(ch("News", null));
+
+        assertArrayEquals(new int[0], idx.search("   ", null));
+        assertArrayEquals(new int[0], idx.search(null, null));
+    }
+
+    @Test
+    public void cancelledSearchReturnsNull() {
+        ChannelSearchIndex idx = index(ch("News", null));
+
+        assertNull(idx.search("news", () -> true));
+    }
+}
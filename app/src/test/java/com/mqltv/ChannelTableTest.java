@@ -0,0 +1,144 @@
+package com.mqltv;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ChannelTableTest {
+
+    @Test
+    public void roundTripsPlainRows() {
+        List<Channel> channels = Arrays.asList(
+                new Channel("Ünïcode", "http://s/1", "News", "http://l/1.png"),
+                new Channel("Two", "http://s/2", null, null),
+                new Channel("Three", "http://s/3", "News", null));
+
+        ChannelTable t = ChannelTable.of(channels);
+
+        assertEquals(3, t.size());
+        for (int i = 0; i < channels.size(); i++) {
+            Channel expected = channels.get(i);
+            Channel c = t.get(i);
+            assertEquals(expected.getTitle(), c.getTitle());
+            assertEquals(expected.getUrl(), c.getUrl());
+            assertEquals(expected.getGroupTitle(), c.getGroupTitle());
+            assertEquals(expected.getLogoUrl(), c.getLogoUrl());
+            assertNull(c.getExtras());
+            assertNull(t.getTvgName(i));
+            assertEquals(0, t.getChannelNumber(i));
+        }
+    }
+
+    @Test
+    public void groupsKeepPlaylistOrder() {
+        ChannelTable t = ChannelTable.of(Arrays.asList(
+                new Channel("A", "http://s/a", "News", null),
+                new Channel("B", "http://s/b", "Sports", null),
+                new Channel("C", "http://s/c", null, null),
+                new Channel("D", "http://s/d", "News", null)));
+
+        assertEquals(2, t.groupCount());
+        assertEquals("News", t.groupName(t.groupOf(0)));
+        assertArrayEquals(new int[] {0, 3}, t.groupMembers(t.groupOf(0)));
+        assertArrayEquals(new int[] {1}, t.groupMembers(t.groupOf(1)));
+        assertEquals(-1, t.groupOf(2));
+    }
+
+    @Test
+    public void packsExtras() {
+        Channel.Extras full = Channel.Extras.of("id.1", "One HD", 12, "shift", "?utc={utc}", "UA/1", "http://ref/");
+        Channel.Extras sameProfile = Channel.Extras.of("id.2", null, 0, "shift", "?utc={utc}", "UA/1", "http://ref/");
+        ChannelTable t = ChannelTable.of(Arrays.asList(
+                new Channel("One", "http://s/1", "G", null, full),
+                new Channel("Two", "http://s/2", "G", null, sameProfile),
+                new Channel("Three", "http://s/3", "G", null)));
+
+        Channel.Extras x = t.getExtras(0);
+        assertNotNull(x);
+        assertEquals("id.1", x.tvgId);
+        assertEquals("One HD", x.tvgName);
+        assertEquals(12, x.number);
+        assertEquals("shift", x.catchup);
+        assertEquals("?utc={utc}", x.catchupSource);
+        assertEquals("UA/1", x.userAgent);
+        assertEquals("http://ref/", x.referrer);
+        assertEquals("One HD", t.getTvgName(0));
+        assertEquals(12, t.getChannelNumber(0));
+
+        Channel two = t.get(1);
+        assertEquals("id.2", two.getTvgId());
+        assertNull(two.getTvgName());
+        assertEquals("UA/1", two.getUserAgent());
+        assertEquals("http://ref/", two.getReferrer());
+
+        assertNull(t.getExtras(2));
+        assertEquals(0, t.getChannelNumber(2));
+    }
+
+    @Test
+    public void emptyStringsReadBackAsNull() {
+        ChannelTable t = ChannelTable.of(Collections.singletonList(new Channel("Title", "http://s/1", "", "")));
+
+        assertNull(t.get(0).getLogoUrl());
+        assertEquals("", t.get(0).getGroupTitle());
+    }
+
+    @Test
+    public void viewsAreBackedByTheTable() {
+        ChannelTable t = ChannelTable.of(Arrays.asList(
+                new Channel("A", "http://s/a"), new Channel("B", "http://s/b"), new Channel("C", "http://s/c")));
+
+        List<Channel> all = t.asList();
+        assertSame(all, t.asList());
+        assertSame(t, ChannelTable.of(all));
+        assertEquals("C", all.get(2).getTitle());
+
+        List<Channel> sub = t.subList(new int[] {2, 0});
+        assertEquals(2, sub.size());
+        assertEquals("C", sub.get(0).getTitle());
+        assertEquals("A", sub.get(1).getTitle());
+        assertTrue(t.subList(new int[0]).isEmpty());
+    }
+
+    @Test
+    public void emptyInputGivesEmptyTable() {
+        assertSame(ChannelTable.EMPTY, ChannelTable.of(null));
+        assertSame(ChannelTable.EMPTY, ChannelTable.of(Collections.<Channel>emptyList()));
+        assertTrue(ChannelTable.EMPTY.isEmpty());
+    }
+
+    @Test
+    public void contentEqualsComparesAllFields() {
+        List<Channel> base = Arrays.asList(
+                new Channel("A", "http://s/a", "G", null, Channel.Extras.of(null, null, 1, null, null, "UA", null)),
+                new Channel("B", "http://s/b", null, null));
+
+        assertTrue(ChannelTable.of(base).contentEquals(ChannelTable.of(base)));
+        assertFalse(ChannelTable.of(base).contentEquals(ChannelTable.of(Arrays.asList(
+                new Channel("A", "http://s/a", "H", null, Channel.Extras.of(null, null, 1, null, null, "UA", null)),
+                new Channel("B", "http://s/b", null, null)))));
+        assertFalse(ChannelTable.of(base).contentEquals(ChannelTable.of(Arrays.asList(
+                new Channel("A", "http://s/a", "G", null, Channel.Extras.of(null, null, 2, null, null, "UA", null)),
+                new Channel("B", "http://s/b", null, null)))));
+        assertFalse(ChannelTable.of(base).contentEquals(ChannelTable.of(Arrays.asList(
+                new Channel("A", "http://s/a", "G", null, Channel.Extras.of(null, null, 1, null, null, "UA/2", null)),
+                new Channel("B", "http://s/b", null, null)))));
+        assertFalse(ChannelTable.of(base).contentEquals(null));
+    }
+
+    @Test
+    public void mergeRowsKeepsOrder() {
+        assertArrayEquals(new int[] {0, 1, 4, 5, 9}, ChannelTable.mergeRows(new int[] {1, 5}, new int[] {0, 4, 9}));
+        assertArrayEquals(new int[] {2}, ChannelTable.mergeRows(new int[0], new int[] {2}));
+    }
+}
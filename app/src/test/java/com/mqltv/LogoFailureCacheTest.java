@@ -0,0 +1,75 @@
+package com.mqltv;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** The clock does not advance here, so every backoff is still running when checked. */
+public class LogoFailureCacheTest {
+
+    @Before
+    public void reset() {
+        LogoFailureCache.clearFailures();
+    }
+
+    @Test
+    public void failedUrlIsSkipped() {
+        LogoFailureCache.recordFailure("http://cdn/a.png", "cdn", false);
+
+        assertTrue(LogoFailureCache.shouldSkip("http://cdn/a.png", "cdn"));
+        assertFalse(LogoFailureCache.shouldSkip("http://cdn/b.png", "cdn"));
+    }
+
+    @Test
+    public void httpErrorsDoNotBlockTheHost() {
+        for (int i = 0; i < 5; i++) LogoFailureCache.recordFailure("http://cdn/" + i + ".png", "cdn", false);
+
+        assertFalse(LogoFailureCache.shouldSkip("http://cdn/other.png", "cdn"));
+    }
+
+    @Test
+    public void hostIsBlockedAfterThreshold() {
+        LogoFailureCache.recordFailure("http://down/1.png", "down", true);
+        LogoFailureCache.recordFailure("http://down/2.png", "down", true);
+        assertFalse(LogoFailureCache.shouldSkip("http://down/3.png", "down"));
+
+        LogoFailureCache.recordFailure("http://down/3.png", "down", true);
+        assertTrue(LogoFailureCache.shouldSkip("http://down/4.png", "down"));
+        assertFalse(LogoFailureCache.shouldSkip("http://up/4.png", "up"));
+    }
+
+    @Test
+    public void successResetsUrlAndHost() {
+        for (int i = 0; i < 3; i++) LogoFailureCache.recordFailure("http://flaky/" + i + ".png", "flaky", true);
+        LogoFailureCache.recordSuccess("http://flaky/0.png", "flaky", "https");
+
+        assertFalse(LogoFailureCache.shouldSkip("http://flaky/0.png", "flaky"));
+        assertFalse(LogoFailureCache.shouldSkip("http://flaky/9.png", "flaky"));
+        assertTrue(LogoFailureCache.shouldSkip("http://flaky/1.png", "flaky"));
+    }
+
+    @Test
+    public void clearFailuresUnblocksEverything() {
+        for (int i = 0; i < 3; i++) LogoFailureCache.recordFailure("http://down/" + i + ".png", "down", true);
+        LogoFailureCache.clearFailures();
+
+        assertFalse(LogoFailureCache.shouldSkip("http://down/0.png", "down"));
+        assertFalse(LogoFailureCache.shouldSkip("http://down/9.png", "down"));
+    }
+
+    @Test
+    public void remembersHttpOnlyHosts() {
+        assertEquals("https", LogoFailureCache.preferredScheme("legacy"));
+
+        LogoFailureCache.recordSuccess("http://legacy/a.png", "legacy", "http");
+        assertEquals("http", LogoFailureCache.preferredScheme("legacy"));
+        LogoFailureCache.clearFailures();
+        assertEquals("http", LogoFailureCache.preferredScheme("legacy"));
+
+        LogoFailureCache.recordSuccess("https://legacy/a.png", "legacy", "https");
+        assertEquals("https", LogoFailureCache.preferredScheme("legacy"));
+    }
+}
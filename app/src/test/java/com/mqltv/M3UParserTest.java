@@ -0,0 +1,201 @@
+package com.mqltv;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class M3UParserTest {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Test
+    public void batchesStartSmallAndDouble() throws IOException {
+        final List<Integer> sizes = new ArrayList<>();
+        final List<Channel> streamed = new ArrayList<>();
+        List<Channel> all = M3UParser.parse(playlist(350), batch -> {
+            sizes.add(batch.size());
+            streamed.addAll(batch);
+        });
+
+        assertEquals(350, all.size());
+        assertEquals("[100, 200, 50]", sizes.toString());
+        assertEquals(all, streamed);
+    }
+
+    @Test
+    public void batchSizeIsCapped() throws IOException {
+        final List<Integer> sizes = new ArrayList<>();
+        M3UParser.parse(playlist(100 + 200 + 400 + 800 + 1600 + 2000 + 10), batch -> sizes.add(batch.size()));
+
+        assertEquals("[100, 200, 400, 800, 1600, 2000, 10]", sizes.toString());
+    }
+
+    @Test
+    public void noBatchForEmptyPlaylist() throws IOException {
+        final List<Integer> sizes = new ArrayList<>();
+        List<Channel> all = M3UParser.parse(stream("#EXTM3U\n"), batch -> sizes.add(batch.size()));
+
+        assertEquals(0, all.size());
+        assertEquals(0, sizes.size());
+    }
+
+    @Test
+    public void brokenStreamStillDeliversParsedRows() {
+        final List<Channel> streamed = new ArrayList<>();
+        try {
+            M3UParser.parse(failingAfter(playlist(150), 150), streamed::addAll);
+            fail("expected the read error");
+        } catch (IOException expected) {
+            assertEquals("connection reset", expected.getMessage());
+        }
+
+        assertEquals(150, streamed.size());
+        assertEquals("Channel 149", streamed.get(149).getTitle());
+    }
+
+    @Test
+    public void readsExtinfAttributes() throws IOException {
+        List<Channel> all = M3UParser.parse(stream("#EXTM3U\n"
+                + "#EXTINF:-1 tvg-id=\"bbc1.uk\" tvg-name=\"BBC One HD\" tvg-chno=\"101\" tvg-logo=\"http://l/bbc.png\""
+                + " group-title=\"UK\" catchup=\"shift\" catchup-source=\"?utc={utc}\",BBC One\n"
+                + "http://s/bbc1\n"));
+
+        assertEquals(1, all.size());
+        Channel c = all.get(0);
+        assertEquals("BBC One", c.getTitle());
+        assertEquals("http://s/bbc1", c.getUrl());
+        assertEquals("UK", c.getGroupTitle());
+        assertEquals("http://l/bbc.png", c.getLogoUrl());
+        Channel.Extras x = c.getExtras();
+        assertNotNull(x);
+        assertEquals("bbc1.uk", x.tvgId);
+        assertEquals("BBC One HD", x.tvgName);
+        assertEquals(101, x.number);
+        assertEquals("shift", x.catchup);
+        assertEquals("?utc={utc}", x.catchupSource);
+    }
+
+    @Test
+    public void plainEntryHasNoExtras() throws IOException {
+        List<Channel> all = M3UParser.parse(stream("#EXTINF:-1 group-title=\"News\",Plain\nhttp://s/plain\n"));
+
+        assertEquals("Plain", all.get(0).getTitle());
+        assertNull(all.get(0).getExtras());
+    }
+
+    @Test
+    public void tvgNameEqualToTitleIsDropped() throws IOException {
+        List<Channel> all = M3UParser.parse(stream("#EXTINF:-1 tvg-name=\"Same\",Same\nhttp://s/same\n"));
+
+        assertNull(all.get(0).getExtras());
+    }
+
+    @Test
+    public void titleFallsBackToTvgName() throws IOException {
+        List<Channel> all = M3UParser.parse(stream("#EXTINF:-1 tvg-name=\"Named\",\nhttp://s/named\n"));
+
+        assertEquals("Named", all.get(0).getTitle());
+    }
+
+    @Test
+    public void groupTitlesAreShared() throws IOException {
+        List<Channel> all = M3UParser.parse(stream(
+                "#EXTINF:-1 group-title=\"Sports\",A\nhttp://s/a\n#EXTINF:-1 group-title=\"Sports\",B\nhttp://s/b\n"));
+
+        assertSame(all.get(0).getGroupTitle(), all.get(1).getGroupTitle());
+    }
+
+    @Test
+    public void headerOptionsApplyToNextUrlOnly() throws IOException {
+        List<Channel> all = M3UParser.parse(stream("#EXTM3U\n"
+                + "#EXTVLCOPT:http-user-agent=VLC/3.0\n"
+                + "#EXTINF:-1,First\n"
+                + "#EXTVLCOPT:http-referrer=http://ref/\n"
+                + "http://s/first\n"
+                + "#EXTINF:-1 tvg-id=\"second\",Second\n"
+                + "http://s/second\n"));
+
+        Channel.Extras first = all.get(0).getExtras();
+        assertNotNull(first);
+        assertEquals("VLC/3.0", first.userAgent);
+        assertEquals("http://ref/", first.referrer);
+        Channel.Extras second = all.get(1).getExtras();
+        assertNotNull(second);
+        assertNull(second.userAgent);
+        assertNull(second.referrer);
+    }
+
+    @Test
+    public void kodiStreamHeadersAreDecoded() throws IOException {
+        List<Channel> all = M3UParser.parse(stream(
+                "#KODIPROP:inputstream.adaptive.stream_headers=User-Agent=Foo%2F1.0&Referer=https%3A%2F%2Fx%2F\n"
+                + "#EXTINF:-1,Kodi\nhttp://s/kodi\n"));
+
+        Channel.Extras x = all.get(0).getExtras();
+        assertNotNull(x);
+        assertEquals("Foo/1.0", x.userAgent);
+        assertEquals("https://x/", x.referrer);
+    }
+
+    @Test
+    public void bareUrlUsesUrlAsTitle() throws IOException {
+        List<Channel> all = M3UParser.parse(stream("  http://s/bare  \n"));
+
+        assertEquals(1, all.size());
+        assertEquals("http://s/bare", all.get(0).getTitle());
+        assertEquals("http://s/bare", all.get(0).getUrl());
+    }
+
+    @Test
+    public void headerAnnouncesGuide() throws IOException {
+        M3UParser.PlaylistInfo info = new M3UParser.PlaylistInfo();
+        M3UParser.parse(stream("#EXTM3U url-tvg=\"http://epg/a.xml,http://epg/b.xml\"\n#EXTINF:-1,A\nhttp://s/a\n"),
+                null, info);
+        assertEquals("http://epg/a.xml,http://epg/b.xml", info.epgUrl);
+
+        info = new M3UParser.PlaylistInfo();
+        M3UParser.parse(stream("#EXTM3U x-tvg-url=\"http://epg/c.xml\"\n"), null, info);
+        assertEquals("http://epg/c.xml", info.epgUrl);
+    }
+
+    private static InputStream playlist(int count) {
+        StringBuilder sb = new StringBuilder("#EXTM3U\n");
+        for (int i = 0; i < count; i++) {
+            sb.append("#EXTINF:-1 group-title=\"G").append(i % 7).append("\",Channel ").append(i).append('\n');
+            sb.append("http://s/").append(i).append('\n');
+        }
+        return stream(sb.toString());
+    }
+
+    /** Delivers {@code source} until {@code channels} complete entries were read, then fails. */
+    private static InputStream failingAfter(InputStream source, int channels) throws IOException {
+        byte[] all = new byte[source.available()];
+        int n = source.read(all);
+        String text = new String(all, 0, n, UTF8);
+        int cut = 0;
+        for (int i = 0; i < channels * 2 + 1; i++) cut = text.indexOf('\n', cut) + 1;
+        final InputStream head = stream(text.substring(0, cut));
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                int b = head.read();
+                if (b < 0) throw new IOException("connection reset");
+                return b;
+            }
+        };
+    }
+
+    private static InputStream stream(String s) {
+        return new ByteArrayInputStream(s.getBytes(UTF8));
+    }
+}
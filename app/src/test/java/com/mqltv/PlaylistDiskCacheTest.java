@@ -0,0 +1,121 @@
+package com.mqltv;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PlaylistDiskCacheTest {
+    private static final String URL = "http://example.com/list.m3u";
+
+    @Test
+    public void roundTripKeepsRowsAndValidators() throws IOException {
+        List<Channel> channels = Arrays.asList(
+                new Channel("One", "http://s/1", "News", "http://l/1.png"),
+                new Channel("Two", "http://s/2", null, null,
+                        Channel.Extras.of("two.id", "Two HD", 7, "shift", "?utc={utc}", "UA/1", "http://ref/")));
+
+        PlaylistDiskCache.Entry e = readBack(write(URL, channels, "\"abc\"", "Mon, 01 Jan 2024 00:00:00 GMT",
+                "http://epg/a.xml"), URL, true);
+
+        assertNotNull(e);
+        assertEquals("\"abc\"", e.etag);
+        assertEquals("Mon, 01 Jan 2024 00:00:00 GMT", e.lastModified);
+        assertEquals("http://epg/a.xml", e.epgUrl);
+        assertTrue(e.hasValidators());
+        assertEquals(2, e.channels.size());
+
+        Channel one = e.channels.get(0);
+        assertEquals("One", one.getTitle());
+        assertEquals("http://s/1", one.getUrl());
+        assertEquals("News", one.getGroupTitle());
+        assertEquals("http://l/1.png", one.getLogoUrl());
+        assertNull(one.getExtras());
+
+        Channel.Extras x = e.channels.get(1).getExtras();
+        assertNotNull(x);
+        assertEquals("two.id", x.tvgId);
+        assertEquals("Two HD", x.tvgName);
+        assertEquals(7, x.number);
+        assertEquals("shift", x.catchup);
+        assertEquals("?utc={utc}", x.catchupSource);
+        assertEquals("UA/1", x.userAgent);
+        assertEquals("http://ref/", x.referrer);
+    }
+
+    @Test
+    public void repeatedValuesAreShared() throws IOException {
+        List<Channel> channels = Arrays.asList(
+                new Channel("A", "http://s/a", "Sports", "http://l/x.png"),
+                new Channel("B", "http://s/b", "Sports", "http://l/x.png"));
+
+        PlaylistDiskCache.Entry e = readBack(write(URL, channels, null, null, null), URL, true);
+
+        assertNotNull(e);
+        assertSame(e.channels.get(0).getGroupTitle(), e.channels.get(1).getGroupTitle());
+        assertSame(e.channels.get(0).getLogoUrl(), e.channels.get(1).getLogoUrl());
+    }
+
+    @Test
+    public void headerSkipsRows() throws IOException {
+        List<Channel> channels = Arrays.asList(new Channel("One", "http://s/1"));
+
+        PlaylistDiskCache.Entry e = readBack(write(URL, channels, "\"v1\"", null, null), URL, false);
+
+        assertNotNull(e);
+        assertEquals("\"v1\"", e.etag);
+        assertNull(e.lastModified);
+        assertTrue(e.channels.isEmpty());
+    }
+
+    @Test
+    public void withoutValidatorsNothingToRevalidate() throws IOException {
+        List<Channel> channels = Arrays.asList(new Channel("One", "http://s/1"));
+
+        PlaylistDiskCache.Entry e = readBack(write(URL, channels, "", null, null), URL, false);
+
+        assertNotNull(e);
+        assertFalse(e.hasValidators());
+    }
+
+    @Test
+    public void otherUrlIsRejected() throws IOException {
+        List<Channel> channels = Arrays.asList(new Channel("One", "http://s/1"));
+
+        assertNull(readBack(write(URL, channels, null, null, null), "http://example.com/other.m3u", true));
+    }
+
+    @Test
+    public void emptyListIsNotUsable() throws IOException {
+        byte[] data = write(URL, new ArrayList<Channel>(), "\"abc\"", null, null);
+
+        assertNull(readBack(data, URL, true));
+        assertNull(readBack(data, URL, false));
+    }
+
+    private static byte[] write(String url, List<Channel> channels, String etag, String lastModified, String epgUrl)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        PlaylistDiskCache.writeTo(out, url, channels, etag, lastModified, epgUrl);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static PlaylistDiskCache.Entry readBack(byte[] data, String url, boolean rows) throws IOException {
+        return PlaylistDiskCache.readFrom(new DataInputStream(new ByteArrayInputStream(data)), url, rows);
+    }
+}